@@ -0,0 +1,42 @@
+package TicTacToe;
+
+//Giocatori registrati come quelli reali (login, lobby, coda di uscita) ma senza socket:
+//il trasporto svuota la coda appena un messaggio viene accodato, così si misura solo il lavoro del server
+final class BenchmarkPlayers {
+    private BenchmarkPlayers() {}
+
+    //Crea e registra un giocatore; deltas = false simula un client legacy che riceve sempre la lista completa
+    static Player connect(String nickname, boolean deltas) {
+        DrainTransport transport = new DrainTransport(deltas);
+        Player player = new Player(transport);
+        transport.player = player;
+        if (!player.onMessage(GameMessage.nickname(nickname)))
+            throw new IllegalStateException("Nickname già in uso: " + nickname);
+        return player;
+    }
+
+    //Rimuove il giocatore dalla lobby come una disconnessione
+    static void disconnect(Player player) {
+        player.disconnected();
+    }
+
+    //Trasporto che scarta i messaggi accodati
+    private static final class DrainTransport implements Transport {
+        private final boolean deltas; //Il client applica i delta di presenza
+        private Player player; //Giocatore di cui svuotare la coda
+
+        DrainTransport(boolean deltas) { this.deltas = deltas; }
+
+        @Override
+        public boolean supportsPresenceDeltas() { return deltas; }
+
+        @Override
+        public void onQueued() {
+            OutboundQueue outbound = player.outbound();
+            while (outbound.poll() != null) {} //Il messaggio "arriva" subito
+        }
+
+        @Override
+        public void close() {}
+    }
+}
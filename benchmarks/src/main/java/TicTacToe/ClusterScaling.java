@@ -0,0 +1,101 @@
+package TicTacToe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Scalabilità del cluster: avvia 1, 2 e 4 nodi come processi locali, esegue LoadGenerator su tutti e confronta partite/s
+//I nodi ereditano il classpath di questo processo; le opzioni di LoadGenerator (-Dtictactoe.load.*) si passano qui
+//Uso: java -Dtictactoe.load.players=2000 -cp benchmarks/target/benchmarks.jar TicTacToe.ClusterScaling [nodi...]
+public class ClusterScaling {
+    private static final int BASE_PORT = Integer.getInteger("tictactoe.cluster.basePort", 22345); //Porte dei nodi a partire da qui
+    private static final int DURATION = Integer.getInteger("tictactoe.load.duration", 30); //Secondi di gioco, come LoadGenerator
+    private static final Pattern RESULT = Pattern.compile("partite (\\d+) .*mosse (\\d+) ");
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[]{1, 2, 4};
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        List<String> rows = new ArrayList<>();
+        for (int nodes : sizes)
+            rows.add(run(nodes));
+
+        System.out.println();
+        System.out.println("nodi  partite/s  mosse/s  (" + Runtime.getRuntime().availableProcessors() + " CPU)");
+        rows.forEach(System.out::println);
+    }
+
+    //Una prova: nodi avviati, carico distribuito su tutti, riga del risultato finale
+    private static String run(int nodes) throws Exception {
+        StringJoiner spec = new StringJoiner(","), targets = new StringJoiner(",");
+        for (int node = 0; node < nodes; node++) {
+            int port = BASE_PORT + 10 * node;
+            spec.add("localhost:" + port + ":" + (port + 1)); //Porta dei client e porta dei collegamenti
+            targets.add("localhost:" + port);
+        }
+
+        List<Process> servers = new ArrayList<>();
+        try {
+            for (int node = 0; node < nodes; node++) {
+                servers.add(java("TicTacToe.TicTacToeServer",
+                        "-Dtictactoe.cluster.nodes=" + spec, "-Dtictactoe.cluster.node=" + node,
+                        "-Dtictactoe.video.port=" + (BASE_PORT + 10 * node + 2), "-Dtictactoe.metrics.port=0",
+                        "-Dtictactoe.bots=", "-Dtictactoe.server.mode=nio")
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectErrorStream(true).start());
+            }
+            TimeUnit.SECONDS.sleep(2L + nodes); //Avvio dei nodi e dei collegamenti (nuovo tentativo ogni secondo)
+
+            List<String> load = new ArrayList<>();
+            for (String property : System.getProperties().stringPropertyNames())
+                if (property.startsWith("tictactoe.load.") || property.equals("tictactoe.codec"))
+                    load.add("-D" + property + "=" + System.getProperty(property));
+            load.add(targets.toString());
+            Process generator = java("TicTacToe.LoadGenerator", load.toArray(new String[0])).redirectErrorStream(true).start();
+
+            String result = null;
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(generator.getInputStream()))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    System.out.println("[" + nodes + " nodi] " + line);
+                    if (line.startsWith("Risultato finale")) result = line;
+                }
+            }
+            generator.waitFor();
+            if (result == null) return String.format("%4d  nessun risultato", nodes);
+            Matcher matcher = RESULT.matcher(result);
+            if (!matcher.find()) return String.format("%4d  %s", nodes, result);
+            //Rapporto sulla durata della prova: LoadGenerator divide anche per l'attesa finale delle partite in corso
+            return String.format("%4d  %9.1f  %7.1f", nodes,
+                    Long.parseLong(matcher.group(1)) / (double) DURATION, Long.parseLong(matcher.group(2)) / (double) DURATION);
+        } finally {
+            for (Process server : servers)
+                server.destroy();
+            for (Process server : servers)
+                server.waitFor(5, TimeUnit.SECONDS);
+        }
+    }
+
+    //Processo java con il classpath di questo benchmark: le opzioni -D prima della classe, gli argomenti dopo
+    private static ProcessBuilder java(String mainClass, String... arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        List<String> after = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("-D")) command.add(argument);
+            else after.add(argument);
+        }
+        command.add(mainClass);
+        command.addAll(after);
+        return new ProcessBuilder(command);
+    }
+}
@@ -0,0 +1,61 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//Codifica e decodifica dei messaggi più frequenti con i due codec a frame
+//I messaggi non sono condivisi, quindi ogni invocazione codifica davvero (nessun corpo in cache)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"binary", "serialized"})
+    public String codec;
+
+    @Param({"MOVE", "BATCH", "PRESENCE_DELTA", "LIST_PLAYERS"})
+    public String message;
+
+    private MessageCodec messageCodec; //Codec misurato
+    private GameMessage<?> sample; //Messaggio da codificare
+    private byte[] body; //Corpo già codificato, per la sola decodifica
+
+    @Setup
+    public void prepare() throws IOException {
+        messageCodec = codec.equals("binary") ? BinaryCodec.INSTANCE : SerializedCodec.INSTANCE;
+        sample = switch (message) {
+            case "MOVE" -> GameMessage.move("4"); //Dal client, una per mossa
+            case "BATCH" -> GameMessage.batch(GameMessage.board("4", "X"), GameMessage.yourTurn()); //Al client, una per mossa
+            case "PRESENCE_DELTA" -> new GameMessage<>("PRESENCE_DELTA", new String[]{"42", "JOINED", "giocatore7", "BUSY", "giocatore3"});
+            default -> GameMessage.playersList(lobby(100)); //Lista completa di un client legacy
+        };
+        body = messageCodec.encode(sample);
+    }
+
+    private static String[] lobby(int players) {
+        String[] names = new String[players];
+        for (int i = 0; i < players; i++)
+            names[i] = "giocatore" + i;
+        return names;
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return messageCodec.encode(sample);
+    }
+
+    @Benchmark
+    public GameMessage<?> decode() throws IOException {
+        return messageCodec.decode(body, 0, body.length);
+    }
+
+    @Benchmark
+    public GameMessage<?> roundTrip() throws IOException {
+        byte[] encoded = messageCodec.encode(sample);
+        return messageCodec.decode(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,206 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Mosse al secondo del motore attuale (Board) rispetto al vecchio tabellone String[9], su partite di tris classico
+//Ogni invocazione gioca una partita registrata fino alla fine, costruendo i messaggi come fa Game.handleMove;
+//handleMove gioca le stesse partite attraverso Game, con code di uscita, batch e pulizia della partita
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameEngineBenchmark {
+    private static final int GAMES = 1024; //Partite casuali registrate
+
+    private String[][] games; //Sequenze di mosse, come arrivano dal client, ognuna fino a vittoria o pareggio
+    private int next; //Prossima partita da giocare
+
+    //Contatore delle mosse: JMH lo riporta come mosse al secondo
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Moves {
+        public long moves;
+
+        @Setup(Level.Iteration)
+        public void reset() { moves = 0; }
+    }
+
+    //Due giocatori in lobby per le partite giocate attraverso Game
+    @State(Scope.Thread)
+    public static class Players {
+        private static final AtomicInteger ids = new AtomicInteger(); //Nickname diversi per ogni thread
+        Player x;
+        Player o;
+
+        @Setup
+        public void connect() {
+            int id = ids.incrementAndGet();
+            x = BenchmarkPlayers.connect("bench-x-" + id, true);
+            o = BenchmarkPlayers.connect("bench-o-" + id, true);
+        }
+
+        @TearDown
+        public void disconnect() {
+            BenchmarkPlayers.disconnect(x);
+            BenchmarkPlayers.disconnect(o);
+        }
+    }
+
+    @Setup
+    public void recordGames() {
+        Random random = new Random(42); //Partite uguali ad ogni esecuzione
+        games = new String[GAMES][];
+        for (int g = 0; g < GAMES; g++) {
+            int[] order = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+            for (int i = order.length - 1; i > 0; i--) { //Ordine casuale delle celle
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            Board board = new Board(GameRules.CLASSIC);
+            int played = 0;
+            while (played < 9 && !board.play(order[played], played % 2 == 0)) played++; //Si ferma alla prima vittoria
+            String[] moves = new String[Math.min(played + 1, 9)];
+            for (int i = 0; i < moves.length; i++) moves[i] = String.valueOf(order[i]);
+            games[g] = moves;
+        }
+    }
+
+    private String[] nextGame() {
+        String[] game = games[next];
+        next = (next + 1) % GAMES;
+        return game;
+    }
+
+    @Benchmark
+    public void board(Moves counter, Blackhole sink) {
+        BoardEngine engine = new BoardEngine();
+        for (String position : nextGame()) {
+            engine.move(position, sink);
+            counter.moves++;
+        }
+    }
+
+    @Benchmark
+    public void stringBoard(Moves counter, Blackhole sink) {
+        StringBoardEngine engine = new StringBoardEngine();
+        for (String position : nextGame()) {
+            engine.move(position, sink);
+            counter.moves++;
+        }
+    }
+
+    @Benchmark
+    public void handleMove(Players players, Moves counter) {
+        Game game = new Game(players.x, players.o, Game.idFor(players.x.getNickname(), players.o.getNickname()), GameRules.CLASSIC);
+        boolean xToMove = true;
+        for (String position : nextGame()) {
+            game.applyMove(xToMove ? players.x : players.o, position); //Sul thread del benchmark, che possiede la partita
+            xToMove = !xToMove;
+            counter.moves++;
+        }
+    }
+
+    //Percorso della mossa attuale: Board e messaggi precalcolati
+    static final class BoardEngine {
+        private static final GameMessage<?>[] BOARD_UPDATES = new GameMessage<?>[9 * 2];
+        private static final GameMessage<?> YOUR_TURN = GameMessage.yourTurn().shared();
+        private static final GameMessage<?> OPPONENT_TURN = GameMessage.opponentTurn().shared();
+        private static final GameMessage<?> X_WINS = GameMessage.gameOver("X").shared();
+        private static final GameMessage<?> O_WINS = GameMessage.gameOver("O").shared();
+        private static final GameMessage<?> TIE = GameMessage.gameOver("TIE").shared();
+
+        static {
+            for (int pos = 0; pos < 9; pos++) {
+                BOARD_UPDATES[pos * 2] = GameMessage.board(String.valueOf(pos), "X").shared();
+                BOARD_UPDATES[pos * 2 + 1] = GameMessage.board(String.valueOf(pos), "O").shared();
+            }
+        }
+
+        private final Board board = new Board(GameRules.CLASSIC);
+        private boolean xToMove = true;
+
+        void move(String position, Blackhole sink) {
+            int pos = Integer.parseInt(position);
+            if (!board.isFree(pos)) return;
+            boolean won = board.play(pos, xToMove);
+            sink.consume(BOARD_UPDATES[pos * 2 + (xToMove ? 0 : 1)]);
+            if (won) {
+                sink.consume(xToMove ? X_WINS : O_WINS);
+                return;
+            }
+            if (board.isFull()) {
+                sink.consume(TIE);
+                return;
+            }
+            xToMove = !xToMove;
+            sink.consume(YOUR_TURN);
+            sink.consume(OPPONENT_TURN);
+        }
+    }
+
+    //Copia del motore precedente (tabellone String[9], tabella delle vittorie allocata ad ogni mossa)
+    static final class StringBoardEngine {
+        private final String[] board = new String[9];
+        private String currentPlayer = "X";
+
+        StringBoardEngine() {
+            java.util.Arrays.fill(board, "");
+        }
+
+        void move(String position, Blackhole sink) {
+            int pos = Integer.parseInt(position);
+            if (pos < 0 || pos >= 9 || !board[pos].equals("")) return;
+
+            board[pos] = currentPlayer;
+            sink.consume(new GameMessage<>("BOARD", new String[]{String.valueOf(pos), currentPlayer}));
+            sink.consume(new GameMessage<>("BOARD", new String[]{String.valueOf(pos), currentPlayer}));
+
+            String winner = checkWinner();
+            if (winner != null) {
+                sink.consume(GameMessage.gameOver(winner));
+                sink.consume(GameMessage.gameOver(winner));
+                return;
+            }
+            if (isBoardFull()) {
+                sink.consume(GameMessage.gameOver("TIE"));
+                sink.consume(GameMessage.gameOver("TIE"));
+                return;
+            }
+            currentPlayer = currentPlayer.equals("X") ? "O" : "X";
+            sink.consume(GameMessage.yourTurn());
+            sink.consume(GameMessage.opponentTurn());
+        }
+
+        private String checkWinner() {
+            int[][] wins = {
+                    {0, 1, 2}, {3, 4, 5}, {6, 7, 8},
+                    {0, 3, 6}, {1, 4, 7}, {2, 5, 8},
+                    {0, 4, 8}, {2, 4, 6}
+            };
+            for (int[] win : wins) {
+                if (!board[win[0]].equals("") &&
+                        board[win[0]].equals(board[win[1]]) &&
+                        board[win[1]].equals(board[win[2]])) {
+                    return board[win[0]];
+                }
+            }
+            return null;
+        }
+
+        private boolean isBoardFull() {
+            for (String cell : board) {
+                if (cell.equals("")) return false;
+            }
+            return true;
+        }
+    }
+}
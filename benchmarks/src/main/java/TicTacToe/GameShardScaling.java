@@ -0,0 +1,233 @@
+package TicTacToe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Partite in parallelo con lock per partita (tictactoe.game.shards=0) e con gli shard: 50.000 partite di tris sempre in
+//corso, i giocatori sono distribuiti su N thread "reader" che simulano i reader bloccanti o gli event loop NIO e
+//rispondono a ogni YOUR_TURN con una mossa; a fine partita la coppia ne inizia subito un'altra. Misura mosse/s,
+//partite/s, tempo dal turno alla mossa applicata (code del reader e dello shard comprese) e contesa sui monitor (blocchi e tempo bloccato di tutti i thread)
+//Ogni configurazione gira in un processo separato, con le opzioni -Dtictactoe.bench.* di questo
+//Uso: java -cp benchmarks/target/benchmarks.jar TicTacToe.GameShardScaling [shard...]   (default: 0 e uno per core)
+public class GameShardScaling {
+    private static final int GAMES = Integer.getInteger("tictactoe.bench.games", 50_000); //Partite contemporanee
+    private static final int READERS = Integer.getInteger("tictactoe.bench.readers", 2 * Runtime.getRuntime().availableProcessors());
+    private static final int WARMUP = Integer.getInteger("tictactoe.bench.warmup", 5); //Secondi prima della misura
+    private static final int DURATION = Integer.getInteger("tictactoe.bench.duration", 10); //Secondi misurati
+    private static final Pattern RESULT = Pattern.compile("Risultato: (.*)");
+    private static final GameMessage<?>[] MOVES = new GameMessage<?>[9]; //Messaggi MOVE precalcolati, come i bot
+
+    static {
+        for (int pos = 0; pos < MOVES.length; pos++) MOVES[pos] = GameMessage.move(String.valueOf(pos));
+    }
+
+    private static final LongAdder moves = new LongAdder(); //Mosse confermate (BOARD ricevuti da X)
+    private static final LongAdder games = new LongAdder(); //Partite concluse
+    private static final LatencyHistogram moveLatency = new LatencyHistogram( //Da YOUR_TURN all'aggiornamento della propria mossa, fino a 10 s
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 10_000_000);
+    private static volatile boolean measuring; //Latenze registrate solo dopo il riscaldamento
+    private static List<BlockingQueue<Runnable>> readers; //Casella di ogni thread reader
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run();
+            return;
+        }
+        int[] shards = args.length > 0 ? new int[args.length] : new int[]{0, Runtime.getRuntime().availableProcessors()};
+        for (int i = 0; i < args.length; i++)
+            shards[i] = Integer.parseInt(args[i]);
+
+        List<String> rows = new ArrayList<>();
+        for (int count : shards)
+            rows.add(String.format("%6s  %s", count == 0 ? "lock" : count, child(count)));
+
+        System.out.println();
+        System.out.println("shard  (" + GAMES + " partite, " + READERS + " reader, " + Runtime.getRuntime().availableProcessors() + " CPU)");
+        rows.forEach(System.out::println);
+    }
+
+    //Una configurazione in un processo nuovo: GameShards legge il numero di shard all'avvio
+    private static String child(int shards) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dtictactoe.game.shards=" + shards);
+        for (String property : System.getProperties().stringPropertyNames())
+            if (property.startsWith("tictactoe.bench."))
+                command.add("-D" + property + "=" + System.getProperty(property));
+        command.add("TicTacToe.GameShardScaling");
+        command.add("run");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        String result = "nessun risultato";
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                System.out.println("[" + (shards == 0 ? "lock" : shards + " shard") + "] " + line);
+                Matcher matcher = RESULT.matcher(line);
+                if (matcher.find()) result = matcher.group(1);
+            }
+        }
+        process.waitFor();
+        return result;
+    }
+
+    //Prova nel processo corrente
+    private static void run() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isThreadContentionMonitoringSupported()) threads.setThreadContentionMonitoringEnabled(true);
+
+        readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            BlockingQueue<Runnable> mailbox = new LinkedBlockingQueue<>();
+            readers.add(mailbox);
+            Thread reader = new Thread(() -> drain(mailbox), "reader-" + r);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        Client[] xs = new Client[GAMES], os = new Client[GAMES];
+        for (int g = 0; g < GAMES; g++) { //X e O della stessa partita su reader diversi, come due connessioni
+            xs[g] = new Client("x" + g, (2 * g) % READERS);
+            os[g] = new Client("o" + g, (2 * g + 1) % READERS);
+            xs[g].opponent = os[g];
+        }
+        for (int g = 0; g < GAMES; g++)
+            newGame(xs[g]);
+
+        TimeUnit.SECONDS.sleep(WARMUP);
+        long[] blocked = blocked(threads);
+        long startMoves = moves.sum(), startGames = games.sum();
+        measuring = true;
+        long start = System.nanoTime();
+        for (int s = 1; s <= DURATION; s++) {
+            TimeUnit.SECONDS.sleep(1);
+            System.out.printf("[%d s] mosse %d, partite %d%n", s, moves.sum() - startMoves, games.sum() - startGames);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] after = blocked(threads);
+        System.out.printf("Risultato: %,10.0f mosse/s  %,9.0f partite/s  mossa p50 <=%d us p99 <=%d us  blocchi %,d (%,d ms)%n",
+                (moves.sum() - startMoves) / seconds, (games.sum() - startGames) / seconds,
+                moveLatency.percentileMicros(0.5), moveLatency.percentileMicros(0.99), after[0] - blocked[0], after[1] - blocked[1]);
+        System.exit(0); //I thread degli shard e dei reader non terminano
+    }
+
+    //Blocchi su un monitor e millisecondi bloccati, sommati su tutti i thread vivi
+    private static long[] blocked(ThreadMXBean threads) {
+        long[] total = new long[2];
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null) continue;
+            total[0] += info.getBlockedCount();
+            total[1] += Math.max(0, info.getBlockedTime());
+        }
+        return total;
+    }
+
+    private static void drain(BlockingQueue<Runnable> mailbox) {
+        try {
+            while (true) mailbox.take().run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Nuova partita per la coppia di x, avviata come dopo una sfida accettata
+    private static void newGame(Client x) {
+        Client o = x.opponent;
+        Game game = new Game(x.player, o.player, Game.idFor(x.player.getNickname(), o.player.getNickname()), GameRules.CLASSIC);
+        if (!x.player.joinGame(game) || !o.player.joinGame(game)) { //O non ha ancora lasciato la partita precedente: si riprova
+            x.player.leaveGame(game);
+            x.post(() -> newGame(x));
+            return;
+        }
+        game.start();
+    }
+
+    //Client simulato: riceve i messaggi direttamente dalla coda del suo Player e gioca una cella libera a caso
+    private static final class Client implements Transport {
+        final Player player;
+        private final int reader; //Thread reader della connessione
+        private Client opponent; //Solo per X: chi ricomincia la partita
+        private volatile int occupied; //Celle occupate (scritte da chi consegna i messaggi, lette dal reader)
+        private volatile long turnAt; //Arrivo dell'ultimo YOUR_TURN, 0 se la mossa è già stata applicata
+
+        Client(String nickname, int reader) {
+            this.player = new Player(this, nickname);
+            this.reader = reader;
+        }
+
+        void post(Runnable task) { readers.get(reader).add(task); }
+
+        @Override
+        public synchronized void onQueued() {
+            GameMessage<?> message;
+            while ((message = player.outbound().poll()) != null) handle(message);
+        }
+
+        private void handle(GameMessage<?> message) {
+            switch (message.getType()) {
+                case "BATCH":
+                    for (GameMessage<?> inner : message.getPayloadAsMessages()) handle(inner);
+                    break;
+                case "GAME_START":
+                    occupied = 0;
+                    break;
+                case "BOARD":
+                    occupied |= 1 << Integer.parseInt(message.getPayloadAsStringArray()[0]);
+                    if (opponent != null) moves.increment();
+                    break;
+                case "YOUR_TURN":
+                    turnAt = System.nanoTime();
+                    post(this::move);
+                    break;
+                case "OPPONENT_TURN":
+                    answered();
+                    break;
+                case "GAME_OVER":
+                    answered();
+                    if (opponent != null) {
+                        games.increment();
+                        post(() -> newGame(this));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        //La mossa del turno è stata applicata: l'aggiornamento è arrivato
+        private void answered() {
+            if (turnAt == 0) return;
+            if (measuring) moveLatency.record(System.nanoTime() - turnAt);
+            turnAt = 0;
+        }
+
+        //Sul thread reader: una cella libera a caso, inviata come un messaggio del client
+        private void move() {
+            int taken = occupied; //Nessun lock: non si contende il monitor con chi consegna i messaggi
+            int free = 9 - Integer.bitCount(taken);
+            if (free == 0) return;
+            int skip = ThreadLocalRandom.current().nextInt(free);
+            int cell = 0;
+            while ((taken & 1 << cell) != 0 || skip-- > 0) cell++;
+            player.onMessage(MOVES[cell]);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
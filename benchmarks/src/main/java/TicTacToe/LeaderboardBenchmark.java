@@ -0,0 +1,54 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Costo della classifica con molti giocatori: aggiornamento Elo dopo una partita, posizione di un giocatore e pagina
+//della classifica; i giocatori vengono prima portati a punteggi diversi con partite casuali
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeaderboardBenchmark {
+    @Param({"10000", "100000"})
+    public int players; //Giocatori in classifica
+
+    @Param({"0", "5000"})
+    public int offset; //Posizione della pagina richiesta
+
+    private Leaderboard leaderboard;
+    private String[] nicknames;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void fill() {
+        leaderboard = new Leaderboard();
+        nicknames = new String[players];
+        for (int i = 0; i < players; i++)
+            nicknames[i] = "player-" + i;
+        for (int i = 0; i < players * 5; i++) //Circa dieci partite a testa
+            leaderboard.result(pick(), pick(), random.nextInt(3) / 2.0);
+    }
+
+    private String pick() { return nicknames[random.nextInt(players)]; }
+
+    @Benchmark
+    public int[] result() { //Fine partita: due punteggi aggiornati e spostati nella classifica
+        return leaderboard.result(pick(), pick(), random.nextInt(3) / 2.0);
+    }
+
+    @Benchmark
+    public int rank() { //Posizione di un giocatore
+        return leaderboard.rank(pick());
+    }
+
+    @Benchmark
+    public void page(Blackhole blackhole) { //Pagina di 10 righe dalla posizione offset
+        blackhole.consume(leaderboard.page(offset, 10));
+    }
+}
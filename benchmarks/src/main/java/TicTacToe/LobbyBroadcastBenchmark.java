@@ -0,0 +1,49 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Costo di un aggiornamento della lobby con 100, 1.000 e 10.000 giocatori connessi:
+//un delta condiviso per i client a frame, la lista completa ricostruita per ogni client legacy
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dtictactoe.presence.window=60000") //Lo scheduler non interferisce: i flush li fa il benchmark
+@State(Scope.Benchmark)
+public class LobbyBroadcastBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int players;
+
+    @Param({"true", "false"})
+    public boolean deltas; //false = tutti client legacy
+
+    private final List<Player> lobby = new ArrayList<>(); //Giocatori connessi
+    private boolean busy; //Stato alternato del giocatore che cambia
+
+    @Setup
+    public void connect() {
+        for (int i = 0; i < players; i++)
+            lobby.add(BenchmarkPlayers.connect("giocatore" + i, deltas));
+        Presence.flush(); //Pubblica i JOINED del setup
+    }
+
+    @TearDown
+    public void disconnect() {
+        for (Player player : lobby)
+            BenchmarkPlayers.disconnect(player);
+        Presence.flush();
+        lobby.clear();
+    }
+
+    //Un giocatore entra o esce da una partita e la lobby riceve l'aggiornamento
+    @Benchmark
+    public void broadcast() {
+        busy = !busy;
+        Presence.setBusy(lobby.get(0).getNickname(), busy);
+        Presence.flush();
+    }
+}
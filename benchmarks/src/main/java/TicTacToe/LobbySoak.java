@@ -0,0 +1,75 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+//Prova di durata: un client legacy resta in lobby e riceve un milione di LIST_PLAYERS sullo stesso stream
+//Misura l'heap dopo GC a intervalli regolari e fallisce (exit 1) se cresce oltre il budget
+//Uso: java -cp benchmarks/target/benchmarks.jar TicTacToe.LobbySoak [broadcast] [budget MB]
+//Con -Dtictactoe.stream.resetMessages=0 riproduce il comportamento senza reset, e l'heap cresce a ogni broadcast
+public class LobbySoak {
+    private static final int SAMPLES = 10; //Misure dell'heap durante la prova
+
+    public static void main(String[] args) throws Exception {
+        int broadcasts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000; //Broadcast da inviare
+        long budget = (args.length > 1 ? Long.parseLong(args[1]) : 16) * 1024 * 1024; //Crescita massima ammessa
+        String[] lobby = new String[20]; //Giocatori in lobby
+        for (int i = 0; i < lobby.length; i++)
+            lobby[i] = "giocatore" + i;
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ServerSocket server = new ServerSocket(0, 1, loopback);
+             Socket client = new Socket(loopback, server.getLocalPort());
+             Socket accepted = server.accept()) {
+            new ObjectOutputStream(client.getOutputStream()).flush(); //Header del client legacy, letto dal trasporto
+            Thread reader = new Thread(() -> drain(client, broadcasts), "LegacyClient"); //Il client legge tutto, come in lobby
+            reader.start();
+            ObjectStreamTransport transport = new ObjectStreamTransport(accepted, accepted.getInputStream());
+
+            long baseline = -1;
+            long worst = 0;
+            int step = Math.max(1, broadcasts / SAMPLES);
+            long start = System.nanoTime();
+            for (int i = 1; i <= broadcasts; i++) {
+                transport.send(GameMessage.playersList(lobby.clone())); //Un array nuovo a ogni broadcast, come sendLegacyPlayerList
+                if (i % step != 0) continue;
+                long used = usedHeap();
+                if (baseline < 0) baseline = used; //Prima misura dopo il riscaldamento
+                worst = Math.max(worst, used - baseline);
+                System.out.printf("%,10d broadcast  heap %,8d KB  (%+,d KB)  trattenuti dallo stream %,d B%n",
+                        i, used / 1024, (used - baseline) / 1024, transport.retainedBytes());
+            }
+            reader.join();
+            System.out.printf("%,d broadcast in %.1f s, crescita massima %,d KB (budget %,d KB)%n",
+                    broadcasts, (System.nanoTime() - start) / 1e9, worst / 1024, budget / 1024);
+            if (worst > budget) {
+                System.out.println("FALLITA: l'heap cresce con la durata della sessione");
+                System.exit(1);
+            }
+            System.out.println("OK: heap limitato");
+        }
+    }
+
+    //Client legacy: legge i messaggi con un solo ObjectInputStream, svuotato dai TC_RESET del server
+    private static void drain(Socket client, int messages) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(client.getInputStream());
+            for (int i = 0; i < messages; i++)
+                in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Heap occupato dopo la raccolta dei rifiuti
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,90 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Scansione di un file di replay con milioni di partite di tris casuali tra 10.000 giocatori: interrogazioni "vinte da X in
+//meno di 6 mosse" e, come ReplayTool wins, "vinte da un giocatore in meno di 6 mosse" lette dal file mappato; il file
+//viene scritto una volta in una cartella temporanea
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplayScanBenchmark {
+    @Param({"1000000", "5000000"})
+    public int games; //Partite nel file
+
+    private static final int PLAYERS = 10_000;
+
+    private Path file;
+    private int player; //Indice del giocatore interrogato
+
+    @Setup
+    public void write() throws IOException {
+        file = Files.createTempFile("tictactoe", ".replay");
+        Random random = new Random(42); //Partite uguali ad ogni esecuzione
+        try (Replay.Writer out = new Replay.Writer(file)) {
+            for (int g = 0; g < games; g++)
+                out.append(randomGame(random));
+        }
+        player = List.of(Replay.players(file)).indexOf("p0");
+    }
+
+    //Partita di tris con mosse casuali fino a vittoria o pareggio
+    private static MatchHistory.Match randomGame(Random random) {
+        int[] order = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        Board board = new Board(GameRules.CLASSIC);
+        int played = 0;
+        char result = MatchHistory.TIE;
+        while (played < 9) {
+            boolean x = played % 2 == 0;
+            if (board.play(order[played++], x)) {
+                result = x ? MatchHistory.X_WINS : MatchHistory.O_WINS;
+                break;
+            }
+        }
+        int[] moves = new int[played];
+        System.arraycopy(order, 0, moves, 0, played);
+        int x = random.nextInt(PLAYERS), o = (x + 1 + random.nextInt(PLAYERS - 1)) % PLAYERS;
+        return new MatchHistory.Match(0, 0, "p" + x, "p" + o, result, false, GameRules.CLASSIC, moves, 0, 0);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long quickWinsByX() throws IOException {
+        long[] matching = new long[1];
+        Replay.scan(file, replay -> {
+            if (replay.result() == Replay.X_WINS && replay.moveCount() < 6) matching[0]++;
+        });
+        return matching[0];
+    }
+
+    @Benchmark
+    public long quickWinsByPlayer() throws IOException {
+        long[] matching = new long[1];
+        Replay.scan(file, replay -> {
+            boolean x = replay.playerX() == player;
+            if ((x || replay.playerO() == player) && replay.result() == (x ? Replay.X_WINS : Replay.O_WINS)
+                    && replay.moveCount() < 6) matching[0]++;
+        });
+        return matching[0];
+    }
+}
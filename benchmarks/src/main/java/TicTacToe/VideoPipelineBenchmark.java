@@ -0,0 +1,108 @@
+package TicTacToe;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Percorso video: scalatura + JPEG di un frame 640x480 della webcam (VideoPanel) e inoltro di un frame
+//dal server al destinatario su loopback (TicTacToeServer.forwardFrame -> VideoClient.sendFrame)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class VideoPipelineBenchmark {
+    private static final String SENDER = "bench-sender";
+    private static final String RECEIVER = "bench-receiver";
+
+    //Frame della webcam: rumore su un gradiente, per non premiare la compressione di un'immagine uniforme
+    @State(Scope.Thread)
+    public static class Frame {
+        BufferedImage image;
+
+        @Setup
+        public void capture() {
+            image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+            Random random = new Random(42);
+            for (int y = 0; y < 480; y++)
+                for (int x = 0; x < 640; x++)
+                    image.setRGB(x, y, (x * 255 / 640) << 16 | (y * 255 / 480) << 8 | random.nextInt(64));
+        }
+    }
+
+    //Un VideoClient del server collegato su loopback a un client che registra la coppia e scarta i frame ricevuti
+    @State(Scope.Benchmark)
+    public static class Relay {
+        @Param({"8192", "32768"})
+        public int frameSize; //Dimensione tipica di un JPEG 320x240 e di un frame più grande
+
+        byte[] frame;
+        private ServerSocket server;
+        private Socket client;
+
+        @Setup
+        public void connect() throws Exception {
+            frame = new byte[frameSize];
+            new Random(42).nextBytes(frame);
+            server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            Thread handler = new Thread(new VideoClient(server.accept()), "VideoClient"); //Lato server, come in startVideoServer
+            handler.setDaemon(true);
+            handler.start();
+
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            writeString(out, RECEIVER); //Registrazione: nickname e avversario
+            writeString(out, SENDER);
+            out.flush();
+            if (in.readInt() != 1) throw new IOException("Registrazione video rifiutata");
+
+            Thread drain = new Thread(() -> drain(in), "VideoDrain"); //Il destinatario legge tutto, come il receiveLoop
+            drain.setDaemon(true);
+            drain.start();
+        }
+
+        @TearDown
+        public void close() throws IOException {
+            client.close();
+            server.close();
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static void drain(DataInputStream in) {
+            byte[] buffer = new byte[1 << 20];
+            try {
+                while (true) {
+                    int size = in.readInt();
+                    in.readFully(buffer, 0, size);
+                }
+            } catch (IOException e) {
+                //Connessione chiusa a fine benchmark
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] scaleAndEncode(Frame frame) throws IOException {
+        return VideoPanel.encodeFrame(frame.image);
+    }
+
+    @Benchmark
+    public void forwardFrame(Relay relay) {
+        TicTacToeServer.forwardFrame(SENDER, relay.frame);
+    }
+}
@@ -0,0 +1,204 @@
+package TicTacToe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Costo del relay video con molte coppie attive: relay bloccante (VideoClient, un byte[] per frame) e relay NIO
+//(NioVideoServer, buffer diretti dal pool). Ogni client invia frame a FPS fissi e legge quelli dell'avversario in un
+//buffer riutilizzato, così le allocazioni e le pause del GC sono del relay. Misura frame/s consegnati, CPU dei thread
+//del relay, byte allocati dai thread del relay e pause del GC; ogni modalità gira in un processo separato
+//Uso: java -cp benchmarks/target/benchmarks.jar TicTacToe.VideoRelayScaling [blocking|nio...]
+public class VideoRelayScaling {
+    private static final int PAIRS = Integer.getInteger("tictactoe.bench.pairs", 50); //Coppie video
+    private static final int FPS = Integer.getInteger("tictactoe.bench.fps", 15); //Frame al secondo per client
+    private static final int FRAME = Integer.getInteger("tictactoe.bench.frameSize", 32 * 1024); //Byte per frame
+    private static final int WARMUP = Integer.getInteger("tictactoe.bench.warmup", 5); //Secondi prima della misura
+    private static final int DURATION = Integer.getInteger("tictactoe.bench.duration", 20); //Secondi misurati
+    private static final Pattern RESULT = Pattern.compile("Risultato: (.*)");
+
+    private static final LongAdder delivered = new LongAdder(); //Frame ricevuti dai client
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run();
+            return;
+        }
+        String[] modes = args.length > 0 ? args : new String[]{"blocking", "nio"};
+        List<String> rows = new ArrayList<>();
+        for (String mode : modes)
+            rows.add(String.format("%9s  %s", mode, child(mode)));
+
+        System.out.println();
+        System.out.println("relay  (" + PAIRS + " coppie, " + FPS + " FPS, frame da " + FRAME / 1024 + " KB, "
+                + Runtime.getRuntime().availableProcessors() + " CPU)");
+        rows.forEach(System.out::println);
+    }
+
+    //Una modalità in un processo nuovo, su una porta libera
+    private static String child(String mode) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dtictactoe.video.mode=" + mode);
+        command.add("-Dtictactoe.video.port=" + port);
+        for (String property : System.getProperties().stringPropertyNames())
+            if (property.startsWith("tictactoe.bench."))
+                command.add("-D" + property + "=" + System.getProperty(property));
+        command.add("TicTacToe.VideoRelayScaling");
+        command.add("run");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        String result = "nessun risultato";
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.contains("video registrat") || line.contains("VIDEO da")) continue; //Log del server
+                System.out.println("[" + mode + "] " + line);
+                Matcher matcher = RESULT.matcher(line);
+                if (matcher.find()) result = matcher.group(1);
+            }
+        }
+        process.waitFor();
+        return result;
+    }
+
+    //Prova nel processo corrente: relay come in TicTacToeServer, client su loopback
+    private static void run() throws Exception {
+        int port = Integer.getInteger("tictactoe.video.port");
+        Thread relay = new Thread(TicTacToeServer::startVideoServer, "VideoServerThread");
+        relay.setDaemon(true);
+        relay.start();
+        TimeUnit.SECONDS.sleep(1);
+
+        byte[] frame = new byte[FRAME]; //Lo stesso JPEG "finto" per tutti: i client non allocano
+        new Random(42).nextBytes(frame);
+        List<Thread> senders = new ArrayList<>();
+        for (int p = 0; p < PAIRS; p++) {
+            senders.add(connect(port, "a" + p, "b" + p, frame, p));
+            senders.add(connect(port, "b" + p, "a" + p, frame, p));
+        }
+        senders.forEach(Thread::start); //Dopo tutte le registrazioni: nessun frame arriva prima della conferma
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TimeUnit.SECONDS.sleep(WARMUP);
+        long[] before = relayThreads(threads);
+        long[] gcBefore = gc();
+        long framesBefore = delivered.sum();
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(DURATION);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] after = relayThreads(threads);
+        long[] gcAfter = gc();
+        System.out.printf("Risultato: %,8.0f frame/s  CPU relay %5.1f%%  allocati %,8.1f MB/s  GC %d pause, %,d ms%n",
+                (delivered.sum() - framesBefore) / seconds, (after[0] - before[0]) / 1e7 / seconds,
+                (after[1] - before[1]) / 1e6 / seconds, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        System.exit(0); //I thread dei client e del relay non terminano
+    }
+
+    //CPU (ns) e byte allocati dai thread del relay: gestori "video-N" (bloccante) o il thread del selector (NIO)
+    private static long[] relayThreads(com.sun.management.ThreadMXBean threads) {
+        long[] total = new long[2];
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (!name.startsWith("video-") && !name.equals("VideoServerThread")) continue;
+            total[0] += Math.max(0, threads.getThreadCpuTime(thread.threadId()));
+            total[1] += Math.max(0, threads.getThreadAllocatedBytes(thread.threadId()));
+        }
+        return total;
+    }
+
+    //Pause e millisecondi di GC di tutti i collector
+    private static long[] gc() {
+        long[] total = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total[0] += Math.max(0, collector.getCollectionCount());
+            total[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    //Client video come VideoPanel: registrazione, un thread che riceve e uno (restituito, da avviare) che invia a FPS fissi
+    private static Thread connect(int port, String nickname, String opponent, byte[] frame, int pair) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), FRAME + 4));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        for (String value : new String[]{nickname, opponent}) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+        if (in.readInt() != 1) throw new IOException("Registrazione video rifiutata: " + nickname);
+
+        Thread receiver = new Thread(() -> receive(in, out), "receiver-" + nickname);
+        receiver.setDaemon(true);
+        receiver.start();
+        Thread sender = new Thread(() -> send(out, frame, pair), "sender-" + nickname);
+        sender.setDaemon(true);
+        return sender;
+    }
+
+    private static void send(DataOutputStream out, byte[] frame, int pair) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / FPS;
+        long next = System.nanoTime() + interval * pair / Math.max(1, PAIRS); //Coppie sfasate, come webcam indipendenti
+        try {
+            while (true) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                next += interval;
+                synchronized (out) { //Come VideoPanel: la risposta ai PING usa lo stesso stream
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            //Connessione chiusa a fine prova
+        }
+    }
+
+    private static void receive(DataInputStream in, DataOutputStream out) {
+        byte[] buffer = new byte[1 << 20];
+        try {
+            while (true) {
+                int size = in.readInt();
+                if (size == 0) { //PING
+                    synchronized (out) {
+                        out.writeInt(0);
+                        out.flush();
+                    }
+                    continue;
+                }
+                in.readFully(buffer, 0, size);
+                delivered.increment();
+            }
+        } catch (IOException e) {
+            //Connessione chiusa a fine prova
+        }
+    }
+}
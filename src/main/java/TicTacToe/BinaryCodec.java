@@ -0,0 +1,248 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Codec binario compatto: [tag tipo 1 byte][tipo payload 1 byte][payload]
+//Interi e posizioni come varint, stringhe come [lunghezza varint][UTF-8]
+public final class BinaryCodec implements MessageCodec {
+    public static final BinaryCodec INSTANCE = new BinaryCodec(); //Istanza condivisa (il codec non ha stato)
+
+    //Tipi noti: il tag è indice + 1. Aggiungere sempre in fondo, mai riordinare (il tag fa parte del protocollo)
+    private static final String[] TYPES = {
+            "SET_NICKNAME", "NICKNAME", "NICKNAME_SUCCESS", "NICKNAME_ERROR", "LIST_PLAYERS",
+            "CHALLENGE", "CHALLENGE_REQUEST", "CHALLENGE_SENT", "CHALLENGE_ACCEPT", "CHALLENGE_REJECT",
+            "CHALLENGE_ACCEPTED", "CHALLENGE_REJECTED", "CHALLENGE_ERROR", "GAME_START", "YOUR_TURN",
+            "OPPONENT_TURN", "BOARD", "GAME_OVER", "MOVE", "NOT_YOUR_TURN", "INVALID_MOVE", "OPPONENT_DISCONNECTED",
+            "PRESENCE_SNAPSHOT", "PRESENCE_DELTA", "BATCH", "QUEUE", "DEQUEUE", "QUEUED", "DEQUEUED",
+            "CHALLENGE_EXPIRED", "PING", "PONG",
+            "REDIRECT", "NODE_HELLO", "NODE_PRESENCE", "NODE_CHALLENGE", "NODE_DELIVER", "NODE_COMMAND", "NODE_LEFT",
+            "LEADERBOARD", "HISTORY", "SPECTATE", "UNSPECTATE", "THROTTLED"
+    };
+    private static final Map<String, Integer> TAGS = new HashMap<>(); //Tipo -> tag
+    private static final int TAG_CUSTOM = 0; //Tipo non in tabella: segue il nome come stringa
+
+    //Tipi di payload
+    private static final int NONE = 0; //Nessun payload
+    private static final int STRING = 1; //Stringa UTF-8
+    private static final int INT = 2; //Intero zigzag varint
+    private static final int NUMERIC_STRING = 3; //Stringa di cifre (es. posizione "4") trasmessa come varint
+    private static final int STRING_ARRAY = 4; //Array di stringhe
+    private static final int MESSAGES = 5; //Messaggi annidati (BATCH), ognuno codificato come un corpo completo
+    private static final int MAX_NESTING = 2; //Livelli di messaggi annidati: BATCH dentro le buste tra i nodi del cluster
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) //Costruisce la tabella inversa
+            TAGS.put(TYPES[i], i + 1);
+    }
+
+    private BinaryCodec() {}
+
+    //Tag di un tipo (TAG_CUSTOM se non è in tabella): indicizza anche i contatori per tipo delle metriche
+    static int tagOf(String type) {
+        Integer tag = TAGS.get(type);
+        return tag != null ? tag : TAG_CUSTOM;
+    }
+
+    static String typeOf(int tag) { return tag == TAG_CUSTOM ? "OTHER" : TYPES[tag - 1]; } //Nome del tipo per un tag
+
+    static int tagCount() { return TYPES.length + 1; } //Tag possibili, TAG_CUSTOM compreso
+
+    @Override
+    public byte id() { return Protocol.CODEC_BINARY; } //Id negoziato nell'handshake
+
+    @Override
+    public String name() { return "binary"; } //Nome del codec
+
+    @Override
+    public byte[] encode(GameMessage<?> message) throws IOException {
+        Writer out = new Writer(); //Buffer del corpo, preso dal pool
+        try {
+            writeMessage(out, message);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    private static void writeMessage(Writer out, GameMessage<?> message) throws IOException {
+        Integer tag = TAGS.get(message.getType()); //Tag del tipo
+        if (tag != null) {
+            out.writeByte(tag);
+        } else { //Tipo sconosciuto: lo scrive per esteso
+            out.writeByte(TAG_CUSTOM);
+            out.writeString(message.getType());
+        }
+
+        Object payload = message.getPayload(); //Payload da codificare
+        if (payload == null) {
+            out.writeByte(NONE);
+        } else if (payload instanceof String) {
+            String text = (String) payload;
+            if (isCanonicalNumber(text)) { //Posizioni e numeri: pochi byte invece di una stringa
+                out.writeByte(NUMERIC_STRING);
+                out.writeVarint(Integer.parseInt(text));
+            } else {
+                out.writeByte(STRING);
+                out.writeString(text);
+            }
+        } else if (payload instanceof Integer) {
+            out.writeByte(INT);
+            int value = (Integer) payload;
+            out.writeVarint((value << 1) ^ (value >> 31)); //Zigzag: anche i negativi restano corti
+        } else if (payload instanceof String[]) {
+            String[] values = (String[]) payload;
+            out.writeByte(STRING_ARRAY);
+            out.writeVarint(values.length); //Numero di elementi
+            for (String value : values)
+                out.writeString(value);
+        } else if (payload instanceof GameMessage<?>[]) {
+            GameMessage<?>[] messages = (GameMessage<?>[]) payload;
+            out.writeByte(MESSAGES);
+            out.writeVarint(messages.length); //Numero di messaggi
+            for (GameMessage<?> inner : messages)
+                writeMessage(out, inner);
+        } else {
+            throw new IOException("Payload non supportato dal codec binario: " + payload.getClass().getName());
+        }
+    }
+
+    @Override
+    public GameMessage<?> decode(byte[] data, int offset, int length) throws IOException {
+        return readMessage(new Reader(data, offset, length), MAX_NESTING); //Lettore sul corpo del frame
+    }
+
+    //Legge un messaggio; nesting = livelli di messaggi annidati ancora ammessi
+    private static GameMessage<?> readMessage(Reader in, int nesting) throws IOException {
+        int tag = in.readByte(); //Tag del tipo
+        String type;
+        if (tag == TAG_CUSTOM) {
+            type = in.readString(); //Tipo scritto per esteso
+        } else if (tag > 0 && tag <= TYPES.length) {
+            type = TYPES[tag - 1]; //Tipo da tabella
+        } else {
+            throw new IOException("Tag messaggio sconosciuto: " + tag);
+        }
+
+        int kind = in.readByte(); //Tipo di payload
+        switch (kind) {
+            case NONE:
+                return new GameMessage<>(type);
+            case STRING:
+                return new GameMessage<>(type, in.readString());
+            case INT:
+                int zigzag = in.readVarint();
+                return new GameMessage<>(type, (zigzag >>> 1) ^ -(zigzag & 1)); //Decodifica zigzag
+            case NUMERIC_STRING:
+                return new GameMessage<>(type, String.valueOf(in.readVarint()));
+            case STRING_ARRAY:
+                int count = in.readVarint(); //Numero di elementi
+                if (count < 0 || count > in.remaining()) throw new IOException("Array non valido: " + count);
+                String[] values = new String[count];
+                for (int i = 0; i < count; i++)
+                    values[i] = in.readString();
+                return new GameMessage<>(type, values);
+            case MESSAGES:
+                int size = in.readVarint(); //Numero di messaggi
+                if (nesting == 0 || size < 0 || size > in.remaining()) throw new IOException("BATCH non valido: " + size);
+                GameMessage<?>[] messages = new GameMessage<?>[size];
+                for (int i = 0; i < size; i++)
+                    messages[i] = readMessage(in, nesting - 1);
+                return new GameMessage<>(type, messages);
+            default:
+                throw new IOException("Tipo payload sconosciuto: " + kind);
+        }
+    }
+
+    //True per stringhe di cifre senza zeri iniziali che stanno in un int (così la decodifica restituisce la stessa stringa)
+    private static boolean isCanonicalNumber(String text) {
+        int length = text.length();
+        if (length == 0 || length > 9) return false; //Vuota o potenzialmente oltre Integer.MAX_VALUE
+        if (length > 1 && text.charAt(0) == '0') return false; //Zeri iniziali andrebbero persi
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    //Buffer di scrittura crescente
+    static final class Writer {
+        private byte[] buffer = BufferPool.acquire(); //Buffer riutilizzato: ogni messaggio del protocollo ci sta
+        private int size = 0; //Byte scritti
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) { //7 bit per byte, bit alto = continua
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8); //Nickname in UTF-8
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra <= buffer.length) return;
+            byte[] bigger = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra)); //Raddoppia fino a far posto
+            BufferPool.release(buffer);
+            buffer = bigger;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buffer, size); }
+
+        void release() { BufferPool.release(buffer); } //Il writer non va più usato
+    }
+
+    //Lettore con controllo dei limiti del frame
+    static final class Reader {
+        private final byte[] data; //Dati del frame
+        private int position; //Posizione corrente
+        private final int end; //Fine del corpo
+
+        Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        int readByte() throws IOException {
+            if (position >= end) throw new IOException("Frame troncato");
+            return data[position++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) { //Al massimo 5 byte
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint non valido");
+        }
+
+        int remaining() { return end - position; } //Byte non ancora letti
+
+        String readString() throws IOException {
+            int length = readVarint(); //Lunghezza in byte
+            if (length < 0 || length > end - position) throw new IOException("Stringa oltre la fine del frame");
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package TicTacToe;
+
+import java.io.IOException;
+
+//Trasporto bloccante con un reader e un writer dedicati: stream legacy o a frame su socket
+public interface BlockingTransport extends Transport {
+    void send(GameMessage<?> message) throws IOException; //Scrive subito un messaggio (chiamato dal writer)
+
+    GameMessage<?> receive() throws IOException; //Legge il prossimo messaggio, null a fine stream
+}
@@ -0,0 +1,59 @@
+package TicTacToe;
+
+//Tabellone m,n,k: una cella per byte (0 vuota, 1 X, 2 O)
+//La vittoria si cerca solo lungo le quattro direzioni che passano per l'ultima mossa, quindi il costo non dipende dalle dimensioni
+public final class Board {
+    private static final byte X = 1;
+    private static final byte O = 2;
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}}; //Orizzontale, verticale e diagonali (riga, colonna)
+
+    private final int width; //Colonne
+    private final int height; //Righe
+    private final int winLength; //Simboli in fila per vincere
+    private final byte[] cells; //Celle in ordine di riga (pos = riga * width + colonna)
+    private int filled; //Celle occupate
+
+    public Board(GameRules rules) {
+        this.width = rules.width;
+        this.height = rules.height;
+        this.winLength = rules.winLength;
+        this.cells = new byte[rules.cells()];
+    }
+
+    //True se la posizione è dentro il tabellone e la cella è libera
+    public boolean isFree(int pos) {
+        return pos >= 0 && pos < cells.length && cells[pos] == 0;
+    }
+
+    //Occupa la cella e restituisce true se la mossa allinea winLength simboli
+    public boolean play(int pos, boolean isX) {
+        byte stone = isX ? X : O;
+        cells[pos] = stone;
+        filled++;
+        int row = pos / width;
+        int col = pos % width;
+        for (int[] direction : DIRECTIONS) {
+            int run = 1 + count(row, col, direction[0], direction[1], stone) + count(row, col, -direction[0], -direction[1], stone);
+            if (run >= winLength) return true;
+        }
+        return false;
+    }
+
+    //Simboli uguali consecutivi dalla cella (esclusa) lungo una direzione, al massimo winLength - 1
+    private int count(int row, int col, int dRow, int dCol, byte stone) {
+        int run = 0;
+        int r = row + dRow;
+        int c = col + dCol;
+        while (run < winLength - 1 && r >= 0 && r < height && c >= 0 && c < width && cells[r * width + c] == stone) {
+            run++;
+            r += dRow;
+            c += dCol;
+        }
+        return run;
+    }
+
+    //Pareggio se tutte le celle sono occupate
+    public boolean isFull() {
+        return filled == cells.length;
+    }
+}
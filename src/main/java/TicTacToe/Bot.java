@@ -0,0 +1,142 @@
+package TicTacToe;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Avversario gestito dal server: si comporta come un client e riceve i messaggi direttamente dalla coda del suo Player
+//Un bot in lobby (registrato in connectedClients) e un bot nuovo per ogni partita, così un livello gioca molte partite insieme
+public final class Bot implements Transport {
+    //Livelli di gioco e nickname con cui compaiono in lobby
+    public enum Level {
+        RANDOM("Bot-Facile"), //Cella libera a caso
+        HEURISTIC("Bot-Medio"), //Vince, blocca, poi centro, angoli e lati
+        PERFECT("Bot-Imbattibile"); //Mossa dalla tabella del gioco risolto
+
+        final String nickname;
+
+        Level(String nickname) { this.nickname = nickname; }
+    }
+
+    private static final int MOVE_DELAY_MS = Integer.getInteger("tictactoe.bots.delay", 400); //Pausa prima di ogni mossa
+    private static final int[] PREFERRED = {4, 0, 2, 6, 8, 1, 3, 5, 7}; //Centro, angoli, lati
+    private static final GameMessage<?>[] MOVES = new GameMessage<?>[SolvedGame.CELLS]; //Messaggi MOVE precalcolati
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BotPlayer"); //Un solo thread per le mosse di tutti i bot
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        for (int pos = 0; pos < SolvedGame.CELLS; pos++) MOVES[pos] = GameMessage.move(String.valueOf(pos));
+    }
+
+    private final Level level;
+    private Player player; //Giocatore servito da questo bot
+    private boolean isX; //Simbolo del bot nella partita
+    private int x; //Celle di X
+    private int o; //Celle di O
+    private int position; //Indice in base 3 della posizione (vedi SolvedGame)
+
+    private Bot(Level level) { this.level = level; }
+
+    //Registra in lobby i livelli indicati (es. "random,heuristic,perfect"); stringa vuota per nessun bot
+    public static void registerAll(String levels) {
+        for (String name : levels.split(",")) {
+            if (name.isBlank()) continue;
+            Level level = Level.valueOf(name.trim().toUpperCase());
+            if (level == Level.PERFECT) SolvedGame.bestMove(0); //Risolve il gioco all'avvio, non alla prima partita
+            Bot bot = new Bot(level);
+            bot.player = new Player(bot, level.nickname);
+            TicTacToeServer.connectedClients.put(level.nickname, bot.player);
+            Presence.joined(level.nickname);
+            System.out.println("Bot in lobby: " + level.nickname);
+        }
+    }
+
+    //Giocatore nuovo per una partita contro questo livello
+    Player newGamePlayer() {
+        Bot bot = new Bot(level);
+        bot.player = new Player(bot, level.nickname);
+        return bot.player;
+    }
+
+    //I messaggi per il bot vengono letti subito dalla coda del suo Player
+    @Override
+    public synchronized void onQueued() {
+        GameMessage<?> message;
+        while ((message = player.outbound().poll()) != null) handle(message);
+    }
+
+    private void handle(GameMessage<?> message) {
+        switch (message.getType()) {
+            case "BATCH": //Aggiornamenti di una mossa in un unico messaggio
+                for (GameMessage<?> inner : message.getPayloadAsMessages()) handle(inner);
+                break;
+            case "GAME_START": //[simbolo, avversario]
+                isX = "X".equals(message.getPayloadAsStringArray()[0]);
+                x = o = position = 0;
+                break;
+            case "BOARD": //[posizione, simbolo]
+                String[] update = message.getPayloadAsStringArray();
+                int pos = Integer.parseInt(update[0]);
+                if ("X".equals(update[1])) {
+                    x |= 1 << pos;
+                    position += SolvedGame.POW3[pos];
+                } else {
+                    o |= 1 << pos;
+                    position += 2 * SolvedGame.POW3[pos];
+                }
+                break;
+            case "YOUR_TURN":
+                int move = chooseMove();
+                if (move >= 0) //La mossa arriva come da un client, dopo una breve pausa
+                    scheduler.schedule(() -> player.onMessage(MOVES[move]), MOVE_DELAY_MS, TimeUnit.MILLISECONDS);
+                break;
+            default: //Presenza, esito della partita e disconnessione dell'avversario non richiedono azioni
+                break;
+        }
+    }
+
+    private int chooseMove() {
+        int occupied = x | o;
+        if (Integer.bitCount(occupied) == SolvedGame.CELLS) return -1;
+        switch (level) {
+            case PERFECT:
+                return SolvedGame.bestMove(position);
+            case HEURISTIC:
+                int mine = isX ? x : o;
+                int theirs = isX ? o : x;
+                int win = completing(mine, occupied);
+                if (win >= 0) return win;
+                int block = completing(theirs, occupied);
+                if (block >= 0) return block;
+                for (int cell : PREFERRED) {
+                    if ((occupied & (1 << cell)) == 0) return cell;
+                }
+                return -1;
+            default:
+                int free = ThreadLocalRandom.current().nextInt(SolvedGame.CELLS - Integer.bitCount(occupied));
+                for (int cell = 0; cell < SolvedGame.CELLS; cell++) {
+                    if ((occupied & (1 << cell)) == 0 && free-- == 0) return cell;
+                }
+                return -1;
+        }
+    }
+
+    //Cella libera che completa una combinazione per la maschera indicata, -1 se non c'è
+    private static int completing(int mask, int occupied) {
+        for (int cell = 0; cell < SolvedGame.CELLS; cell++) {
+            if ((occupied & (1 << cell)) == 0 && SolvedGame.hasLine(mask | 1 << cell)) return cell;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean supportsHeartbeats() { return false; } //Nessuna connessione da controllare
+
+    @Override
+    public void close() {} //Nessuna connessione da chiudere
+}
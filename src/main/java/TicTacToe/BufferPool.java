@@ -0,0 +1,79 @@
+package TicTacToe;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Buffer di codifica riutilizzati: la codifica di un messaggio non alloca più un buffer di lavoro a ogni invio
+//I buffer non sono legati a thread o connessioni, quindi la memoria resta la stessa con 10 o 10.000 client
+final class BufferPool {
+    static final int BUFFER_SIZE = 4096; //Dimensione dei buffer del pool: ogni messaggio del protocollo ci sta
+    private static final int MAX_POOLED = Integer.getInteger("tictactoe.buffers.pooled", 64); //Buffer liberi conservati al massimo
+
+    private static final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>(); //Buffer pronti all'uso
+    private static final AtomicInteger pooled = new AtomicInteger(); //Buffer nella coda (size() della coda è O(n))
+    private static final LongAdder allocated = new LongAdder(); //Buffer creati perché il pool era vuoto
+
+    private BufferPool() {}
+
+    //Buffer libero dal pool, o uno nuovo se sono tutti in uso
+    static byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            return buffer;
+        }
+        allocated.increment();
+        return new byte[BUFFER_SIZE];
+    }
+
+    //Restituisce un buffer al pool; quelli ingranditi o in eccesso vengono lasciati al GC
+    static void release(byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) return;
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offer(buffer);
+    }
+
+    static int pooled() { return pooled.get(); }
+
+    static long allocated() { return allocated.sum(); }
+
+    //OutputStream su un buffer del pool, per i codec che scrivono tramite stream (es. serializzazione Java)
+    static final class Output extends OutputStream {
+        private byte[] buffer = acquire(); //Buffer corrente
+        private int size = 0; //Byte scritti
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra <= buffer.length) return;
+            byte[] bigger = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra)); //Messaggio fuori misura
+            BufferPool.release(buffer); //Il buffer del pool torna subito disponibile
+            buffer = bigger;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buffer, size); } //Copia della sola parte scritta
+
+        //Restituisce il buffer al pool: lo stream non va più usato
+        void release() {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package TicTacToe;
+
+//Sfida in attesa di risposta: chi ha sfidato chi e con quali regole
+public final class Challenge {
+    public final String challenger; //Nickname dello sfidante
+    public final GameRules rules; //Tabellone proposto
+    final Player from; //Sfidante
+    final Player to; //Sfidato
+    volatile TimerWheel.Timeout expiry; //Scadenza sulla ruota condivisa
+
+    Challenge(Player from, Player to, GameRules rules) {
+        this.challenger = from.getNickname();
+        this.rules = rules;
+        this.from = from;
+        this.to = to;
+    }
+}
@@ -0,0 +1,86 @@
+package TicTacToe;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Sfide ricevute e inviate da un giocatore: più sfide contemporanee, ognuna con una scadenza sulla ruota condivisa
+//Una sfida si chiude una sola volta (accettata, rifiutata, scaduta o per disconnessione): vince chi la toglie dalla casella dello sfidato
+final class ChallengeInbox {
+    private static final int MAX = Integer.getInteger("tictactoe.challenges.max", 16); //Sfide in sospeso per giocatore, ricevute e inviate
+    private static final int TTL = Integer.getInteger("tictactoe.challenges.ttl", 30); //Secondi prima che una sfida scada
+    private static final AtomicInteger pending = new AtomicInteger(); //Sfide in sospeso sul server
+
+    private final Map<String, Challenge> received = new ConcurrentHashMap<>(); //Sfidante -> sfida ricevuta
+    private final Set<Challenge> sent = ConcurrentHashMap.newKeySet(); //Sfide inviate, per chiuderle alla disconnessione
+    private final AtomicInteger receivedCount = new AtomicInteger(); //Posti occupati in received: riservati prima dell'inserimento
+    private final AtomicInteger sentCount = new AtomicInteger(); //Posti occupati in sent
+
+    static int pending() { return pending.get(); }
+
+    //Registra la sfida presso sfidato e sfidante e ne programma la scadenza; null se registrata, altrimenti il motivo del rifiuto
+    static String open(Challenge challenge) {
+        ChallengeInbox to = challenge.to.challenges, from = challenge.from.challenges;
+        if (from.received.containsKey(challenge.to.getNickname())) return "Sfida già ricevuta"; //Basta accettare quella dell'avversario
+        if (!reserve(to.receivedCount)) return "Troppe sfide in sospeso";
+        if (!reserve(from.sentCount)) {
+            to.receivedCount.decrementAndGet();
+            return "Troppe sfide in sospeso";
+        }
+        if (to.received.putIfAbsent(challenge.challenger, challenge) != null) {
+            to.receivedCount.decrementAndGet();
+            from.sentCount.decrementAndGet();
+            return "Sfida già inviata";
+        }
+        from.sent.add(challenge);
+        pending.incrementAndGet();
+        challenge.expiry = TicTacToeServer.timers.schedule(() -> expire(challenge), TTL, TimeUnit.SECONDS);
+        return null;
+    }
+
+    //Occupa un posto se il limite non è raggiunto: controllo e incremento atomici anche con più sfidanti insieme
+    private static boolean reserve(AtomicInteger count) {
+        int current;
+        do {
+            current = count.get();
+            if (current >= MAX) return false;
+        } while (!count.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    //Toglie dalla casella la sfida ricevuta dallo sfidante indicato; null se non c'è o è già chiusa
+    Challenge take(String challenger) {
+        Challenge challenge = received.get(challenger);
+        return challenge != null && close(challenge) ? challenge : null;
+    }
+
+    //Chiude tutte le sfide del giocatore che si disconnette e avvisa l'altro giocatore di ciascuna
+    void closeAll() {
+        for (Challenge challenge : received.values())
+            if (close(challenge))
+                challenge.from.sendMessage(GameMessage.challengeExpired(challenge.to.getNickname()));
+        for (Challenge challenge : sent)
+            if (close(challenge))
+                challenge.to.sendMessage(GameMessage.challengeExpired(challenge.challenger));
+    }
+
+    //Scadenza dalla ruota: entrambi i giocatori vengono avvisati
+    private static void expire(Challenge challenge) {
+        if (!close(challenge)) return; //Già accettata o rifiutata
+        challenge.from.sendMessage(GameMessage.challengeExpired(challenge.to.getNickname()));
+        challenge.to.sendMessage(GameMessage.challengeExpired(challenge.challenger));
+    }
+
+    private static boolean close(Challenge challenge) {
+        if (!challenge.to.challenges.received.remove(challenge.challenger, challenge)) return false;
+        challenge.to.challenges.receivedCount.decrementAndGet();
+        challenge.from.challenges.sent.remove(challenge);
+        challenge.from.challenges.sentCount.decrementAndGet();
+        pending.decrementAndGet();
+        TimerWheel.Timeout expiry = challenge.expiry;
+        if (expiry != null) expiry.cancel(); //Scadenza non più necessaria
+        return true;
+    }
+}
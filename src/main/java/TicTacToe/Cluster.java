@@ -0,0 +1,354 @@
+package TicTacToe;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//Modalità cluster: più processi server condividono la lobby. Ogni giocatore appartiene al nodo indicato dall'anello di
+//hashing consistente sul nickname; i nodi si scambiano presenza, sfide e messaggi di partita su collegamenti a frame.
+//Una partita tra nodi diversi gira sul nodo dello sfidato, dove lo sfidante è rappresentato da un Player proxy.
+//Configurazione: -Dtictactoe.cluster.nodes=host:portaGioco:portaNodi,... -Dtictactoe.cluster.node=indice di questo nodo
+public final class Cluster {
+    //Indirizzi di un nodo: porta dei client e porta dei collegamenti tra nodi
+    record Node(String host, int gamePort, int linkPort) {}
+
+    private static final Node[] NODES = parse(System.getProperty("tictactoe.cluster.nodes", "")); //Nodi configurati, vuoto = server singolo
+    private static final int SELF = Integer.getInteger("tictactoe.cluster.node", 0); //Indice di questo nodo in NODES
+    private static final int QUEUE_LIMIT = Integer.getInteger("tictactoe.cluster.queue", 65_536); //Messaggi in attesa per collegamento
+    private static final HashRing ring = new HashRing(NODES.length);
+    private static final Peer[] peers = new Peer[NODES.length]; //Collegamenti in uscita (null per questo nodo)
+    private static final AtomicIntegerArray generations = new AtomicIntegerArray(Math.max(1, NODES.length)); //Collegamento in entrata più recente per nodo
+
+    private static final Map<String, Integer> remotePlayers = new ConcurrentHashMap<>(); //Giocatori degli altri nodi -> nodo
+    private static final Map<String, Player> proxies = new ConcurrentHashMap<>(); //Sfidanti remoti con sfide o partite su questo nodo
+
+    private Cluster() {}
+
+    private static Node[] parse(String spec) {
+        if (spec.isBlank()) return new Node[0];
+        String[] entries = spec.split(",");
+        Node[] nodes = new Node[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":");
+            if (parts.length != 3) throw new IllegalArgumentException("Nodo non valido (host:portaGioco:portaNodi): " + entries[i]);
+            nodes[i] = new Node(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        }
+        return nodes;
+    }
+
+    static boolean enabled() { return NODES.length > 1; }
+
+    //Porta dei client: quella di questo nodo se i nodi sono configurati (anche un cluster di un solo nodo)
+    static int gamePort(int fallback) { return NODES.length > 0 ? NODES[SELF].gamePort() : fallback; }
+
+    static String describe() { return enabled() ? "nodo " + SELF + " di " + NODES.length : "disattivato"; }
+
+    //Vero se il giocatore appartiene a questo nodo (sempre vero senza cluster)
+    static boolean owns(String nickname) { return !enabled() || ring.nodeFor(nickname) == SELF; }
+
+    //Indirizzo del nodo proprietario a cui il client deve ricollegarsi
+    static Node ownerOf(String nickname) { return NODES[ring.nodeFor(nickname)]; }
+
+    static boolean isRemote(String nickname) { return remotePlayers.containsKey(nickname); }
+
+    static Collection<String> remoteNicknames() { return remotePlayers.keySet(); }
+
+    static Player proxy(String nickname) { return proxies.get(nickname); } //Proxy dello sfidante remoto, se presente
+
+    //Avvia il server dei collegamenti e un collegamento in uscita verso ogni altro nodo
+    static void start() {
+        if (!enabled()) return;
+        daemon("ClusterLinks", Cluster::acceptLinks);
+        for (int node = 0; node < NODES.length; node++) {
+            if (node == SELF) continue;
+            peers[node] = new Peer(node);
+            daemon("ClusterPeer-" + node, peers[node]);
+        }
+    }
+
+    private static void daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //Cambiamento di presenza di un giocatore di questo nodo: inoltrato a tutti gli altri (chiamato sotto il lock di Presence)
+    static void publish(String op, String nickname) {
+        if (!enabled() || isRemote(nickname)) return; //Gli aggiornamenti dei giocatori remoti li pubblica il loro nodo
+        Player local = TicTacToeServer.connectedClients.get(nickname);
+        if (local != null && local.isBot()) return; //Ogni nodo ha i propri bot
+        GameMessage<String[]> message = new GameMessage<String[]>("NODE_PRESENCE", new String[]{op, nickname}).shared();
+        for (Peer peer : peers)
+            if (peer != null) peer.send(message);
+    }
+
+    //Sfida verso un giocatore di un altro nodo: la gestisce il nodo dello sfidato; false se il nodo non è raggiungibile
+    static boolean challenge(String challenger, String opponent, GameRules rules) {
+        Peer peer = peers[ring.nodeFor(opponent)];
+        if (peer == null || !peer.connected) return false;
+        peer.send(new GameMessage<>("NODE_CHALLENGE", rules.appendTo(challenger, opponent)));
+        return true;
+    }
+
+    //Messaggio indirizzato a un giocatore di un altro nodo: [NICKNAME destinatario, messaggio]
+    private static GameMessage<?> envelope(String type, String nickname, GameMessage<?> message) {
+        return new GameMessage<>(type, new GameMessage<?>[]{GameMessage.nickname(nickname), message});
+    }
+
+    //Server dei collegamenti in entrata: un thread per nodo collegato
+    private static void acceptLinks() {
+        try (ServerSocket server = new ServerSocket(NODES[SELF].linkPort())) {
+            System.out.println("Collegamenti del cluster sulla porta " + NODES[SELF].linkPort());
+            while (true) {
+                Socket socket = server.accept();
+                daemon("ClusterLink", () -> readLink(socket));
+            }
+        } catch (IOException e) {
+            System.err.println("Server dei collegamenti del cluster fermo: " + e.getMessage());
+        }
+    }
+
+    //Legge i messaggi di un altro nodo; il primo è NODE_HELLO con il suo indice
+    private static void readLink(Socket socket) {
+        int node = -1, generation = 0;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            if (in.readInt() != Protocol.MAGIC) return;
+            MessageStream link = MessageStream.accept(socket, in);
+            GameMessage<?> hello = link.receive();
+            if (hello == null || !hello.getType().equals("NODE_HELLO")) return;
+            node = Integer.parseInt(hello.getPayloadAsString());
+            if (node < 0 || node >= NODES.length || node == SELF) return;
+            generation = generations.incrementAndGet(node); //Un nodo ricollegato sostituisce il collegamento precedente
+            System.out.println("Nodo " + node + " collegato");
+            GameMessage<?> message;
+            while ((message = link.receive()) != null)
+                dispatch(node, message);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Collegamento con il nodo " + node + " interrotto: " + e.getMessage());
+        } finally {
+            if (node >= 0 && node < NODES.length && generations.get(node) == generation)
+                nodeLost(node);
+        }
+    }
+
+    private static void dispatch(int node, GameMessage<?> message) {
+        switch (message.getType()) {
+            case "NODE_PRESENCE": //Coppie [operazione, nickname] dei giocatori di quel nodo
+                String[] ops = message.getPayloadAsStringArray();
+                for (int i = 0; i + 1 < ops.length; i += 2)
+                    applyPresence(node, ops[i], ops[i + 1]);
+                break;
+            case "NODE_CHALLENGE": //[sfidante, sfidato, tabellone...]: lo sfidante diventa un proxy su questo nodo
+                String[] challenge = message.getPayloadAsStringArray();
+                GameRules rules = GameRules.fromPayload(challenge, 2);
+                Player proxy = proxies.computeIfAbsent(challenge[0], nickname -> new RemoteTransport(node, nickname).player);
+                proxy.remoteChallenge(challenge[1], rules);
+                break;
+            case "NODE_DELIVER": //Messaggio di una partita o sfida ospitata da quel nodo per un giocatore di questo
+                GameMessage<?>[] delivery = message.getPayloadAsMessages();
+                deliver(node, delivery[0].getPayloadAsString(), delivery[1]);
+                break;
+            case "NODE_COMMAND": //Mossa di un giocatore di quel nodo in una partita ospitata qui
+                GameMessage<?>[] command = message.getPayloadAsMessages();
+                Player commander = proxies.get(command[0].getPayloadAsString());
+                if (commander != null && command[1].getType().equals("MOVE"))
+                    commander.remoteCommand(command[1]);
+                break;
+            case "NODE_LEFT": //Il giocatore non può più giocare qui: il suo proxy si disconnette
+                dropProxy(message.getPayloadAsString());
+                break;
+        }
+    }
+
+    private static void applyPresence(int node, String op, String nickname) {
+        if (op.equals(Presence.JOINED)) {
+            remotePlayers.put(nickname, node);
+        } else if (op.equals(Presence.LEFT)) {
+            if (!remotePlayers.remove(nickname, node)) return;
+            dropProxy(nickname); //Chiude sfide e partite dello sfidante remoto
+        } else if (!remotePlayers.containsKey(nickname)) {
+            return;
+        }
+        Presence.applyRemote(op, nickname);
+    }
+
+    private static void dropProxy(String nickname) {
+        Player proxy = proxies.remove(nickname);
+        if (proxy != null) proxy.disconnected(); //L'avversario riceve OPPONENT_DISCONNECTED, le sfide si chiudono
+    }
+
+    //Consegna al giocatore locale un messaggio della partita ospitata dall'altro nodo, tenendo aggiornato il segnaposto
+    private static void deliver(int node, String nickname, GameMessage<?> message) {
+        Player player = TicTacToeServer.connectedClients.get(nickname);
+        if (player == null) { //Disconnesso: il nodo che ospita la partita chiude il proxy
+            peers[node].send(new GameMessage<>("NODE_LEFT", nickname));
+            return;
+        }
+        if (message.getType().equals("CHALLENGE_ACCEPTED")) { //La partita inizia sull'altro nodo
+            RemoteGame game = new RemoteGame(player, message.getPayloadAsString(), node);
+            if (!player.joinGame(game)) { //Entrato nel frattempo in una partita qui: rinuncia a quella remota
+                peers[node].send(new GameMessage<>("NODE_LEFT", nickname));
+                return;
+            }
+            if (Matchmaking.leave(player)) player.sendMessage(GameMessage.dequeued());
+            Presence.setBusy(nickname, true);
+        } else if (endsGame(message) && player.currentGame() instanceof RemoteGame game && game.node == node) {
+            player.leaveGame(game); //Libero prima dell'esito, come per le partite locali
+            Presence.setBusy(nickname, false);
+        }
+        player.sendMessage(message);
+    }
+
+    private static boolean endsGame(GameMessage<?> message) {
+        GameMessage<?>[] batch = message.getPayloadAsMessages();
+        if (batch != null) {
+            for (GameMessage<?> inner : batch)
+                if (endsGame(inner)) return true;
+            return false;
+        }
+        return message.getType().equals("GAME_OVER") || message.getType().equals("OPPONENT_DISCONNECTED");
+    }
+
+    //Nodo irraggiungibile: i suoi giocatori escono dalla lobby, le partite a cavallo dei due nodi finiscono
+    private static void nodeLost(int node) {
+        System.out.println("Nodo " + node + " perso");
+        for (Map.Entry<String, Integer> entry : remotePlayers.entrySet())
+            if (entry.getValue() == node)
+                applyPresence(node, Presence.LEFT, entry.getKey());
+        for (Player proxy : proxies.values())
+            if (((RemoteTransport) proxy.transport()).node == node)
+                dropProxy(proxy.getNickname());
+        for (Player player : TicTacToeServer.connectedClients.values()) {
+            if (player.currentGame() instanceof RemoteGame game && game.node == node) {
+                player.leaveGame(game);
+                player.sendMessage(GameMessage.opponentDisconnected());
+                Presence.setBusy(player.getNickname(), false);
+            }
+        }
+    }
+
+    //Collegamento in uscita verso un nodo: si ricollega finché il server è attivo e invia i messaggi in coda a blocchi
+    private static final class Peer implements Runnable {
+        private final int node;
+        private final LinkedBlockingQueue<GameMessage<?>> queue = new LinkedBlockingQueue<>(QUEUE_LIMIT);
+        private volatile boolean connected; //Messaggi accettati solo a collegamento attivo
+        private volatile Socket socket;
+
+        Peer(int node) { this.node = node; }
+
+        void send(GameMessage<?> message) {
+            if (!connected) return; //Il nodo rifarà la sincronizzazione al collegamento
+            if (!queue.offer(message)) { //Nodo troppo lento: meglio ricollegarsi e risincronizzare
+                System.err.println("Coda verso il nodo " + node + " piena: ricollegamento");
+                close();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<GameMessage<?>> batch = new ArrayList<>();
+            while (true) {
+                try (Socket current = new Socket(NODES[node].host(), NODES[node].linkPort())) {
+                    socket = current;
+                    current.setTcpNoDelay(true);
+                    MessageStream link = MessageStream.connect(current, Protocol.CODEC_BINARY);
+                    link.send(new GameMessage<>("NODE_HELLO", String.valueOf(SELF)));
+                    synchronized (Presence.class) { //I delta successivi vengono accodati dopo lo snapshot
+                        queue.clear();
+                        queue.add(new GameMessage<>("NODE_PRESENCE", Presence.localOps()));
+                        connected = true;
+                    }
+                    while (true) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch, 255);
+                        link.send(batch); //Un flush per blocco di messaggi
+                        batch.clear();
+                    }
+                } catch (IOException e) {
+                    //Nodo non ancora avviato o collegamento caduto: nuovo tentativo
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    connected = false;
+                    batch.clear();
+                }
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                Socket current = socket;
+                if (current != null) current.close();
+            } catch (IOException e) {
+                //Già chiuso
+            }
+        }
+    }
+
+    //Trasporto del proxy di uno sfidante remoto: i messaggi per lui vanno al suo nodo
+    static final class RemoteTransport implements Transport {
+        final int node; //Nodo del giocatore reale
+        private final String nickname;
+        final Player player; //Proxy servito da questo trasporto
+
+        RemoteTransport(int node, String nickname) {
+            this.node = node;
+            this.nickname = nickname;
+            this.player = new Player(this, nickname);
+        }
+
+        @Override
+        public boolean supportsHeartbeats() { return false; } //Il heartbeat lo fa il nodo del giocatore
+
+        @Override
+        public synchronized void onQueued() { //Inoltra subito, nell'ordine della coda
+            GameMessage<?> message;
+            while ((message = player.outbound().poll()) != null)
+                peers[node].send(envelope("NODE_DELIVER", nickname, message));
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    //Segnaposto della partita remota sul nodo del giocatore: occupa currentGame e inoltra mosse e disconnessione
+    static final class RemoteGame extends Game {
+        final int node; //Nodo che ospita la partita
+        private final String nickname;
+
+        RemoteGame(Player player, String opponent, int node) {
+            super(player, player, Game.idFor(player.getNickname(), opponent), GameRules.CLASSIC);
+            this.node = node;
+            this.nickname = player.getNickname();
+        }
+
+        @Override
+        public void handleMove(Player player, String position) {
+            peers[node].send(envelope("NODE_COMMAND", nickname, GameMessage.move(position)));
+        }
+
+        @Override
+        public void playerDisconnected(Player player) {
+            peers[node].send(new GameMessage<>("NODE_LEFT", nickname));
+        }
+
+        @Override
+        public void run() {}
+    }
+}
@@ -0,0 +1,23 @@
+package TicTacToe;
+
+import java.util.Collection;
+
+//Indicatore della memoria per connessione: quanto trattengono i trasporti oltre ai buffer fissi
+//Con il reset degli stream legacy e i buffer in pool deve restare piatto per quanto durino le sessioni
+public final class ConnectionMemory {
+    private ConnectionMemory() {}
+
+    //Totale e massimo sulle connessioni indicate, più lo stato del pool dei buffer di codifica
+    public static String report(Collection<Player> players) {
+        long total = 0, max = 0;
+        int connections = 0;
+        for (Player player : players) {
+            long retained = player.retainedBytes();
+            total += retained;
+            max = Math.max(max, retained);
+            connections++;
+        }
+        return String.format("Memoria connessioni: %d connessioni, %d B trattenuti (max %d B per connessione), buffer in pool %d, creati %d",
+                connections, total, max, BufferPool.pooled(), BufferPool.allocated());
+    }
+}
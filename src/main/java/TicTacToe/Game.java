@@ -1,118 +1,269 @@
 package TicTacToe; 
 
-import java.util.Arrays; 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-//Dichiarazione classe Game che implementa interfaccia Runnable per eseguire gioco in un thread
+//Dichiarazione classe Game che implementa interfaccia Runnable: l'avvio è il primo evento della partita sul suo shard
+//Tutti gli eventi (avvio, mosse, spettatori, disconnessione) girano sul thread dello shard (vedi GameShards), che è
+//l'unico a toccare tabellone, turno e mosse: i metodi pubblici accodano soltanto
 public class Game implements Runnable { 
     private Player player1; //Primo giocatore
     private Player player2; //Secondo giocatore
     private String gameId; //Id univoco della partita
-    private String[] board = new String[9]; //Array con 9 celle che rappresenta il tabellone di gioco
-    private String currentPlayer = "X"; //Variabile che indica il giocatore corrente (inizia con X)
+    private final int shard; //Shard che esegue gli eventi della partita
+    private final GameRules rules; //Dimensioni del tabellone e simboli in fila per vincere
+    private final Board board; //Tabellone di gioco
+    private boolean xToMove = true; //Variabile che indica il giocatore corrente (inizia con X)
     private boolean gameOver = false; //Variabile gameOver che indica se la partita è terminata
+    private long journalId; //Id nel journal delle partite, 0 se la partita non viene registrata
+    private int[] replayed = new int[0]; //Mosse recuperate dal journal, da mostrare ai giocatori alla ripresa
+    private final int[] moves; //Posizioni giocate in ordine, per lo storico delle partite
+    private int moveCount; //Mosse giocate finora
+    private long startedAt = System.currentTimeMillis(); //Inizio della partita, per la durata nello storico
+    private final Spectators spectators = new Spectators(); //Spettatori collegati alla partita
+    private GameMessage<?> snapshot; //Snapshot condiviso per gli spettatori, valido finché moveCount non cambia
+    private int snapshotMoves = -1; //Mosse incluse nello snapshot
 
-    //Costruttore della classe Game che riceve due giocatori e l'ID della partita
-    public Game(Player p1, Player p2, String gameId) { 
+    //Messaggi della partita precalcolati e condivisi: una mossa non alloca e ogni codec li codifica una sola volta
+    private static final int MAX_CELLS = GameRules.MAX_SIZE * GameRules.MAX_SIZE; //Celle del tabellone più grande
+    private static final GameMessage<?>[] BOARD_UPDATES = new GameMessage<?>[MAX_CELLS * 2]; //Indice pos * 2 (+1 per O)
+    private static final GameMessage<?> YOUR_TURN = GameMessage.yourTurn().shared();
+    private static final GameMessage<?> OPPONENT_TURN = GameMessage.opponentTurn().shared();
+    private static final GameMessage<?> NOT_YOUR_TURN = new GameMessage<>("NOT_YOUR_TURN").shared();
+    private static final GameMessage<?> INVALID_MOVE = GameMessage.invalidMove().shared();
+    private static final GameMessage<?> X_WINS = GameMessage.gameOver("X").shared();
+    private static final GameMessage<?> O_WINS = GameMessage.gameOver("O").shared();
+    private static final GameMessage<?> TIE = GameMessage.gameOver("TIE").shared();
+
+    //Ogni mossa arriva a ogni giocatore come un unico BATCH [BOARD, turno o esito]: una scrittura per destinatario
+    private static final boolean BATCH_MOVES = Boolean.parseBoolean(System.getProperty("tictactoe.batch", "true"));
+    private static final GameMessage<?>[] FOLLOW_UPS = {YOUR_TURN, OPPONENT_TURN, X_WINS, O_WINS, TIE}; //Secondo messaggio del batch
+    private static final int F_YOUR_TURN = 0, F_OPPONENT_TURN = 1, F_X_WINS = 2, F_O_WINS = 3, F_TIE = 4; //Indici in FOLLOW_UPS
+    private static final AtomicReferenceArray<GameMessage<?>> BATCHES = new AtomicReferenceArray<>(MAX_CELLS * 2 * FOLLOW_UPS.length); //Creati al primo uso
+
+    static {
+        for (int pos = 0; pos < MAX_CELLS; pos++) {
+            BOARD_UPDATES[pos * 2] = GameMessage.board(String.valueOf(pos), "X").shared();
+            BOARD_UPDATES[pos * 2 + 1] = GameMessage.board(String.valueOf(pos), "O").shared();
+        }
+    }
+
+    //Costruttore della classe Game che riceve due giocatori, l'ID della partita e le regole del tabellone
+    public Game(Player p1, Player p2, String gameId, GameRules rules) { 
         this.player1 = p1; //Assegnazione del primo giocatore alla variabile player1
         this.player2 = p2; //E anche del secondo
         this.gameId = gameId; //Assegnazione ID della partita alla variabile gameId
-        Arrays.fill(board, ""); //Riempimento di tutte le celle del tabellone con stringhe vuote
+        this.rules = rules;
+        this.board = new Board(rules);
+        this.moves = new int[rules.cells()];
+        this.shard = GameShards.of(gameId);
+    }
+
+    static final char ID_SEPARATOR = '|'; //Separatore dei nickname nell'id: il login lo rifiuta, così due coppie diverse non hanno lo stesso id
+
+    //Id canonico della partita tra due giocatori: lo stesso qualunque sia lo sfidante
+    public static String idFor(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + ID_SEPARATOR + b : b + ID_SEPARATOR + a;
+    }
+
+    public String getGameId() { return gameId; }
+
+    int shard() { return shard; }
+
+    //Registra la partita tra quelle attive, dopo che entrambi i giocatori vi sono entrati; false se l'id è già occupato
+    boolean register() {
+        if (TicTacToeServer.activeGames.putIfAbsent(gameId, this) != null) return false;
+        if (player1.currentGame() != this || player2.currentGame() != this) //Disconnessione nel frattempo: la pulizia potrebbe non averla trovata
+            TicTacToeServer.activeGames.remove(gameId, this);
+        return true;
+    }
+
+    //Avvia la partita: messaggi di inizio inviati dal thread dello shard, prima di qualsiasi mossa accodata dopo
+    void start() { GameShards.execute(this, this); }
+
+    //Batch condiviso per aggiornamento del tabellone e messaggio successivo (creato una volta, una creazione doppia è innocua)
+    private static GameMessage<?> batch(int update, int followUp) {
+        int index = update * FOLLOW_UPS.length + followUp;
+        GameMessage<?> batch = BATCHES.get(index);
+        if (batch == null) {
+            batch = GameMessage.batch(BOARD_UPDATES[update], FOLLOW_UPS[followUp]).shared();
+            BATCHES.set(index, batch);
+        }
+        return batch;
+    }
+
+    //Invia l'aggiornamento del tabellone seguito dal messaggio per ciascun giocatore
+    private void deliver(int update, int followUp1, int followUp2) {
+        if (BATCH_MOVES) {
+            player1.sendMessage(batch(update, followUp1));
+            player2.sendMessage(batch(update, followUp2));
+        } else { //Un messaggio (e una scrittura) alla volta, utile per confrontare le statistiche
+            player1.sendMessage(BOARD_UPDATES[update]);
+            player2.sendMessage(BOARD_UPDATES[update]);
+            player1.sendMessage(FOLLOW_UPS[followUp1]);
+            player2.sendMessage(FOLLOW_UPS[followUp2]);
+        }
+    }
+
+    //Partita interrotta da un riavvio del server: riapplica le mosse registrate prima dell'avvio
+    void resume(long journalId, int[] moves) {
+        this.journalId = journalId; //Le nuove mosse continuano la stessa partita nel journal
+        this.replayed = moves;
+        for (int pos : moves) {
+            board.play(pos, xToMove);
+            this.moves[moveCount++] = pos;
+            xToMove = !xToMove;
+        }
     }
 
-    //Metodo run che viene eseguito quando il thread della partita viene avviato
+    //Metodo run che viene eseguito dallo shard come primo evento della partita
     @Override
     public void run() { 
-        player1.sendMessage(GameMessage.gameStart("X", player2.getNickname())); //Invio messaggio al player1 per inizio partita, gioca con X e mostra il nickname dell'avversario
-        player2.sendMessage(GameMessage.gameStart("O", player1.getNickname())); //Stessa cosa, ma per il player2 che gioca con O
-        player1.sendMessage(GameMessage.yourTurn()); //Invio messaggio al player1 che è il suo turno di gioco
+        if (gameOver) return; //Un giocatore si è disconnesso prima dell'avvio
+        if (journalId == 0) journalId = MoveJournal.started(player1, player2, rules); //Registrata prima di qualsiasi mossa
+        startedAt = System.currentTimeMillis();
+        if (replayed.length > 0) { //Partita ripresa: inizio, mosse già giocate e turno in un solo messaggio per giocatore
+            sendResumed();
+            return;
+        }
+        GameMessage<?> start = GameMessage.gameStart("X", player2.getNickname(), rules); //Messaggio al player1 per inizio partita, gioca con X e mostra il nickname dell'avversario
+        player1.sendMessage(BATCH_MOVES ? GameMessage.batch(start, YOUR_TURN) : start); //Con il messaggio che è il suo turno di gioco
+        if (!BATCH_MOVES) player1.sendMessage(YOUR_TURN);
+        player2.sendMessage(GameMessage.gameStart("O", player1.getNickname(), rules)); //Stessa cosa, ma per il player2 che gioca con O
     }
 
-    //Metodo sincronizzato che gestisce la mossa di un giocatore ricevendo il giocatore e la posizione
-    public synchronized void handleMove(Player player, String position) { 
+    private void sendResumed() {
+        GameMessage<?>[] x = new GameMessage<?>[replayed.length + 2], o = new GameMessage<?>[replayed.length + 2];
+        x[0] = GameMessage.gameStart("X", player2.getNickname(), rules);
+        o[0] = GameMessage.gameStart("O", player1.getNickname(), rules);
+        for (int i = 0; i < replayed.length; i++)
+            x[i + 1] = o[i + 1] = BOARD_UPDATES[replayed[i] * 2 + i % 2]; //Le mosse pari sono di X
+        x[x.length - 1] = xToMove ? YOUR_TURN : OPPONENT_TURN;
+        o[o.length - 1] = xToMove ? OPPONENT_TURN : YOUR_TURN;
+        player1.sendMessage(GameMessage.batch(x));
+        player2.sendMessage(GameMessage.batch(o));
+    }
+
+    //Metodo che accoda la mossa di un giocatore sullo shard della partita, ricevendo il giocatore e la posizione
+    public void handleMove(Player player, String position) {
+        long start = System.nanoTime();
+        GameShards.execute(this, () -> {
+            applyMove(player, position);
+            Metrics.moveHandled(System.nanoTime() - start); //Comprende l'attesa nella casella dello shard
+        });
+    }
+
+    //Gestisce la mossa: eseguita solo dal thread che possiede la partita
+    void applyMove(Player player, String position) {
         if (gameOver) return; //Se la partita è terminata, esce dal metodo senza eseguire la mossa
 
-        String playerSymbol = (player == player1) ? "X" : "O"; //Determina il simbolo del giocatore (X se è player1, altrimenti O)
-        if (!playerSymbol.equals(currentPlayer)) { //Se il simbolo del giocatore non corrisponde al giocatore corrente
-            player.sendMessage(new GameMessage<>("NOT_YOUR_TURN")); //Invia un messaggio al giocatore per informarlo che non è il suo turno
+        boolean isX = player == player1; //Determina il simbolo del giocatore (X se è player1, altrimenti O)
+        if (isX != xToMove) { //Se il simbolo del giocatore non corrisponde al giocatore corrente
+            player.sendMessage(NOT_YOUR_TURN); //Invia un messaggio al giocatore per informarlo che non è il suo turno
             return;
         }
 
-        int pos = Integer.parseInt(position); //Converte la stringa position in un numero intero
-        if (pos < 0 || pos >= 9 || !board[pos].equals("")) { //Se la posizione è fuori dai limiti (0-8) o se la cella è già occupata
-            player.sendMessage(GameMessage.invalidMove()); //Invia un messaggio al giocatore per informarlo che la mossa non è valida
+        int pos; //Posizione della mossa
+        try {
+            pos = Integer.parseInt(position); //Converte la stringa position in un numero intero
+        } catch (NumberFormatException e) { //Posizione non numerica (o assente): mossa non valida, senza stack trace nel log
+            player.sendMessage(INVALID_MOVE);
+            return;
+        }
+        if (!board.isFree(pos)) { //Se la posizione è fuori dal tabellone o se la cella è già occupata
+            player.sendMessage(INVALID_MOVE); //Invia un messaggio al giocatore per informarlo che la mossa non è valida
             return;
         }
 
-        board[pos] = currentPlayer; //Assegna il simbolo del giocatore corrente alla cella selezionata del tabellone
-        player1.sendMessage(new GameMessage<>("BOARD", new String[]{String.valueOf(pos), currentPlayer})); //Invia al player1 l'aggiornamento del tabellone con la posizione e il simbolo
-        player2.sendMessage(new GameMessage<>("BOARD", new String[]{String.valueOf(pos), currentPlayer})); //Stessa cosa per il player2
+        boolean won = board.play(pos, isX); //Occupa la cella e cerca una fila solo nelle quattro direzioni che passano per essa
+        ProtocolStats.moveApplied();
+        MoveJournal.moved(journalId, pos); //Solo accodata: la scrittura la fa il thread del journal
+        moves[moveCount++] = pos;
+        int update = pos * 2 + (isX ? 0 : 1); //Aggiornamento del tabellone con posizione e simbolo
 
-        String winner = checkWinner(); //Verifica se c'è un vincitore
-        if (winner != null) { //Se c'è un vincitore
+        if (won) { //Se c'è un vincitore
             gameOver = true; //Imposta la partita come terminata
-            player1.sendMessage(GameMessage.gameOver(winner)); //Invia al player1 il messaggio che la partita è finita con il vincitore
-            player2.sendMessage(GameMessage.gameOver(winner)); //Anche al player2
-            TicTacToeServer.activeGames.remove(gameId); //Rimuove la partita dalla lista delle partite attive nel server
+            int result = isX ? F_X_WINS : F_O_WINS;
+            MoveJournal.ended(journalId);
+            finish(); //Rimuove la partita e libera i giocatori prima dell'esito, così possono subito lanciare una nuova sfida
+            record(isX ? MatchHistory.X_WINS : MatchHistory.O_WINS, false);
+            deliver(update, result, result); //Entrambi ricevono la mossa e il vincitore
+            spectators.close(this, batch(update, result)); //Gli spettatori ricevono lo stesso batch, poi vengono scollegati
             return;
         }
 
-        if (isBoardFull()) { //Se il tabellone è pieno (tutte le celle sono occupate)
+        if (board.isFull()) { //Se il tabellone è pieno (tutte le celle sono occupate)
             gameOver = true; //Imposta la partita come terminata
-            player1.sendMessage(GameMessage.gameOver("TIE")); //Invia al player1 il messaggio che la partita è finita in pareggio
-            player2.sendMessage(GameMessage.gameOver("TIE")); //Anche al player2
-            TicTacToeServer.activeGames.remove(gameId); //Rimuove la partita dalla lista delle partite attive nel server
+            MoveJournal.ended(journalId);
+            finish(); //Rimuove la partita e libera i giocatori
+            record(MatchHistory.TIE, false);
+            deliver(update, F_TIE, F_TIE); //Entrambi ricevono la mossa e il pareggio
+            spectators.close(this, batch(update, F_TIE));
             return;
         }
 
-        currentPlayer = currentPlayer.equals("X") ? "O" : "X"; //Cambia il giocatore corrente (da X a O o viceversa)
-        if (currentPlayer.equals("X")) { //Se il giocatore corrente è X
-            player1.sendMessage(GameMessage.yourTurn()); //Notifica al player1 che è il suo turno
-            player2.sendMessage(GameMessage.opponentTurn()); //Notifica al player2 che è il turno dell'avversario
-        } else { //Altrimenti (il giocatore corrente è O)
-            player2.sendMessage(GameMessage.yourTurn()); //Notifica al player2 che è il suo turno
-            player1.sendMessage(GameMessage.opponentTurn()); //Notifica al player1 che è il turno dell'avversario
+        xToMove = !xToMove; //Cambia il giocatore corrente (da X a O o viceversa)
+        if (xToMove) //Se il giocatore corrente è X: il player1 riceve il suo turno, il player2 il turno dell'avversario
+            deliver(update, F_YOUR_TURN, F_OPPONENT_TURN);
+        else //Altrimenti il contrario
+            deliver(update, F_OPPONENT_TURN, F_YOUR_TURN);
+        spectators.broadcast(BOARD_UPDATES[update]); //Solo l'aggiornamento del tabellone, già codificato per i giocatori
+    }
+
+    //Collega uno spettatore: riceve lo stato attuale e poi ogni mossa, oppure la fine se la partita è già finita
+    void watch(Player spectator) { GameShards.execute(this, () -> attach(spectator)); }
+
+    private void attach(Player spectator) {
+        if (gameOver) {
+            spectator.stopWatching(this);
+            spectator.sendMessage(GameMessage.spectateEnd(gameId, "Partita non trovata"));
+            return;
+        }
+        if (snapshotMoves != moveCount) { //Uno snapshot per stato del tabellone, condiviso da chi arriva tra due mosse
+            snapshot = GameMessage.spectateSnapshot(gameId, player1.getNickname(), player2.getNickname(), rules, moves, moveCount).shared();
+            snapshotMoves = moveCount;
         }
+        spectators.add(spectator, snapshot);
     }
 
+    void unwatch(Player spectator) { spectators.remove(spectator); }
+
     //Metodo che verifica se un giocatore fa parte di questa partita
     public boolean hasPlayer(Player player) { 
         return player == player1 || player == player2; //Restituisce true se il giocatore è player1 o player2
     }
 
-    //Metodo che gestisce la disconnessione di un giocatore
-    public void playerDisconnected(Player player) { 
+    //Metodo che accoda la disconnessione di un giocatore sullo shard della partita
+    public void playerDisconnected(Player player) {
+        GameShards.execute(this, () -> disconnected(player));
+    }
+
+    private void disconnected(Player player) {
         if (!gameOver) { //Se la partita non è ancora terminata
             gameOver = true; //Imposta la partita come terminata
+            MoveJournal.ended(journalId); //Con il server attivo una disconnessione chiude la partita
+            if (moveCount > 0) record(player == player1 ? MatchHistory.O_WINS : MatchHistory.X_WINS, true); //Abbandono a partita iniziata: vince chi resta
             Player other = (player == player1) ? player2 : player1; //Determina l'altro giocatore
+            spectators.close(this, GameMessage.spectateEnd(gameId, player.getNickname() + " si è disconnesso").shared());
             if (other != null) { //Se l'altro giocatore esiste
+                other.leaveGame(this); //L'altro giocatore può accettare nuove sfide
                 other.sendMessage(GameMessage.opponentDisconnected()); //Notifica all'altro giocatore che l'avversario si è disconnesso
+                Presence.setBusy(other.getNickname(), false); //L'altro giocatore torna disponibile
             }
         }
     }
 
-    //Metodo che controlla se c'è un vincitore
-    private String checkWinner() { 
-        int[][] wins = { //Array bidimensionale che contiene tutte le combinazioni vincenti
-                {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, //Combinazioni vincenti orizzontali
-                {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, //Verticali
-                {0, 4, 8}, {2, 4, 6} //E diagonali
-        };
-
-        for (int[] win : wins) { //Per combinazione vincente
-            if (!board[win[0]].equals("") && //Se la prima cella della combinazione non è vuota e
-                    board[win[0]].equals(board[win[1]]) && //La prima cella è uguale alla seconda e
-                    board[win[1]].equals(board[win[2]])) { //La seconda cella è uguale alla terza
-                return board[win[0]]; //Restituisce il simbolo del vincitore (X o O)
-            }
-        }
-        return null; //Restituisce null se non c'è nessun vincitore
+    //Registra l'esito nello storico e aggiorna i punteggi dei due giocatori
+    private void record(char result, boolean forfeit) {
+        MatchHistory.finished(player1, player2, rules, result, forfeit, Arrays.copyOf(moves, moveCount), startedAt);
     }
 
-    //Metodo privato che verifica se il tabellone è pieno
-    private boolean isBoardFull() { 
-        for (String cell : board) { //Per ogni cella del tabellone
-            if (cell.equals("")) return false; //Se trova una cella vuota restituisce false
-        }
-        return true; //Restituisce true se tutte le celle sono occupate
+    //Metodo che rimuove la partita dal server e segnala in lobby che i giocatori sono di nuovo liberi
+    private void finish() {
+        TicTacToeServer.activeGames.remove(gameId, this); //Rimuove la partita dalla lista delle partite attive nel server
+        player1.leaveGame(this); //Aggiorna l'indice giocatore -> partita
+        player2.leaveGame(this);
+        Presence.setBusy(player1.getNickname(), false);
+        Presence.setBusy(player2.getNickname(), false);
     }
 }
\ No newline at end of file
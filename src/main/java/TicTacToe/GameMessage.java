@@ -1,11 +1,15 @@
 package TicTacToe; 
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 //Classe generica che implementa Serializable per poter essere inviata in rete
 public class GameMessage<T> implements Serializable {
+    private static final long serialVersionUID = -561095983184431225L; //Valore della classe originale: i client legacy restano compatibili
     private final String type; //Tipo di messaggio (es: NICKNAME_SUCCESS, SET_NICKNAME, BOARD, ...)
     private final T payload; //Dato generico associato al messaggio
+    private transient AtomicReferenceArray<byte[]> encodedBodies; //Corpi già codificati per id codec (solo messaggi condivisi)
 
     //Costruttore che inizializza tipo e payload
     public GameMessage(String type, T payload) { 
@@ -21,6 +25,8 @@ public class GameMessage<T> implements Serializable {
 
     public String getType() { return type; } //Getter per tipo del messaggio
 
+    public T getPayload() { return payload; } //Getter per il payload grezzo (usato dai codec)
+
     public String getPayloadAsString() { //Restituisce il payload come String se possibile
         if (payload == null) return null; //Se il payload è null restituisce null
         if (payload instanceof String)  //Se il payload è una stringa
@@ -40,6 +46,30 @@ public class GameMessage<T> implements Serializable {
         return null; //Restituisce null se non è convertibile in String[]
     }
 
+    public GameMessage<?>[] getPayloadAsMessages() { //Messaggi contenuti in un BATCH, null per gli altri messaggi
+        if (payload instanceof GameMessage<?>[])
+            return (GameMessage<?>[]) payload;
+        return null;
+    }
+
+    //Segna il messaggio come condiviso tra più destinatari: ogni codec lo codifica una sola volta
+    public GameMessage<T> shared() {
+        encodedBodies = new AtomicReferenceArray<>(3); //Un posto per ogni id codec (1 serializzato, 2 binario)
+        return this;
+    }
+
+    //Corpo del frame per il codec indicato, riusato se il messaggio è condiviso
+    public byte[] encode(MessageCodec codec) throws IOException {
+        AtomicReferenceArray<byte[]> cache = encodedBodies;
+        if (cache == null) return codec.encode(this); //Messaggio per un solo destinatario
+        byte[] body = cache.get(codec.id());
+        if (body == null) { //Prima codifica con questo codec (una codifica doppia concorrente è innocua)
+            body = codec.encode(this);
+            cache.set(codec.id(), body);
+        }
+        return body;
+    }
+
     @Override
     public String toString() { //Rappresentazione testuale dell'oggetto GameMessage
         return "GameMessage{" + //Inizio costruzione della stringa descrittiva
@@ -90,10 +120,18 @@ public class GameMessage<T> implements Serializable {
         return new GameMessage<>("CHALLENGE", opponent); //Restituisce un GameMessage con payload avversario e tipo CHALLENGE
     }
 
+    public static GameMessage<?> challenge(String opponent, GameRules rules) { //Sfida con tabellone scelto: [avversario, larghezza, altezza, k]
+        return rules.isClassic() ? challenge(opponent) : new GameMessage<>("CHALLENGE", rules.appendTo(opponent)); //Il tris classico resta una stringa
+    }
+
     public static GameMessage<String> challengeRequest(String challenger) { //Crea un messaggio che indica una richiesta di sfida ricevuta
         return new GameMessage<>("CHALLENGE_REQUEST", challenger); //Restituisce un GameMessage con payload sfidante e tipo CHALLENGE_REQUEST
     }
 
+    public static GameMessage<?> challengeRequest(String challenger, GameRules rules) { //Richiesta con tabellone: [sfidante, larghezza, altezza, k]
+        return rules.isClassic() ? challengeRequest(challenger) : new GameMessage<>("CHALLENGE_REQUEST", rules.appendTo(challenger));
+    }
+
     public static GameMessage<String> challengeSent(String opponent) { //Crea un messaggio che conferma l'invio di una sfida
         return new GameMessage<>("CHALLENGE_SENT", opponent); //Restituisce un GameMessage con payload avversario e tipo CHALLENGE_SENT
     }
@@ -114,6 +152,54 @@ public class GameMessage<T> implements Serializable {
         return new GameMessage<>("CHALLENGE_REJECTED", opponent); //Restituisce un GameMessage con payload avversario e tipo CHALLENGE_REJECTED
     }
 
+    public static GameMessage<String[]> redirect(String host, int port) { //Il nickname appartiene a un altro nodo del cluster: [host, porta]
+        return new GameMessage<>("REDIRECT", new String[]{host, String.valueOf(port)});
+    }
+
+    public static GameMessage<String[]> leaderboard(int offset, int limit) { //Richiesta della classifica: [posizione iniziale, righe]
+        return new GameMessage<>("LEADERBOARD", new String[]{String.valueOf(offset), String.valueOf(limit)});
+    }
+
+    public static GameMessage<String[]> history(String nickname, int offset, int limit) { //Richiesta dello storico di un giocatore
+        return new GameMessage<>("HISTORY", new String[]{nickname, String.valueOf(offset), String.valueOf(limit)});
+    }
+
+    public static GameMessage<String> spectate(String target) { //Richiesta di guardare una partita: id della partita o nickname di un giocatore
+        return new GameMessage<>("SPECTATE", target);
+    }
+
+    public static GameMessage<String[]> spectateSnapshot(String gameId, String x, String o, GameRules rules, int[] moves, int count) { //Stato per lo spettatore: [id, X, O, larghezza, altezza, k, mosse...]
+        String[] head = rules.appendTo(gameId, x, o), payload = new String[head.length + count];
+        System.arraycopy(head, 0, payload, 0, head.length);
+        for (int i = 0; i < count; i++)
+            payload[head.length + i] = String.valueOf(moves[i]); //Le mosse pari sono di X
+        return new GameMessage<>("SPECTATE", payload);
+    }
+
+    public static GameMessage<Void> unspectate() { //Lo spettatore smette di guardare
+        return new GameMessage<>("UNSPECTATE");
+    }
+
+    public static GameMessage<String[]> spectateEnd(String target, String reason) { //Fine della visione senza esito: [partita, motivo]
+        return new GameMessage<>("UNSPECTATE", new String[]{target, reason});
+    }
+
+    public static GameMessage<String> throttled(String limit) { //Messaggio respinto dal limite di frequenza: payload la classe (lobby, challenge, move, other)
+        return new GameMessage<>("THROTTLED", limit);
+    }
+
+    public static GameMessage<Void> ping() { //Heartbeat del server: il client risponde con PONG
+        return new GameMessage<>("PING");
+    }
+
+    public static GameMessage<Void> pong() { //Risposta al PING
+        return new GameMessage<>("PONG");
+    }
+
+    public static GameMessage<String> challengeExpired(String opponent) { //Sfida scaduta o annullata: payload l'altro giocatore della sfida
+        return new GameMessage<>("CHALLENGE_EXPIRED", opponent);
+    }
+
     public static GameMessage<String> challengeError(String error) { //Crea un messaggio che segnala un errore nelle sfide
         return new GameMessage<>("CHALLENGE_ERROR", error); //Restituisce un GameMessage con payload errore e tipo CHALLENGE_ERROR
     }
@@ -134,10 +220,34 @@ public class GameMessage<T> implements Serializable {
         return new GameMessage<>("GAME_START", new String[]{symbol, opponent}); //Restituisce un GameMessage con payload [simbolo, avversario] e tipo GAME_START
     }
 
+    public static GameMessage<String[]> gameStart(String symbol, String opponent, GameRules rules) { //Inizio partita: [simbolo, avversario, larghezza, altezza, k]
+        return rules.isClassic() ? gameStart(symbol, opponent) : new GameMessage<>("GAME_START", rules.appendTo(symbol, opponent)); //I client legacy ricevono sempre [simbolo, avversario]
+    }
+
     public static GameMessage<String[]> board(String position, String player) { //Crea un messaggio che aggiorna il tabellone con posizione e giocatore
         return new GameMessage<>("BOARD", new String[]{position, player}); //Restituisce un GameMessage con payload [posizione, giocatore] e tipo BOARD
     }
 
+    public static GameMessage<GameMessage<?>[]> batch(GameMessage<?>... messages) { //Più messaggi in un unico frame, da elaborare in ordine
+        return new GameMessage<>("BATCH", messages); //Restituisce un GameMessage con payload array di messaggi e tipo BATCH
+    }
+
+    public static GameMessage<?> queue(GameRules rules) { //Richiesta di partita rapida: nessun payload per il tris, altrimenti [larghezza, altezza, k]
+        return rules.isClassic() ? new GameMessage<>("QUEUE") : new GameMessage<>("QUEUE", rules.appendTo());
+    }
+
+    public static GameMessage<Void> dequeue() { //Uscita dalla coda della partita rapida
+        return new GameMessage<>("DEQUEUE");
+    }
+
+    public static GameMessage<?> queued(GameRules rules) { //Conferma dell'ingresso in coda, con lo stesso payload di QUEUE
+        return rules.isClassic() ? new GameMessage<>("QUEUED") : new GameMessage<>("QUEUED", rules.appendTo());
+    }
+
+    public static GameMessage<Void> dequeued() { //Conferma dell'uscita dalla coda
+        return new GameMessage<>("DEQUEUED");
+    }
+
     public static GameMessage<Integer> movePosition(int position) { //Crea un messaggio di mossa usando un intero per la posizione
         return new GameMessage<>("MOVE", position); //Restituisce un GameMessage con payload intero posizione e tipo MOVE
     }
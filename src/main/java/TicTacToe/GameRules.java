@@ -0,0 +1,63 @@
+package TicTacToe;
+
+//Regole di una partita m,n,k: tabellone width x height, vince chi allinea winLength simboli
+//Usata da server e client; le regole classiche 3x3 viaggiano con i vecchi payload, così i client legacy non cambiano
+public final class GameRules {
+    public static final int MIN_SIZE = 3; //Lato minimo del tabellone
+    public static final int MAX_SIZE = 19; //Lato massimo del tabellone
+    public static final GameRules CLASSIC = new GameRules(3, 3, 3); //Tris
+    public static final GameRules[] PRESETS = {CLASSIC, new GameRules(15, 15, 5), new GameRules(19, 19, 5)}; //Scelte dei client
+
+    public final int width; //Colonne
+    public final int height; //Righe
+    public final int winLength; //Simboli in fila per vincere
+
+    public GameRules(int width, int height, int winLength) {
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+    }
+
+    public int cells() { return width * height; } //Numero di celle
+
+    public boolean isClassic() { return equals(CLASSIC); }
+
+    //Dimensioni accettate dal server
+    public boolean isValid() {
+        return width >= MIN_SIZE && width <= MAX_SIZE && height >= MIN_SIZE && height <= MAX_SIZE
+                && winLength >= MIN_SIZE && winLength <= Math.max(width, height);
+    }
+
+    //Legge [.., larghezza, altezza, k] a partire da offset; senza campi sono le regole classiche, null se non sono numeri
+    public static GameRules fromPayload(String[] payload, int offset) {
+        if (payload.length < offset + 3) return CLASSIC;
+        try {
+            return new GameRules(Integer.parseInt(payload[offset]), Integer.parseInt(payload[offset + 1]), Integer.parseInt(payload[offset + 2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //Payload con i campi indicati seguiti da [larghezza, altezza, k]
+    String[] appendTo(String... fields) {
+        String[] payload = new String[fields.length + 3];
+        System.arraycopy(fields, 0, payload, 0, fields.length);
+        payload[fields.length] = String.valueOf(width);
+        payload[fields.length + 1] = String.valueOf(height);
+        payload[fields.length + 2] = String.valueOf(winLength);
+        return payload;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GameRules)) return false;
+        GameRules rules = (GameRules) other;
+        return width == rules.width && height == rules.height && winLength == rules.winLength;
+    }
+
+    @Override
+    public int hashCode() { return (width * 31 + height) * 31 + winLength; }
+
+    @Override
+    public String toString() { return width + "x" + height + ", " + winLength + " in fila"; } //Testo mostrato dai client
+}
@@ -0,0 +1,80 @@
+package TicTacToe;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+//Thread delle partite: ogni partita appartiene a uno di N shard (scelto dall'hash dell'id) e tutto ciò che la tocca
+//(avvio, mosse, spettatori, disconnessione) arriva come evento nella casella di quello shard. Lo stato di una partita è
+//quindi letto e scritto da un solo thread, senza lock, e le partite di uno shard restano nella cache del suo core.
+//I reader e gli event loop accodano l'evento e tornano subito a leggere
+final class GameShards {
+    //Numero di shard (default uno per core); 0 = nessuno shard, ogni evento gira sul thread chiamante con il lock della partita
+    static final int SHARDS = Integer.getInteger("tictactoe.game.shards", Runtime.getRuntime().availableProcessors());
+    private static final Shard[] shards = new Shard[Math.max(0, SHARDS)];
+
+    static {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard("game-shard-" + i);
+            shards[i].start();
+        }
+    }
+
+    private GameShards() {}
+
+    //Shard di una partita: lo stesso per tutta la sua durata
+    static int of(String gameId) {
+        if (shards.length == 0) return -1;
+        int hash = gameId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length); //Mescola i bit alti: gli id condividono i prefissi
+    }
+
+    //Esegue l'evento sul thread della partita, nell'ordine di arrivo
+    static void execute(Game game, Runnable event) {
+        if (shards.length == 0) { //Modalità senza shard: lock della partita sul thread chiamante
+            synchronized (game) {
+                event.run();
+            }
+            return;
+        }
+        shards[game.shard()].post(event);
+    }
+
+    static int count() { return shards.length; }
+
+    static int backlog(int shard) { return shards[shard].mailbox.size(); } //Eventi in attesa (per le metriche, O(n))
+
+    //Thread di uno shard: svuota la casella e si ferma con park quando è vuota
+    private static final class Shard extends Thread {
+        private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>(); //Più produttori, un consumatore, senza lock
+        private volatile boolean parked; //Il thread sta per fermarsi o è fermo: chi accoda lo sveglia
+
+        Shard(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        void post(Runnable event) {
+            mailbox.offer(event);
+            if (parked) LockSupport.unpark(this); //Nessuna chiamata di sistema se lo shard è già al lavoro
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable event = mailbox.poll();
+                if (event == null) {
+                    parked = true;
+                    if (mailbox.isEmpty()) LockSupport.park(this); //Ricontrolla dopo aver segnalato, così nessun evento resta fermo
+                    parked = false;
+                    continue;
+                }
+                try {
+                    event.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); //Un errore in una partita non deve fermare le altre dello shard
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package TicTacToe;
+
+import java.util.concurrent.*;
+
+//Fabbrica degli executor per i gestori di connessioni e partite: thread di piattaforma o virtuali
+public final class HandlerExecutors {
+    //Tipo di thread: "platform" (default, un thread di sistema per gestore) oppure "virtual"
+    public static final String MODE = System.getProperty("tictactoe.threads", "platform");
+    //Numero massimo di gestori attivi contemporaneamente per ogni executor
+    public static final int MAX_CONCURRENT = Integer.getInteger("tictactoe.threads.maxConcurrent", 20_000);
+
+    private HandlerExecutors() {}
+
+    //Crea un executor con thread nominati "<nome>-N" e concorrenza limitata
+    public static Executor create(String name) {
+        ThreadFactory factory = MODE.equals("virtual")
+                ? Thread.ofVirtual().name(name + "-", 0).factory() //Thread virtuali: l'I/O bloccante libera il carrier
+                : Thread.ofPlatform().name(name + "-", 0).factory(); //Thread di piattaforma come in origine
+        return new BoundedExecutor(Executors.newThreadPerTaskExecutor(factory), MAX_CONCURRENT);
+    }
+
+    //Executor che limita i task in esecuzione con un semaforo: oltre il limite chi invia attende
+    static class BoundedExecutor implements Executor {
+        private final Executor delegate; //Executor sottostante (un thread per task)
+        private final Semaphore permits; //Posti disponibili
+
+        BoundedExecutor(Executor delegate, int limit) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(limit);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            permits.acquireUninterruptibly(); //Attende un posto libero (es. rallenta l'accept)
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run(); //Esegue il gestore
+                    } finally {
+                        permits.release(); //Libera il posto a fine gestore
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release(); //Task non avviato: restituisce il posto
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package TicTacToe;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Anello di hashing consistente: ogni nodo occupa molti punti virtuali e una chiave appartiene al primo punto che la segue
+//Aggiungere o togliere un nodo sposta solo le chiavi dei suoi punti, non tutte come con hash % nodi
+public final class HashRing {
+    private static final int POINTS_PER_NODE = 128; //Punti virtuali per nodo: distribuzione uniforme anche con pochi nodi
+
+    private final TreeMap<Long, Integer> points = new TreeMap<>(); //Posizione sull'anello -> indice del nodo
+
+    public HashRing(int nodes) {
+        for (int node = 0; node < nodes; node++)
+            for (int point = 0; point < POINTS_PER_NODE; point++)
+                points.put(hash("node-" + node + "#" + point), node);
+    }
+
+    //Nodo proprietario della chiave (es. il nickname di un giocatore)
+    public int nodeFor(String key) {
+        Map.Entry<Long, Integer> entry = points.ceilingEntry(hash(key));
+        return (entry != null ? entry : points.firstEntry()).getValue(); //Oltre l'ultimo punto si riparte dall'inizio
+    }
+
+    //FNV-1a a 64 bit sui byte UTF-8, con un rimescolamento finale perché chiavi simili finiscano lontane
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,69 @@
+package TicTacToe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Heartbeat delle connessioni: un solo giro periodico sulla ruota condivisa controlla tutte le sessioni di gioco e video
+//Chi tace da un intervallo riceve un PING; chi tace oltre il timeout viene chiuso e la pulizia segue dal reader o dall'event loop
+public final class Heartbeat {
+    private static final int INTERVAL = Integer.getInteger("tictactoe.heartbeat.interval", 15); //Secondi tra i controlli, 0 = disattivato
+    private static final int TIMEOUT = Integer.getInteger("tictactoe.heartbeat.timeout", 45); //Secondi di silenzio prima della chiusura
+    private static final int LOGIN_TIMEOUT = Integer.getInteger("tictactoe.heartbeat.loginTimeout", 120); //Secondi per completare la registrazione, 0 = nessun limite
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(INTERVAL);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(TIMEOUT);
+    private static final LongAdder timeouts = new LongAdder(); //Connessioni chiuse per inattività
+
+    private Heartbeat() {}
+
+    static long timeouts() { return timeouts.sum(); }
+
+    //Avvia i controlli periodici (chiamato dal main del server)
+    static void start() {
+        if (INTERVAL > 0) schedule();
+    }
+
+    //Scadenza della registrazione di una connessione appena accettata: prima del login non ci sono PING, quindi chi non
+    //completa handshake e nickname in tempo viene chiuso da expire; null se il limite è disattivato
+    static TimerWheel.Timeout loginDeadline(Runnable expire) {
+        return LOGIN_TIMEOUT > 0 ? TicTacToeServer.timers.schedule(expire, LOGIN_TIMEOUT, TimeUnit.SECONDS) : null;
+    }
+
+    static void loginExpired(Object connection) {
+        timeouts.increment();
+        System.out.println("Connessione senza registrazione chiusa: " + connection);
+    }
+
+    private static void schedule() {
+        TicTacToeServer.timers.schedule(Heartbeat::sweep, INTERVAL, TimeUnit.SECONDS);
+    }
+
+    //Un controllo: solo letture di un timestamp per sessione, invii accodati e chiusure non bloccanti
+    private static void sweep() {
+        try {
+            long now = System.nanoTime();
+            for (Player player : TicTacToeServer.connectedClients.values()) {
+                if (!player.supportsHeartbeats()) continue; //Bot e client legacy che non rispondono ai PING
+                long idle = now - player.lastSeen();
+                if (idle > TIMEOUT_NANOS) {
+                    timeouts.increment();
+                    System.out.println("Connessione inattiva chiusa: " + player.getNickname());
+                    player.closeConnection();
+                } else if (idle > INTERVAL_NANOS) {
+                    player.sendMessage(GameMessage.ping());
+                }
+            }
+            for (VideoConnection client : TicTacToeServer.videoClients.values()) {
+                long idle = now - client.lastSeen();
+                if (idle > TIMEOUT_NANOS) {
+                    timeouts.increment();
+                    System.out.println("Connessione video inattiva chiusa: " + client.getNickname());
+                    client.close();
+                } else if (idle > INTERVAL_NANOS) {
+                    client.ping();
+                }
+            }
+        } finally {
+            schedule(); //Prossimo controllo
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package TicTacToe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Istogramma di latenze a bucket fissi: registrare è un confronto per bucket e due LongAdder, senza lock né allocazioni
+public final class LatencyHistogram {
+    //Limiti superiori predefiniti dei bucket in microsecondi (l'ultimo bucket, oltre l'ultimo limite, è +Inf)
+    static final long[] DEFAULT_BOUNDS_MICROS = {10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 100_000, 250_000, 1_000_000};
+
+    private final long[] boundsMicros; //Limiti superiori dei bucket di questo istogramma
+    private final LongAdder[] buckets; //Conteggi per bucket (non cumulativi)
+    private final LongAdder sumNanos = new LongAdder(); //Somma delle latenze
+
+    public LatencyHistogram() { this(DEFAULT_BOUNDS_MICROS); }
+
+    //Istogramma con limiti propri (crescenti, in microsecondi), ad esempio per attese di secondi
+    public LatencyHistogram(long... boundsMicros) {
+        this.boundsMicros = boundsMicros;
+        this.buckets = new LongAdder[boundsMicros.length + 1];
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    //Registra una latenza in nanosecondi
+    public void record(long nanos) {
+        long micros = nanos / 1_000;
+        int bucket = 0;
+        while (bucket < boundsMicros.length && micros > boundsMicros[bucket])
+            bucket++;
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    long[] boundsMicros() { return boundsMicros; } //Limiti dei bucket (escluso +Inf)
+
+    long bucket(int index) { return buckets[index].sum(); } //Conteggio di un bucket
+
+    long sumNanos() { return sumNanos.sum(); }
+
+    //Campioni registrati
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    //Limite superiore del bucket che contiene il percentile indicato (stima per eccesso), -1 se oltre l'ultimo limite
+    public long percentileMicros(double percentile) {
+        long total = count();
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < boundsMicros.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= target) return boundsMicros[i];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,131 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashSet;
+
+//Punteggi Elo e classifica ordinata: un Fenwick tree conta i giocatori per punteggio intero (dal più alto al più basso),
+//così posizione di un giocatore, top-K e pagine si ottengono in O(log punteggi) senza ordinare né scorrere la storia
+final class Leaderboard {
+    static final int INITIAL = 1200; //Punteggio di chi non ha ancora giocato
+    private static final int K = 32; //Variazione massima per partita
+    private static final int MAX = 4000; //Punteggio massimo indicizzato (i valori fuori vengono schiacciati ai bordi)
+
+    //Punteggio e statistiche di un giocatore
+    static final class Rating {
+        private double elo = INITIAL; //Valore esatto, la classifica usa quello arrotondato
+        private int games, wins, losses, draws;
+        private int bucket; //Indice del secchiello in cui si trova, 0 se non è ancora in classifica
+
+        int value() { return (int) Math.round(elo); }
+    }
+
+    //Riga di una pagina della classifica
+    record Row(int rank, String nickname, int rating, int games) {}
+
+    private final Map<String, Rating> ratings = new HashMap<>(); //Nickname -> punteggio
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final LinkedHashSet<String>[] buckets = new LinkedHashSet[MAX + 2]; //Giocatori per indice di punteggio, i pari merito nell'ordine in cui ci sono arrivati
+    private final int[] tree = new int[MAX + 2]; //Fenwick tree (1-based) sul numero di giocatori per indice
+
+    //Indice nel Fenwick tree: 1 per il punteggio più alto, così le somme prefisse contano chi sta davanti
+    private static int index(int rating) {
+        return MAX - Math.max(0, Math.min(MAX, rating)) + 1;
+    }
+
+    //Risultato di una partita: scoreA è 1 se vince a, 0 se vince b, 0.5 per il pareggio; restituisce i nuovi punteggi
+    synchronized int[] result(String a, String b, double scoreA) {
+        Rating ra = ratings.computeIfAbsent(a, nickname -> new Rating());
+        Rating rb = ratings.computeIfAbsent(b, nickname -> new Rating());
+        double expectedA = 1 / (1 + Math.pow(10, (rb.elo - ra.elo) / 400)); //Probabilità di vittoria attesa per a
+        double delta = K * (scoreA - expectedA);
+        move(a, ra, ra.elo + delta);
+        move(b, rb, rb.elo - delta);
+        ra.games++;
+        rb.games++;
+        if (scoreA == 1) { ra.wins++; rb.losses++; }
+        else if (scoreA == 0) { ra.losses++; rb.wins++; }
+        else { ra.draws++; rb.draws++; }
+        return new int[]{ra.value(), rb.value()};
+    }
+
+    //Aggiorna il punteggio e, se cambia il valore arrotondato, sposta il giocatore di secchiello
+    private void move(String nickname, Rating rating, double elo) {
+        rating.elo = elo;
+        int after = index(rating.value());
+        if (rating.bucket == after) return;
+        if (rating.bucket > 0) {
+            buckets[rating.bucket].remove(nickname);
+            add(rating.bucket, -1);
+        }
+        if (buckets[after] == null) buckets[after] = new LinkedHashSet<>();
+        buckets[after].add(nickname);
+        add(after, 1);
+        rating.bucket = after;
+    }
+
+    private void add(int i, int delta) {
+        for (; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    //Giocatori negli indici 1..i
+    private int prefix(int i) {
+        int sum = 0;
+        for (; i > 0; i -= i & -i)
+            sum += tree[i];
+        return sum;
+    }
+
+    synchronized int size() { return prefix(tree.length - 1); } //Giocatori in classifica
+
+    synchronized int value(String nickname) { //Punteggio arrotondato, INITIAL se non ha ancora giocato
+        Rating rating = ratings.get(nickname);
+        return rating != null ? rating.value() : INITIAL;
+    }
+
+    //Posizione in classifica (1 = primo, i pari merito condividono la posizione), 0 se non ha ancora giocato
+    synchronized int rank(String nickname) {
+        Rating rating = ratings.get(nickname);
+        return rating != null ? prefix(rating.bucket - 1) + 1 : 0;
+    }
+
+    //[posizione, punteggio, vittorie, pareggi, sconfitte] del giocatore
+    synchronized int[] stats(String nickname) {
+        Rating rating = ratings.get(nickname);
+        if (rating == null) return new int[]{0, INITIAL, 0, 0, 0};
+        return new int[]{prefix(rating.bucket - 1) + 1, rating.value(), rating.wins, rating.draws, rating.losses};
+    }
+
+    //Righe dalla posizione offset (0 = primo) per al massimo limit giocatori
+    synchronized List<Row> page(int offset, int limit) {
+        List<Row> rows = new ArrayList<>();
+        if (offset < 0 || limit <= 0 || offset >= size()) return rows;
+
+        int position = 0, skip = offset; //Discesa nel Fenwick tree fino al secchiello che contiene la riga offset
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            if (position + step < tree.length && tree[position + step] <= skip) {
+                position += step;
+                skip -= tree[position];
+            }
+        }
+        int ahead = offset - skip; //Giocatori nei secchielli precedenti
+        for (int i = position + 1; i < tree.length && rows.size() < limit; i++) {
+            LinkedHashSet<String> bucket = buckets[i];
+            if (bucket == null || bucket.isEmpty()) continue;
+            for (String nickname : bucket) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                Rating rating = ratings.get(nickname);
+                rows.add(new Row(ahead + 1, nickname, rating.value(), rating.games));
+                if (rows.size() == limit) break;
+            }
+            ahead += bucket.size();
+        }
+        return rows;
+    }
+}
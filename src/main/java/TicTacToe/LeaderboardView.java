@@ -0,0 +1,48 @@
+package TicTacToe;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+//Classifica e storico lato client: il bottone "Classifica" chiede entrambi e il testo si mostra all'arrivo dello storico
+public class LeaderboardView {
+    private static final int ROWS = 10; //Righe richieste per classifica e storico
+    private String leaderboard = ""; //Testo dell'ultima classifica ricevuta
+
+    //Richieste inviate dal bottone: prime righe della classifica e ultime partite del giocatore
+    public static GameMessage<?>[] requests(String nickname) {
+        return new GameMessage<?>[]{GameMessage.leaderboard(0, ROWS), GameMessage.history(nickname, 0, ROWS)};
+    }
+
+    //[giocatori, posizione, punteggio, vittorie, pareggi, sconfitte] seguiti da [posizione, nickname, punteggio, partite] per riga
+    public void applyLeaderboard(String[] payload) {
+        if (payload == null || payload.length < 6) return;
+        StringBuilder text = new StringBuilder("Classifica (" + payload[0] + " giocatori)\n");
+        for (int i = 6; i + 3 < payload.length; i += 4)
+            text.append(String.format("%3s. %-16s %5s  (%s partite)%n", payload[i], payload[i + 1], payload[i + 2], payload[i + 3]));
+        text.append('\n');
+        if (payload[1].equals("0"))
+            text.append("Non hai ancora partite in classifica (punteggio ").append(payload[2]).append(")\n");
+        else
+            text.append(String.format("Tu: %s° con %s punti, %s vittorie, %s pareggi, %s sconfitte%n",
+                    payload[1], payload[2], payload[3], payload[4], payload[5]));
+        leaderboard = text.toString();
+    }
+
+    //[nickname] seguito da [fine ms, avversario, WIN/LOSS/DRAW, mosse, durata ms, punteggio dopo] per partita; restituisce il testo completo
+    public String applyHistory(String[] payload) {
+        StringBuilder text = new StringBuilder(leaderboard).append("\nUltime partite\n");
+        if (payload == null || payload.length < 7) return text.append("Nessuna partita conclusa\n").toString();
+        SimpleDateFormat time = new SimpleDateFormat("dd/MM HH:mm");
+        for (int i = 1; i + 5 < payload.length; i += 6) {
+            String outcome = switch (payload[i + 2]) {
+                case "WIN" -> "vinta";
+                case "LOSS" -> "persa";
+                default -> "pari";
+            };
+            text.append(String.format("%s  %-5s contro %-16s %s mosse, %ss  -> %s%n",
+                    time.format(new Date(Long.parseLong(payload[i]))), outcome, payload[i + 1], payload[i + 3],
+                    Long.parseLong(payload[i + 4]) / 1000, payload[i + 5]));
+        }
+        return text.toString();
+    }
+}
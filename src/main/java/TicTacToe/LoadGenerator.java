@@ -0,0 +1,295 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Client di carico senza interfaccia: N giocatori sintetici (un thread virtuale ciascuno) entrano in lobby,
+//si sfidano a coppie e giocano partite a ripetizione, misurando partite/s, latenza delle mosse ed errori
+//Con -Dtictactoe.load.matchmaking=true i giocatori usano la partita rapida invece delle sfide a coppie fisse
+//In modalità cluster si indicano i nodi separati da virgole: i giocatori si distribuiscono tra loro e seguono i REDIRECT
+//Uso: java -Dtictactoe.load.players=10000 -cp ... TicTacToe.LoadGenerator [host[:porta][,host:porta...]]
+public class LoadGenerator {
+    private static final int GAME_PORT = 12345; //Porta del server di gioco, se non indicata
+    private static final int PLAYERS = Integer.getInteger("tictactoe.load.players", 1000) & ~1; //Giocatori simulati (pari: uno sfidante per coppia)
+    private static final int DURATION = Integer.getInteger("tictactoe.load.duration", 30); //Secondi di gioco
+    private static final int THINK_MS = Integer.getInteger("tictactoe.load.thinkMs", 0); //Attesa prima di ogni mossa
+    private static final int CONNECT_RATE = Integer.getInteger("tictactoe.load.connectRate", 1000); //Connessioni aperte al secondo
+    private static final int REPORT_INTERVAL = Integer.getInteger("tictactoe.load.reportInterval", 5); //Secondi tra i report
+    private static final String PREFIX = System.getProperty("tictactoe.load.prefix", "load"); //Prefisso dei nickname
+    private static final boolean MATCHMAKING = Boolean.getBoolean("tictactoe.load.matchmaking"); //Partita rapida invece delle coppie fisse
+    private static final byte CODEC = System.getProperty("tictactoe.codec", "binary").equals("serialized")
+            ? Protocol.CODEC_SERIALIZED : Protocol.CODEC_BINARY; //Codec richiesto, come i client Swing
+
+    //Risultati condivisi da tutti i giocatori
+    private static final AtomicInteger connected = new AtomicInteger(); //Giocatori in lobby
+    private static final LongAdder games = new LongAdder(); //Partite concluse
+    private static final LongAdder moves = new LongAdder(); //Mosse confermate dal server
+    private static final LatencyHistogram moveLatency = new LatencyHistogram(); //Dall'invio di MOVE al BOARD corrispondente
+    private static final AtomicLong maxLatency = new AtomicLong(); //Latenza massima in nanosecondi
+    private static final LongAdder connectErrors = new LongAdder(); //Connessioni o login falliti
+    private static final LongAdder challengeErrors = new LongAdder(); //CHALLENGE_ERROR e sfide rifiutate
+    private static final LongAdder moveErrors = new LongAdder(); //INVALID_MOVE e NOT_YOUR_TURN
+    private static final LongAdder disconnects = new LongAdder(); //Avversari disconnessi o connessioni cadute
+    private static final LongAdder throttled = new LongAdder(); //Messaggi respinti dal limite di frequenza del server
+
+    private static volatile long deadline; //Dopo questo istante (nanoTime) non si iniziano nuove partite
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] targets = (args.length > 0 ? args[0] : "localhost").split(","); //Nodi a cui collegarsi all'inizio
+        System.out.println("Carico su " + String.join(",", targets) + ": " + PLAYERS + " giocatori, " + DURATION + " s, pensiero " + THINK_MS + " ms"
+                + (MATCHMAKING ? ", partita rapida" : ""));
+
+        SyntheticPlayer[] players = new SyntheticPlayer[PLAYERS];
+        for (int pair = 0; pair < PLAYERS / 2; pair++) { //Lo sfidante aspetta che l'avversario sia in lobby
+            CountDownLatch opponentReady = new CountDownLatch(1);
+            players[2 * pair] = new SyntheticPlayer(targets[2 * pair % targets.length], PREFIX + "-" + (2 * pair), PREFIX + "-" + (2 * pair + 1), opponentReady);
+            players[2 * pair + 1] = new SyntheticPlayer(targets[(2 * pair + 1) % targets.length], PREFIX + "-" + (2 * pair + 1), null, opponentReady);
+            if (!MATCHMAKING) players[2 * pair].partner = players[2 * pair + 1];
+        }
+
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("load-", 0).factory());
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(DURATION);
+        Thread reporter = Thread.ofPlatform().daemon().name("LoadReport").start(() -> report(start));
+        long pacing = TimeUnit.SECONDS.toNanos(1) / Math.max(1, CONNECT_RATE); //Il backlog dell'accept del server è limitato
+        for (int i = 0; i < PLAYERS; i++) {
+            executor.execute(players[i]);
+            long due = start + (i + 1) * pacing;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) TimeUnit.NANOSECONDS.sleep(remaining);
+        executor.shutdown();
+        if (!executor.awaitTermination(10L + 10L * THINK_MS / 1000, TimeUnit.SECONDS)) { //Partite ferme: chiude le connessioni rimaste
+            for (SyntheticPlayer player : players)
+                player.close();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        reporter.interrupt();
+        System.out.println("Risultato finale: " + summary(start));
+    }
+
+    //Stampa periodicamente l'andamento
+    private static void report(long start) {
+        try {
+            while (true) {
+                TimeUnit.SECONDS.sleep(REPORT_INTERVAL);
+                System.out.println(summary(start));
+            }
+        } catch (InterruptedException e) {
+            //Fine della prova
+        }
+    }
+
+    private static String summary(long start) {
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        return String.format("[%.0f s] connessi %d, partite %d (%.1f/s), mosse %d (%.1f/s), RTT mossa p50 %s p90 %s p99 %s max %.1f ms, "
+                        + "errori: connessione %d, sfida %d, mossa %d, disconnessione %d, limitati %d",
+                elapsed, connected.get(), games.sum(), games.sum() / elapsed, moves.sum(), moves.sum() / elapsed,
+                percentile(0.50), percentile(0.90), percentile(0.99), maxLatency.get() / 1e6,
+                connectErrors.sum(), challengeErrors.sum(), moveErrors.sum(), disconnects.sum(), throttled.sum());
+    }
+
+    private static String percentile(double percentile) {
+        long micros = moveLatency.percentileMicros(percentile); //Limite superiore del bucket
+        return micros < 0 ? ">1 s" : "<=" + micros + " us";
+    }
+
+    //Un giocatore sintetico: legge i messaggi del server e risponde come farebbe un client
+    private static final class SyntheticPlayer implements Runnable {
+        private final String target; //Server iniziale, host[:porta]
+        private final String nickname; //Nickname del giocatore
+        private final String opponent; //Avversario da sfidare, null se il giocatore aspetta la sfida
+        private final CountDownLatch opponentReady; //Aperto quando l'avversario della coppia è in lobby
+        private SyntheticPlayer partner; //Avversario che attende le sfide: lo sfidante lo chiude quando smette
+        private volatile Socket socket; //Connessione, chiusa dal main a fine prova
+        private MessageStream stream; //Trasporto a frame
+        private boolean[] taken; //Celle occupate della partita in corso
+        private int pendingMove = -1; //Mossa inviata in attesa del BOARD
+        private long moveSentAt; //Istante di invio della mossa
+        private boolean playingX; //Simbolo della partita in corso
+
+        SyntheticPlayer(String target, String nickname, String opponent, CountDownLatch opponentReady) {
+            this.target = target;
+            this.nickname = nickname;
+            this.opponent = opponent;
+            this.opponentReady = opponentReady;
+        }
+
+        @Override
+        public void run() {
+            boolean loggedIn = false;
+            try {
+                int colon = target.lastIndexOf(':');
+                if (colon < 0) connect(target, GAME_PORT);
+                else connect(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+                GameMessage<?> message;
+                while ((message = stream.receive()) != null) {
+                    if (message.getType().equals("REDIRECT")) { //Il nickname appartiene a un altro nodo del cluster
+                        String[] owner = message.getPayloadAsStringArray();
+                        close();
+                        connect(owner[0], Integer.parseInt(owner[1])); //Il nuovo nodo richiede di nuovo il nickname
+                        continue;
+                    }
+                    if (message.getType().equals("NICKNAME_SUCCESS")) {
+                        loggedIn = true;
+                        connected.incrementAndGet();
+                    }
+                    if (!handle(message)) break; //Prova finita per questo giocatore
+                }
+            } catch (IOException e) {
+                if (!loggedIn) connectErrors.increment();
+                else if (System.nanoTime() < deadline) disconnects.increment(); //Le chiusure dopo la fine sono attese
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (loggedIn) connected.decrementAndGet();
+                else opponentReady.countDown(); //Lo sfidante non resta in attesa di un avversario che non arriverà
+                close();
+                if (partner != null) partner.close(); //Senza nuove sfide l'avversario resterebbe in lobby
+            }
+        }
+
+        private void connect(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true); //Una mossa è un frame piccolo: niente attesa di Nagle
+            stream = MessageStream.connect(socket, CODEC);
+        }
+
+        //Elabora un messaggio; restituisce false quando il giocatore ha finito
+        private boolean handle(GameMessage<?> message) throws IOException, InterruptedException {
+            switch (message.getType()) {
+                case "BATCH": //Aggiornamento del tabellone e turno o esito in un solo frame
+                    for (GameMessage<?> inner : message.getPayloadAsMessages())
+                        if (!handle(inner)) return false;
+                    return true;
+                case "PING": //Heartbeat del server
+                    stream.send(GameMessage.pong());
+                    return true;
+                case "SET_NICKNAME":
+                    stream.send(GameMessage.nickname(nickname));
+                    return true;
+                case "NICKNAME_SUCCESS":
+                    if (MATCHMAKING) return queueAgain();
+                    if (opponent == null) {
+                        opponentReady.countDown(); //Lo sfidante può lanciare la sfida
+                    } else {
+                        if (!opponentReady.await(30, TimeUnit.SECONDS)) {
+                            connectErrors.increment();
+                            return false;
+                        }
+                        stream.send(GameMessage.challenge(opponent));
+                    }
+                    return true;
+                case "NICKNAME_ERROR":
+                    connectErrors.increment();
+                    return false;
+                case "CHALLENGE_REQUEST": //Sfidante, seguito dal tabellone se non è il tris classico
+                    stream.send(GameMessage.challengeAccept(message.getPayloadAsStringArray()[0]));
+                    return true;
+                case "CHALLENGE_ERROR":
+                case "CHALLENGE_REJECTED":
+                    challengeErrors.increment();
+                    if (opponent != null && !MATCHMAKING) { //Lo sfidante riprova dopo una pausa
+                        TimeUnit.MILLISECONDS.sleep(10);
+                        return challengeAgain();
+                    }
+                    return true;
+                case "GAME_START":
+                    String[] start = message.getPayloadAsStringArray();
+                    playingX = start[0].equals("X");
+                    GameRules rules = GameRules.fromPayload(start, 2);
+                    taken = new boolean[rules != null ? rules.cells() : 9];
+                    return true;
+                case "YOUR_TURN":
+                    if (THINK_MS > 0) TimeUnit.MILLISECONDS.sleep(THINK_MS);
+                    pendingMove = randomFreeCell();
+                    moveSentAt = System.nanoTime();
+                    stream.send(GameMessage.move(String.valueOf(pendingMove)));
+                    return true;
+                case "BOARD":
+                    int pos = Integer.parseInt(message.getPayloadAsStringArray()[0]);
+                    taken[pos] = true;
+                    if (pos == pendingMove) { //Conferma della propria mossa
+                        long latency = System.nanoTime() - moveSentAt;
+                        moveLatency.record(latency);
+                        maxLatency.accumulateAndGet(latency, Math::max);
+                        moves.increment();
+                        pendingMove = -1;
+                    }
+                    return true;
+                case "INVALID_MOVE":
+                case "NOT_YOUR_TURN":
+                    moveErrors.increment();
+                    return true;
+                case "GAME_OVER":
+                    if (MATCHMAKING) {
+                        if (playingX) games.increment(); //Contata una volta per partita
+                        return queueAgain();
+                    }
+                    if (opponent == null) return System.nanoTime() < deadline; //Chi attende la sfida smette a fine prova
+                    games.increment(); //Contata una volta per coppia
+                    return challengeAgain();
+                case "THROTTLED": //Il server ha ignorato l'ultimo messaggio: lo stesso invio dopo una pausa
+                    throttled.increment();
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    if (message.getPayloadAsString().equals("move") && pendingMove >= 0) {
+                        moveSentAt = System.nanoTime();
+                        stream.send(GameMessage.move(String.valueOf(pendingMove)));
+                        return true;
+                    }
+                    if (message.getPayloadAsString().equals("challenge")) return MATCHMAKING ? queueAgain() : opponent == null || challengeAgain();
+                    return true;
+                case "OPPONENT_DISCONNECTED":
+                    if (System.nanoTime() < deadline) disconnects.increment();
+                    return MATCHMAKING && queueAgain(); //Con la partita rapida si cerca un altro avversario
+                default: //Lobby, conferme delle sfide, turno dell'avversario
+                    return true;
+            }
+        }
+
+        //Torna in coda per la partita rapida, finché la prova non è finita
+        private boolean queueAgain() throws IOException {
+            if (System.nanoTime() >= deadline) return false;
+            stream.send(GameMessage.queue(GameRules.CLASSIC));
+            return true;
+        }
+
+        //Nuova sfida alla stessa coppia, finché la prova non è finita
+        private boolean challengeAgain() throws IOException {
+            if (System.nanoTime() >= deadline) return false;
+            stream.send(GameMessage.challenge(opponent));
+            return true;
+        }
+
+        private int randomFreeCell() {
+            int free = 0;
+            for (boolean cell : taken)
+                if (!cell) free++;
+            int choice = ThreadLocalRandom.current().nextInt(free);
+            for (int i = 0; i < taken.length; i++)
+                if (!taken[i] && choice-- == 0) return i;
+            return -1;
+        }
+
+        void close() {
+            Socket current = socket;
+            if (current == null) return;
+            try {
+                current.close();
+            } catch (IOException e) {
+                //Già chiusa
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package TicTacToe;
+
+import java.awt.*;
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.*;
+
+//Stato della lobby lato client: applica snapshot e delta di presenza al modello della lista giocatori (nel thread UI)
+public class LobbyPresence {
+    private final DefaultListModel<String> model; //Modello della JList dei giocatori
+    private final Set<String> listed = new HashSet<>(); //Giocatori nel modello: controllo di presenza senza scorrere la lista
+    private final Set<String> busy = new HashSet<>(); //Giocatori in partita
+    private long version = -1; //Versione applicata, -1 finché non arriva uno snapshot
+    private String self; //Nickname del client, mai mostrato nella lista
+
+    public LobbyPresence(DefaultListModel<String> model) {
+        this.model = model;
+    }
+
+    public void setSelf(String nickname) { this.self = nickname; } //Nickname confermato dal server
+
+    //Snapshot completo: ricostruisce la lista
+    public void applySnapshot(String[] snapshot) {
+        model.clear(); //Unico caso in cui la lista viene svuotata
+        listed.clear();
+        busy.clear();
+        version = Long.parseLong(snapshot[0]);
+        applyOps(snapshot);
+    }
+
+    //Delta: applica le operazioni; restituisce false se manca una versione e serve un nuovo snapshot
+    public boolean applyDelta(String[] delta) {
+        if (version < 0) return true; //Snapshot non ancora arrivato: lo snapshot includerà già questi cambiamenti
+        long deltaVersion = Long.parseLong(delta[0]);
+        if (deltaVersion <= version) return true; //Già incluso nello snapshot
+        if (deltaVersion != version + 1) return false; //Delta perso: serve uno snapshot
+        version = deltaVersion;
+        applyOps(delta);
+        return true;
+    }
+
+    //Operazioni [versione, op, nickname, op, nickname...], idempotenti
+    private void applyOps(String[] ops) {
+        for (int i = 1; i + 1 < ops.length; i += 2) {
+            String nickname = ops[i + 1];
+            if (nickname.equals(self)) continue; //Il client non mostra sé stesso
+            switch (ops[i]) {
+                case Presence.JOINED:
+                    if (listed.add(nickname)) model.addElement(nickname); //Aggiunge solo se assente
+                    break;
+                case Presence.LEFT:
+                    if (listed.remove(nickname)) model.removeElement(nickname);
+                    busy.remove(nickname);
+                    break;
+                case Presence.BUSY:
+                    busy.add(nickname);
+                    repaint(nickname);
+                    break;
+                case Presence.FREE:
+                    busy.remove(nickname);
+                    repaint(nickname);
+                    break;
+            }
+        }
+    }
+
+    //Notifica la JList che la riga del giocatore va ridisegnata
+    private void repaint(String nickname) {
+        if (!listed.contains(nickname)) return;
+        int index = model.indexOf(nickname);
+        if (index >= 0) model.set(index, nickname);
+    }
+
+    //Renderer che mostra i giocatori in partita in grigio
+    public ListCellRenderer<Object> renderer() {
+        return new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focus) {
+                super.getListCellRendererComponent(list, value, index, selected, focus);
+                if (busy.contains(value)) { //Giocatore in partita
+                    setText(value + " (in partita)");
+                    setForeground(Color.lightGray);
+                }
+                return this;
+            }
+        };
+    }
+}
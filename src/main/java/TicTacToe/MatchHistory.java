@@ -0,0 +1,218 @@
+package TicTacToe;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+//Storico delle partite concluse e punteggi Elo: a fine partita il punteggio si aggiorna subito in Leaderboard e l'esito
+//si aggiunge alle ultime partite dei due giocatori; il record binario viene accodato e scritto a blocchi da un solo thread
+//in un file append-only, riletto all'avvio per ricostruire punteggi e storico nello stesso ordine
+public final class MatchHistory {
+    private static final String FILE = System.getProperty("tictactoe.history.file", ""); //Vuoto (default) = solo in memoria
+    private static final int PER_PLAYER = Integer.getInteger("tictactoe.history.perPlayer", 100); //Partite recenti tenute per giocatore
+    private static final int FLUSH_MS = Integer.getInteger("tictactoe.history.flushMs", 50); //Millisecondi tra due scritture
+    private static final int HEADER = 8; //[lunghezza int][crc32 int] prima del corpo
+
+    static final char X_WINS = 'X', O_WINS = 'O', TIE = 'T'; //Esiti
+
+    //Partita conclusa, condivisa dalle liste recenti dei due giocatori
+    record Match(long endedAt, int durationMs, String x, String o, char result, boolean forfeit, GameRules rules,
+                 int[] moves, int ratingX, int ratingO) {}
+
+    static final Leaderboard leaderboard = new Leaderboard(); //Punteggi e classifica
+    private static final Map<String, ArrayDeque<Match>> recent = new ConcurrentHashMap<>(); //Nickname -> ultime partite, dalla più recente
+    private static final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>(); //Record in attesa del writer
+    private static final LongAdder recorded = new LongAdder(); //Partite registrate da questo avvio
+    private static FileChannel channel; //File dello storico, null se solo in memoria
+
+    private MatchHistory() {}
+
+    //Ricostruisce punteggi e storico dal file e avvia il writer (chiamato dal main prima dei server)
+    static synchronized void start() {
+        if (FILE.isBlank()) return;
+        Path path = Path.of(FILE);
+        try {
+            long valid = Files.exists(path) ? read(path, match -> apply(match.endedAt(), match.durationMs(), match.x(), match.o(),
+                    match.result(), match.forfeit(), match.rules(), match.moves())) : 0;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(valid); //Un record interrotto in coda verrebbe altrimenti seguito da quelli nuovi
+            channel.position(valid);
+        } catch (IOException e) {
+            System.err.println("Storico delle partite non disponibile: " + e.getMessage());
+            channel = null;
+            return;
+        }
+        Thread writer = new Thread(MatchHistory::run, "MatchHistory");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(MatchHistory::flush, "MatchHistoryFlush"));
+        System.out.println("Storico delle partite in " + path.toAbsolutePath() + ": " + leaderboard.size() + " giocatori in classifica");
+    }
+
+    //Fine di una partita tra due client (bot esclusi): aggiorna punteggi e storico e accoda il record
+    static void finished(Player x, Player o, GameRules rules, char result, boolean forfeit, int[] moves, long startedAt) {
+        if (x.isBot() || o.isBot()) return; //I bot non entrano in classifica
+        long now = System.currentTimeMillis();
+        synchronized (leaderboard) { //Stesso lock dei punteggi: i record arrivano al file nell'ordine in cui è stato applicato l'Elo
+            Match match = apply(now, (int) Math.min(Integer.MAX_VALUE, now - startedAt), x.getNickname(), o.getNickname(),
+                    result, forfeit, rules, moves);
+            if (channel != null) pending.offer(encode(match));
+        }
+        recorded.increment();
+    }
+
+    //Aggiornamento comune alla fine di una partita e alla rilettura del file
+    private static Match apply(long endedAt, int durationMs, String x, String o, char result, boolean forfeit, GameRules rules, int[] moves) {
+        int[] ratings = leaderboard.result(x, o, result == X_WINS ? 1 : result == O_WINS ? 0 : 0.5);
+        Match match = new Match(endedAt, durationMs, x, o, result, forfeit, rules, moves, ratings[0], ratings[1]);
+        remember(x, match);
+        remember(o, match);
+        return match;
+    }
+
+    private static void remember(String nickname, Match match) {
+        ArrayDeque<Match> matches = recent.computeIfAbsent(nickname, key -> new ArrayDeque<>());
+        synchronized (matches) {
+            matches.addFirst(match);
+            if (matches.size() > PER_PLAYER) matches.removeLast();
+        }
+    }
+
+    //Partite recenti del giocatore dalla posizione offset (0 = la più recente)
+    static List<Match> history(String nickname, int offset, int limit) {
+        List<Match> page = new ArrayList<>();
+        ArrayDeque<Match> matches = recent.get(nickname);
+        if (matches == null || offset < 0) return page;
+        synchronized (matches) {
+            Iterator<Match> iterator = matches.iterator();
+            for (int i = 0; iterator.hasNext() && page.size() < limit; i++) {
+                Match match = iterator.next();
+                if (i >= offset) page.add(match);
+            }
+        }
+        return page;
+    }
+
+    //[fine ms][durata ms][esito][abbandono][larghezza][altezza][k][X][O][numero mosse][mosse...]
+    private static byte[] encode(Match match) {
+        byte[] x = match.x().getBytes(StandardCharsets.UTF_8), o = match.o().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(23 + x.length + o.length + 2 * match.moves().length)
+                .putLong(match.endedAt()).putInt(match.durationMs()).put((byte) match.result()).put((byte) (match.forfeit() ? 1 : 0))
+                .put((byte) match.rules().width).put((byte) match.rules().height).put((byte) match.rules().winLength)
+                .putShort((short) x.length).put(x).putShort((short) o.length).put(o).putShort((short) match.moves().length);
+        for (int move : match.moves())
+            body.putShort((short) move);
+        return body.array();
+    }
+
+    //Esporta le partite del file dello storico nel formato compatto di Replay; restituisce le partite esportate
+    static long export(Path history, Path replays) throws IOException {
+        try (Replay.Writer out = new Replay.Writer(replays)) {
+            read(history, out::append);
+            return out.count();
+        }
+    }
+
+    //Rilegge il file passando ogni partita in ordine (punteggi a 0); restituisce la lunghezza della parte valida
+    private static long read(Path path, Consumer<Match> consumer) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (true) {
+                int length, checksum;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > 1 << 20) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    break; //Fine del file o record troncato
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) break;
+                ByteBuffer record = ByteBuffer.wrap(body);
+                long endedAt = record.getLong();
+                int durationMs = record.getInt();
+                char result = (char) record.get();
+                boolean forfeit = record.get() == 1;
+                GameRules rules = new GameRules(record.get(), record.get(), record.get());
+                String x = readName(record), o = readName(record);
+                int[] moves = new int[record.getShort()];
+                for (int i = 0; i < moves.length; i++)
+                    moves[i] = record.getShort();
+                consumer.accept(new Match(endedAt, durationMs, x, o, result, forfeit, rules, moves, 0, 0));
+                valid += HEADER + length;
+            }
+        }
+        return valid;
+    }
+
+    private static String readName(ByteBuffer record) {
+        byte[] name = new byte[record.getShort()];
+        record.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    //Thread dello storico: una scrittura per blocco di partite concluse
+    private static void run() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(FLUSH_MS);
+        while (true) {
+            LockSupport.parkNanos(interval);
+            if (!pending.isEmpty()) flush();
+        }
+    }
+
+    private static synchronized void flush() {
+        if (channel == null) return;
+        List<byte[]> bodies = new ArrayList<>();
+        int size = 0;
+        byte[] body;
+        while ((body = pending.poll()) != null) {
+            bodies.add(body);
+            size += HEADER + body.length;
+        }
+        if (bodies.isEmpty()) return;
+        ByteBuffer block = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] record : bodies) {
+            crc.reset();
+            crc.update(record);
+            block.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        }
+        block.flip();
+        try {
+            while (block.hasRemaining())
+                channel.write(block);
+        } catch (IOException e) {
+            System.err.println("Errore nello storico delle partite: " + e.getMessage());
+        }
+    }
+
+    //Riepilogo per il report periodico
+    public static String report() {
+        return String.format("Storico: %d partite registrate da questo avvio, %d giocatori in classifica",
+                recorded.sum(), leaderboard.size());
+    }
+}
@@ -0,0 +1,154 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Partita rapida: i giocatori entrano in una coda per tabellone e fascia di punteggio, un unico thread li abbina a lotti
+//Entrare o uscire dalla coda è un CAS e un inserimento in una coda lock-free: nessun lock condiviso con la lobby
+public final class Matchmaking {
+    private static final int INTERVAL_MS = Integer.getInteger("tictactoe.matchmaking.interval", 100); //Millisecondi tra due lotti
+
+    //Chiave di una coda: solo giocatori con lo stesso tabellone e la stessa fascia vengono abbinati
+    record Key(GameRules rules, int band) {}
+
+    //Iscrizione di un giocatore alla coda
+    static final class Ticket {
+        private static final int WAITING = 0, MATCHED = 1, CANCELLED = 2; //Stati del biglietto
+
+        final Player player;
+        final Key key;
+        final long enqueuedAt = System.nanoTime(); //Per il tempo di attesa
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Ticket(Player player, Key key) {
+            this.player = player;
+            this.key = key;
+        }
+
+        boolean isWaiting() { return state.get() == WAITING; }
+
+        private boolean claim() { return state.compareAndSet(WAITING, MATCHED); } //Riservato dal matcher
+
+        private void release() { state.compareAndSet(MATCHED, WAITING); } //Abbinamento fallito: torna in attesa
+
+        private boolean cancel() { return state.compareAndSet(WAITING, CANCELLED); } //DEQUEUE, disconnessione o altra partita
+    }
+
+    private static final ConcurrentHashMap<Key, ConcurrentLinkedQueue<Ticket>> queues = new ConcurrentHashMap<>(); //Iscritti per chiave
+    private static final Map<Key, Ticket> leftovers = new HashMap<>(); //Iscritto rimasto senza avversario nell'ultimo lotto (solo thread del matcher)
+    private static final List<Ticket> retry = new ArrayList<>(); //Iscritti da rimettere in coda per il lotto successivo (solo thread del matcher)
+    private static final AtomicInteger waiting = new AtomicInteger(); //Giocatori in attesa
+
+    private static final ScheduledExecutorService matcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Matchmaking"); //Thread che forma le coppie
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        matcher.scheduleWithFixedDelay(Matchmaking::matchAll, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private Matchmaking() {}
+
+    static int waiting() { return waiting.get(); }
+
+    //Mette in coda il giocatore; false se è già in coda
+    static boolean join(Player player, GameRules rules) {
+        Ticket ticket = new Ticket(player, new Key(rules, player.ratingBand()));
+        if (!player.queueTicket.compareAndSet(null, ticket)) return false;
+        queues.computeIfAbsent(ticket.key, key -> new ConcurrentLinkedQueue<>()).offer(ticket);
+        waiting.incrementAndGet();
+        return true;
+    }
+
+    //Toglie il giocatore dalla coda (il biglietto resta nella coda e viene scartato dal matcher); false se non era in attesa
+    static boolean leave(Player player) {
+        Ticket ticket = player.queueTicket.get();
+        if (ticket == null || !ticket.cancel()) return false;
+        player.queueTicket.compareAndSet(ticket, null);
+        waiting.decrementAndGet();
+        return true;
+    }
+
+    //Un lotto: abbina in ordine di arrivo gli iscritti di ogni coda
+    private static void matchAll() {
+        try {
+            for (Map.Entry<Key, ConcurrentLinkedQueue<Ticket>> entry : queues.entrySet()) {
+                Ticket first = leftovers.remove(entry.getKey()); //Chi aspetta da più tempo gioca con X
+                Ticket ticket;
+                while ((ticket = entry.getValue().poll()) != null) {
+                    if (!ticket.isWaiting()) continue; //Uscito dalla coda
+                    if (first == null || !first.isWaiting()) {
+                        first = ticket;
+                        continue;
+                    }
+                    first = match(first, ticket); //Eventuale iscritto ancora senza avversario
+                }
+                if (first != null && first.isWaiting())
+                    leftovers.put(entry.getKey(), first);
+            }
+            for (Ticket ticket : retry) queues.get(ticket.key).offer(ticket);
+            retry.clear();
+        } catch (RuntimeException e) {
+            e.printStackTrace(); //Un errore non deve fermare i lotti successivi
+        }
+    }
+
+    //Avvia la partita tra due iscritti; restituisce quello da abbinare ancora (null se la partita è partita)
+    private static Ticket match(Ticket x, Ticket o) {
+        if (!x.claim()) return o; //Uscito dalla coda nel frattempo
+        if (!o.claim()) {
+            x.release();
+            return x;
+        }
+
+        String gameId = Game.idFor(x.player.getNickname(), o.player.getNickname());
+        Game game = new Game(x.player, o.player, gameId, x.key.rules());
+        if (!x.player.joinGame(game)) { //Già in partita o disconnesso: il suo biglietto non vale più
+            discard(x);
+            o.release();
+            return o;
+        }
+        if (!o.player.joinGame(game)) {
+            x.player.leaveGame(game);
+            discard(o);
+            x.release();
+            return x;
+        }
+        if (!game.register()) { //Id della coppia ancora occupato: entrambi restano in coda, O riprova al prossimo lotto
+            x.player.leaveGame(game);
+            o.player.leaveGame(game);
+            o.release();
+            retry.add(o);
+            x.release();
+            return x;
+        }
+
+        long now = System.nanoTime();
+        for (Ticket ticket : new Ticket[]{x, o}) {
+            ticket.player.queueTicket.compareAndSet(ticket, null);
+            waiting.decrementAndGet();
+            Metrics.matched(now - ticket.enqueuedAt);
+            Presence.setBusy(ticket.player.getNickname(), true);
+        }
+        x.player.sendMessage(GameMessage.challengeAccepted(o.player.getNickname())); //I client passano alla partita come dopo una sfida accettata
+        o.player.sendMessage(GameMessage.challengeAccepted(x.player.getNickname()));
+        game.start();
+        return null;
+    }
+
+    //Biglietto di un giocatore che non può più giocare
+    private static void discard(Ticket ticket) {
+        if (ticket.player.queueTicket.compareAndSet(ticket, null))
+            waiting.decrementAndGet();
+    }
+}
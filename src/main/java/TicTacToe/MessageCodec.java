@@ -0,0 +1,14 @@
+package TicTacToe;
+
+import java.io.IOException;
+
+//Codifica e decodifica il corpo di un frame contenente un GameMessage
+public interface MessageCodec {
+    byte id(); //Identificativo inviato durante l'handshake
+
+    String name(); //Nome leggibile del codec (per log e statistiche)
+
+    byte[] encode(GameMessage<?> message) throws IOException; //Converte il messaggio nel corpo del frame
+
+    GameMessage<?> decode(byte[] data, int offset, int length) throws IOException; //Ricostruisce il messaggio dal corpo del frame
+}
@@ -0,0 +1,109 @@
+package TicTacToe;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Trasporto bloccante a frame: [lunghezza int][corpo codificato dal codec negoziato]
+public class MessageStream implements BlockingTransport {
+    private final Socket socket; //Socket della connessione
+    private final DataInputStream in; //Stream di input dei frame
+    private final DataOutputStream out; //Stream di output dei frame
+    private final MessageCodec codec; //Codec negoziato nell'handshake
+    private final ReentrantLock writeLock = new ReentrantLock(); //Un frame alla volta; a differenza di synchronized non blocca il carrier di un thread virtuale
+
+    public MessageStream(Socket socket, DataInputStream in, OutputStream out, MessageCodec codec) {
+        this.socket = socket;
+        this.in = in;
+        this.out = new DataOutputStream(new BufferedOutputStream(out)); //Bufferizza header e corpo in un'unica scrittura
+        this.codec = codec;
+    }
+
+    //Handshake lato client: apre il protocollo a frame chiedendo il codec indicato
+    public static MessageStream connect(Socket socket, byte codecId) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream())); //Stream di input
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream()); //Stream di output per l'handshake
+        out.writeInt(Protocol.MAGIC); //Annuncia il protocollo a frame
+        out.writeByte(codecId); //Codec preferito
+        out.flush();
+
+        if (in.readInt() != Protocol.MAGIC) //Il server deve rispondere con lo stesso magic
+            throw new IOException("Server non compatibile con il protocollo a frame");
+        MessageCodec codec = Protocol.codecFor(in.readByte()); //Codec scelto dal server
+        if (codec == null)
+            throw new IOException("Codec non supportato dal client");
+        return new MessageStream(socket, in, socket.getOutputStream(), codec);
+    }
+
+    //Handshake lato server: il magic è già stato letto, legge il codec richiesto e risponde con quello scelto
+    public static MessageStream accept(Socket socket, DataInputStream in) throws IOException {
+        MessageCodec codec = Protocol.negotiate(in.readByte()); //Codec richiesto o ripiego
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream()); //Stream di output per la risposta
+        out.writeInt(Protocol.MAGIC); //Conferma il protocollo a frame
+        out.writeByte(codec.id()); //Comunica il codec scelto
+        out.flush();
+        return new MessageStream(socket, in, socket.getOutputStream(), codec);
+    }
+
+    public MessageCodec getCodec() { return codec; } //Codec negoziato
+
+    @Override
+    public void send(GameMessage<?> message) throws IOException {
+        byte[] body = message.encode(codec); //Codifica il messaggio (o riusa il corpo di un messaggio condiviso)
+        writeLock.lock();
+        try {
+            out.writeInt(body.length); //Scrive la lunghezza del frame
+            out.write(body); //Scrive il corpo del frame
+            out.flush(); //Un solo flush per frame
+        } finally {
+            writeLock.unlock();
+        }
+        ProtocolStats.sent(codec.id(), 4 + body.length); //Byte sul filo: header + corpo
+        ProtocolStats.flushed();
+    }
+
+    //Più messaggi con un solo flush (collegamenti tra i nodi del cluster)
+    public void send(List<GameMessage<?>> messages) throws IOException {
+        int bytes = 0;
+        writeLock.lock();
+        try {
+            for (GameMessage<?> message : messages) {
+                byte[] body = message.encode(codec);
+                out.writeInt(body.length);
+                out.write(body);
+                bytes += 4 + body.length;
+            }
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+        ProtocolStats.sent(codec.id(), bytes);
+        ProtocolStats.flushed();
+    }
+
+    @Override
+    public GameMessage<?> receive() throws IOException {
+        int length; //Lunghezza del frame
+        try {
+            length = in.readInt(); //Legge l'header del frame
+        } catch (EOFException e) {
+            return null; //Connessione chiusa dal peer tra un frame e l'altro
+        }
+        if (length <= 0 || length > Protocol.MAX_FRAME_SIZE) //Se la dimensione non è valida
+            throw new IOException("Dimensione frame non valida: " + length);
+        byte[] body = new byte[length]; //Buffer del corpo
+        in.readFully(body); //Legge il corpo completo
+        ProtocolStats.received(codec.id(), 4 + length); //Byte sul filo: header + corpo
+        return codec.decode(body, 0, length); //Decodifica il messaggio
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close(); //Chiude il socket
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package TicTacToe;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+//Registro delle metriche del server: contatori e istogrammi aggiornati senza lock né allocazioni,
+//letti solo quando arriva una richiesta HTTP (formato Prometheus) o JMX
+public final class Metrics implements MetricsMBean {
+    static final Metrics INSTANCE = new Metrics(); //Istanza registrata in JMX
+
+    private static final LongAdder[] messagesIn = adders(BinaryCodec.tagCount()); //Messaggi ricevuti per tag del tipo
+    private static final LongAdder[] messagesOut = adders(BinaryCodec.tagCount()); //Messaggi accodati per tag del tipo
+    private static final LatencyHistogram moveLatency = new LatencyHistogram(); //Tempo di gestione di una mossa
+    private static final LatencyHistogram timeToMatch = new LatencyHistogram( //Attesa in coda fino alla partita (da 10 ms a 1 minuto)
+            10_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 30_000_000, 60_000_000);
+    private static final LongAdder videoFrames = new LongAdder(); //Frame video inoltrati (anche delle coppie chiuse)
+    private static final LongAdder videoBytes = new LongAdder(); //Byte video inoltrati
+    private static final LongAdder videoDropped = new LongAdder(); //Frame senza destinatario o scartati per un destinatario lento
+    private static final LongAdder videoFailed = new LongAdder(); //Frame il cui invio è fallito
+
+    private Metrics() {}
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    //Registrazione (percorso caldo)
+    static void messageIn(String type) { messagesIn[BinaryCodec.tagOf(type)].increment(); }
+
+    static void messageOut(String type) { messagesOut[BinaryCodec.tagOf(type)].increment(); }
+
+    static void moveHandled(long nanos) { moveLatency.record(nanos); }
+
+    static void matched(long waitNanos) { timeToMatch.record(waitNanos); }
+
+    static void videoRelayed(int bytes) {
+        videoFrames.increment();
+        videoBytes.add(bytes);
+    }
+
+    static void videoDropped() { videoDropped.increment(); }
+
+    static void videoFailed() { videoFailed.increment(); }
+
+    //Espone le metriche in JMX come TicTacToe:type=Metrics
+    static void registerJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("TicTacToe:type=Metrics"));
+        } catch (Exception e) {
+            System.err.println("Metriche JMX non disponibili: " + e.getMessage());
+        }
+    }
+
+    //Tutte le metriche nel formato testuale di Prometheus
+    static String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        gauge(out, "tictactoe_connected_players", "Giocatori connessi, bot compresi", TicTacToeServer.connectedClients.size());
+        gauge(out, "tictactoe_active_games", "Partite in corso", TicTacToeServer.activeGames.size());
+        gauge(out, "tictactoe_pending_challenges", "Sfide in attesa di risposta", ChallengeInbox.pending());
+
+        header(out, "tictactoe_messages_total", "Messaggi per direzione e tipo", "counter");
+        for (int tag = 0; tag < messagesIn.length; tag++) {
+            sample(out, "tictactoe_messages_total", "direction=\"in\",type=\"" + BinaryCodec.typeOf(tag) + "\"", messagesIn[tag].sum());
+            sample(out, "tictactoe_messages_total", "direction=\"out\",type=\"" + BinaryCodec.typeOf(tag) + "\"", messagesOut[tag].sum());
+        }
+
+        histogram(out, "tictactoe_move_latency_seconds", "Tempo di gestione di una mossa, attesa nella casella dello shard compresa", moveLatency);
+        header(out, "tictactoe_game_shard_backlog", "Eventi delle partite in attesa per shard", "gauge");
+        for (int shard = 0; shard < GameShards.count(); shard++)
+            sample(out, "tictactoe_game_shard_backlog", "shard=\"" + shard + "\"", GameShards.backlog(shard));
+        gauge(out, "tictactoe_matchmaking_waiting", "Giocatori in coda per una partita rapida", Matchmaking.waiting());
+        histogram(out, "tictactoe_matchmaking_wait_seconds", "Attesa in coda prima dell'abbinamento", timeToMatch);
+        gauge(out, "tictactoe_spectators", "Spettatori collegati alle partite in corso", Spectators.watching());
+
+        gauge(out, "tictactoe_outbound_queue_depth", "Messaggi in coda su tutte le connessioni", OutboundQueue.depth());
+        gauge(out, "tictactoe_outbound_queue_peak", "Profondità massima osservata su una coda", OutboundQueue.peakDepth());
+        counter(out, "tictactoe_outbound_dropped_total", "Messaggi non critici scartati", OutboundQueue.droppedCount());
+        counter(out, "tictactoe_outbound_overflows_total", "Disconnessioni per coda piena", OutboundQueue.overflowCount());
+        counter(out, "tictactoe_heartbeat_timeouts_total", "Connessioni chiuse per inattività", Heartbeat.timeouts());
+        header(out, "tictactoe_ratelimit_rejected_total", "Messaggi respinti dal limite di frequenza per classe", "counter");
+        for (int c = 0; c < RateLimiter.classCount(); c++)
+            sample(out, "tictactoe_ratelimit_rejected_total", "class=\"" + RateLimiter.className(c) + "\"", RateLimiter.rejected(c));
+        counter(out, "tictactoe_ratelimit_disconnects_total", "Connessioni chiuse per troppi messaggi respinti", RateLimiter.disconnects());
+
+        header(out, "tictactoe_video_pair_frames_total", "Frame video inoltrati per coppia attiva", "counter");
+        for (VideoConnection client : TicTacToeServer.videoClients.values())
+            sample(out, "tictactoe_video_pair_frames_total", pair(client), client.framesReceived());
+        header(out, "tictactoe_video_pair_bytes_total", "Byte video inoltrati per coppia attiva", "counter");
+        for (VideoConnection client : TicTacToeServer.videoClients.values())
+            sample(out, "tictactoe_video_pair_bytes_total", pair(client), client.bytesReceived());
+        counter(out, "tictactoe_video_frames_total", "Frame video inoltrati", videoFrames.sum());
+        counter(out, "tictactoe_video_bytes_total", "Byte video inoltrati", videoBytes.sum());
+        counter(out, "tictactoe_video_frames_dropped_total", "Frame video senza destinatario o con il destinatario troppo lento", videoDropped.sum());
+        counter(out, "tictactoe_video_buffers_allocated_total", "Buffer diretti creati dal relay video NIO (fermi a regime)", NioVideoServer.allocated());
+        counter(out, "tictactoe_video_frames_failed_total", "Frame video il cui invio è fallito", videoFailed.sum());
+        return out.toString();
+    }
+
+    private static String pair(VideoConnection client) {
+        return "from=\"" + escape(client.getOpponent()) + "\",to=\"" + escape(client.getNickname()) + "\"";
+    }
+
+    //Escape dei valori delle etichette (i nickname sono scelti dai client)
+    private static String escape(String value) {
+        if (value == null) return "";
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    //Istogramma con bucket cumulativi, somma e conteggio
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, help, "histogram");
+        long[] bounds = histogram.boundsMicros();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += histogram.bucket(i);
+            sample(out, name + "_bucket", "le=\"" + BigDecimal.valueOf(bounds[i], 6).stripTrailingZeros().toPlainString() + "\"", cumulative);
+        }
+        cumulative += histogram.bucket(bounds.length);
+        sample(out, name + "_bucket", "le=\"+Inf\"", cumulative);
+        out.append(name).append("_sum ").append(histogram.sumNanos() / 1e9).append('\n');
+        sample(out, name + "_count", null, cumulative);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        sample(out, name, null, value);
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        sample(out, name, null, value);
+    }
+
+    //Attributi JMX
+    @Override
+    public int getConnectedPlayers() { return TicTacToeServer.connectedClients.size(); }
+
+    @Override
+    public int getActiveGames() { return TicTacToeServer.activeGames.size(); }
+
+    @Override
+    public int getPendingChallenges() { return ChallengeInbox.pending(); }
+
+    @Override
+    public long getMessagesIn() { return total(messagesIn); }
+
+    @Override
+    public long getMessagesOut() { return total(messagesOut); }
+
+    private static long total(LongAdder[] adders) {
+        long total = 0;
+        for (LongAdder adder : adders)
+            total += adder.sum();
+        return total;
+    }
+
+    @Override
+    public long getMovesHandled() { return moveLatency.count(); }
+
+    @Override
+    public double getMoveLatencyMeanMicros() {
+        long count = moveLatency.count();
+        return count == 0 ? 0.0 : moveLatency.sumNanos() / 1e3 / count;
+    }
+
+    @Override
+    public long getMoveLatencyP99Micros() { return moveLatency.percentileMicros(0.99); }
+
+    @Override
+    public int getMatchmakingWaiting() { return Matchmaking.waiting(); }
+
+    @Override
+    public long getMatchmakingMedianWaitMillis() {
+        long micros = timeToMatch.percentileMicros(0.5);
+        return micros < 0 ? -1 : micros / 1_000;
+    }
+
+    @Override
+    public long getOutboundQueueDepth() { return OutboundQueue.depth(); }
+
+    @Override
+    public int getOutboundQueuePeak() { return OutboundQueue.peakDepth(); }
+
+    @Override
+    public long getHeartbeatTimeouts() { return Heartbeat.timeouts(); }
+
+    @Override
+    public long getRateLimitRejected() {
+        long total = 0;
+        for (int c = 0; c < RateLimiter.classCount(); c++)
+            total += RateLimiter.rejected(c);
+        return total;
+    }
+
+    @Override
+    public long getRateLimitDisconnects() { return RateLimiter.disconnects(); }
+
+    @Override
+    public long getVideoFramesRelayed() { return videoFrames.sum(); }
+
+    @Override
+    public long getVideoBytesRelayed() { return videoBytes.sum(); }
+
+    @Override
+    public long getVideoFramesDropped() { return videoDropped.sum(); }
+
+    @Override
+    public long getVideoFramesFailed() { return videoFailed.sum(); }
+
+    @Override
+    public long getVideoBuffersAllocated() { return NioVideoServer.allocated(); }
+}
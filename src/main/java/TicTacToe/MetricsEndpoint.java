@@ -0,0 +1,36 @@
+package TicTacToe;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+//Endpoint HTTP locale con le metriche in formato Prometheus: GET http://127.0.0.1:<porta>/metrics
+public final class MetricsEndpoint {
+    public static final int PORT = Integer.getInteger("tictactoe.metrics.port", 9404); //Porta dell'endpoint (0 = disattivato)
+
+    private MetricsEndpoint() {}
+
+    //Avvia l'endpoint in ascolto solo sull'interfaccia di loopback
+    static void start() {
+        if (PORT <= 0) return;
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = Metrics.prometheus().getBytes(StandardCharsets.UTF_8); //Metriche lette al momento della richiesta
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start(); //Un solo thread: le richieste di scrape sono rare
+            System.out.println("Metriche su http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + PORT + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Endpoint metriche non avviato: " + e.getMessage());
+        }
+    }
+}
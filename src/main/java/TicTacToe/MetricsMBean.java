@@ -0,0 +1,44 @@
+package TicTacToe;
+
+//Vista JMX delle metriche del server (TicTacToe:type=Metrics in JConsole/VisualVM)
+public interface MetricsMBean {
+    int getConnectedPlayers(); //Giocatori in lobby o in partita, bot compresi
+
+    int getActiveGames(); //Partite in corso
+
+    int getPendingChallenges(); //Sfide in attesa di risposta
+
+    long getMessagesIn(); //Messaggi ricevuti dai client
+
+    long getMessagesOut(); //Messaggi accodati verso i client
+
+    long getMovesHandled(); //Mosse elaborate (valide o no)
+
+    double getMoveLatencyMeanMicros(); //Latenza media di una mossa
+
+    long getMoveLatencyP99Micros(); //Limite del bucket del 99° percentile (-1 = oltre 1 s)
+
+    int getMatchmakingWaiting(); //Giocatori in coda per una partita rapida
+
+    long getMatchmakingMedianWaitMillis(); //Limite del bucket della mediana dell'attesa in coda (-1 = oltre 1 minuto)
+
+    long getOutboundQueueDepth(); //Messaggi in coda su tutte le connessioni
+
+    int getOutboundQueuePeak(); //Profondità massima osservata su una coda
+
+    long getHeartbeatTimeouts(); //Connessioni chiuse per inattività
+
+    long getRateLimitRejected(); //Messaggi respinti dal limite di frequenza
+
+    long getRateLimitDisconnects(); //Connessioni chiuse per troppi messaggi respinti
+
+    long getVideoFramesRelayed(); //Frame video inoltrati
+
+    long getVideoBytesRelayed(); //Byte video inoltrati
+
+    long getVideoFramesDropped(); //Frame senza destinatario o con il destinatario troppo lento
+
+    long getVideoFramesFailed(); //Frame il cui invio è fallito
+
+    long getVideoBuffersAllocated(); //Buffer diretti creati dal relay video NIO
+}
@@ -0,0 +1,329 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+//Journal delle partite in corso: ogni transizione (inizio, mossa, fine) diventa un piccolo record binario accodato senza lock;
+//un solo thread lo scrive su segmenti mappati in memoria e fa un force() per tutti i record della finestra (group commit).
+//All'avvio il server rilegge i segmenti e riprende le partite non finite quando entrambi i giocatori rientrano.
+//A ogni nuovo segmento le partite aperte vengono riscritte in testa e i segmenti precedenti cancellati (compattazione).
+//Attivo con -Dtictactoe.journal.dir=cartella
+public final class MoveJournal {
+    private static final String DIR = System.getProperty("tictactoe.journal.dir", ""); //Cartella dei segmenti, vuoto = disattivato
+    private static final int SEGMENT_SIZE = Integer.getInteger("tictactoe.journal.segmentSize", 4 << 20); //Byte per segmento
+    private static final int COMMIT_MS = Integer.getInteger("tictactoe.journal.commitMs", 5); //Finestra del group commit
+    private static final int RESUME_TTL = Integer.getInteger("tictactoe.journal.resumeTimeout", 120); //Secondi per rientrare in una partita ripresa
+
+    private static final byte START = 1, MOVE = 2, END = 3; //Tipi di record
+    private static final int HEADER = 8; //[lunghezza int][crc32 int] prima del corpo; lunghezza 0 = fine del segmento
+
+    private static final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>(); //Record in attesa del writer
+    private static final AtomicLong nextId = new AtomicLong(1); //Id delle partite nel journal (0 = partita non registrata)
+    private static final LongAdder written = new LongAdder(); //Record scritti
+    private static final LongAdder commits = new LongAdder(); //force() eseguiti
+    private static final Map<String, Resumable> resumable = new ConcurrentHashMap<>(); //Nickname -> partita recuperata in attesa
+    private static volatile boolean active; //Journal aperto e writer avviato
+
+    //Stato del writer: lo tocca solo il thread del journal (o l'avvio e l'hook di chiusura, sotto il lock della classe)
+    private static final Map<Long, List<byte[]>> open = new HashMap<>(); //Record delle partite non finite
+    private static final CRC32 crc = new CRC32();
+    private static Path dir; //Cartella dei segmenti
+    private static int segmentIndex; //Numero del segmento corrente
+    private static FileChannel channel; //File del segmento corrente
+    private static MappedByteBuffer segment; //Segmento mappato, posizione = prossimo record
+    private static volatile int openGames; //Partite aperte, per il report
+
+    private MoveJournal() {}
+
+    static boolean enabled() { return active; }
+
+    //Rilegge il journal, prepara le partite da riprendere e avvia il writer (chiamato dal main prima dei server)
+    static synchronized void start() {
+        if (DIR.isBlank()) return;
+        try {
+            dir = Files.createDirectories(Path.of(DIR));
+            TreeMap<Integer, Path> segments = segments();
+            for (Path path : segments.values())
+                replay(path);
+            segmentIndex = segments.isEmpty() ? 0 : segments.lastKey();
+            roll(); //Le partite aperte passano in un segmento nuovo, i vecchi vengono cancellati
+        } catch (IOException e) {
+            System.err.println("Journal delle partite non disponibile: " + e.getMessage());
+            return;
+        }
+        for (List<byte[]> game : open.values())
+            recover(game);
+        openGames = open.size();
+        active = true;
+        Thread writer = new Thread(MoveJournal::run, "MoveJournal");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(MoveJournal::commit, "MoveJournalFlush")); //Ultimi record a chiusura ordinata
+        System.out.println("Journal delle partite in " + dir.toAbsolutePath() + ": " + resumable.size() / 2 + " partite da riprendere");
+    }
+
+    //Inizio di una partita tra due client: restituisce l'id nel journal, 0 se la partita non viene registrata
+    static long started(Player x, Player o, GameRules rules) {
+        if (!active || x.isBot() || o.isBot() || x.transport() instanceof Cluster.RemoteTransport
+                || o.transport() instanceof Cluster.RemoteTransport) return 0; //Bot e proxy non possono rientrare
+        long id = nextId.getAndIncrement();
+        byte[] xName = x.getNickname().getBytes(StandardCharsets.UTF_8), oName = o.getNickname().getBytes(StandardCharsets.UTF_8);
+        pending.offer(ByteBuffer.allocate(16 + xName.length + oName.length).put(START).putLong(id)
+                .put((byte) rules.width).put((byte) rules.height).put((byte) rules.winLength)
+                .putShort((short) xName.length).put(xName).putShort((short) oName.length).put(oName).array());
+        return id;
+    }
+
+    //Mossa applicata: solo un accodamento, la scrittura avviene fuori dallo shard della partita
+    static void moved(long id, int pos) {
+        if (id != 0) pending.offer(ByteBuffer.allocate(11).put(MOVE).putLong(id).putShort((short) pos).array());
+    }
+
+    //Partita finita (esito o disconnessione): non verrà ripresa
+    static void ended(long id) {
+        if (id != 0) pending.offer(ByteBuffer.allocate(9).put(END).putLong(id).array());
+    }
+
+    //Giocatore appena entrato in lobby: se aveva una partita interrotta, la riprende quando c'è anche l'avversario
+    static void playerJoined(Player player) {
+        Resumable game = resumable.get(player.getNickname());
+        if (game != null) game.tryResume();
+    }
+
+    //Thread del journal: un commit per finestra, solo se ci sono record
+    private static void run() {
+        long window = TimeUnit.MILLISECONDS.toNanos(COMMIT_MS);
+        while (true) {
+            LockSupport.parkNanos(window);
+            if (!pending.isEmpty()) commit();
+        }
+    }
+
+    //Scrive i record accodati e li rende persistenti con un solo force()
+    private static synchronized void commit() {
+        if (!active) return;
+        try {
+            byte[] body;
+            int count = 0;
+            while ((body = pending.poll()) != null) {
+                append(body);
+                track(body);
+                count++;
+            }
+            if (count == 0) return;
+            segment.force();
+            written.add(count);
+            commits.increment();
+            openGames = open.size();
+        } catch (IOException e) {
+            System.err.println("Errore nel journal delle partite: " + e.getMessage());
+        }
+    }
+
+    private static void append(byte[] body) throws IOException {
+        if (segment.remaining() < HEADER + body.length) roll(); //Segmento pieno: ne apre uno nuovo
+        put(body);
+    }
+
+    private static void put(byte[] body) {
+        crc.reset();
+        crc.update(body);
+        segment.putInt(body.length).putInt((int) crc.getValue()).put(body);
+    }
+
+    //Aggiorna i record delle partite aperte: sono quelli da riscrivere nel segmento successivo
+    private static void track(byte[] body) {
+        ByteBuffer record = ByteBuffer.wrap(body);
+        byte type = record.get();
+        long id = record.getLong();
+        nextId.accumulateAndGet(id + 1, Math::max); //Dopo un riavvio gli id ripartono oltre quelli già usati
+        if (type == START) {
+            List<byte[]> game = new ArrayList<>();
+            game.add(body);
+            open.put(id, game); //Un START ripetuto (compattazione interrotta) riparte da capo
+        } else if (type == MOVE) {
+            List<byte[]> game = open.get(id);
+            if (game != null) game.add(body);
+        } else if (type == END) {
+            open.remove(id);
+        }
+    }
+
+    //Nuovo segmento che inizia con i record delle partite aperte; i segmenti precedenti non servono più
+    private static void roll() throws IOException {
+        int live = 0;
+        for (List<byte[]> game : open.values())
+            for (byte[] body : game)
+                live += HEADER + body.length;
+        if (segment != null) segment.force();
+        if (channel != null) channel.close();
+        segmentIndex++;
+        channel = FileChannel.open(dir.resolve(String.format("segment-%08d.log", segmentIndex)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(SEGMENT_SIZE, 2L * live)); //Spazio anche per le nuove mosse
+        for (List<byte[]> game : open.values())
+            for (byte[] body : game)
+                put(body);
+        segment.force(); //Le partite aperte sono al sicuro prima di cancellare i vecchi segmenti
+        for (Map.Entry<Integer, Path> old : segments().entrySet()) {
+            if (old.getKey() >= segmentIndex) continue;
+            try {
+                Files.delete(old.getValue());
+            } catch (IOException e) {
+                //Ancora mappato (Windows): verrà cancellato al prossimo segmento
+            }
+        }
+    }
+
+    //Segmenti presenti nella cartella, in ordine di numero
+    private static TreeMap<Integer, Path> segments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.log")) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(name.substring(8, name.length() - 4)), path);
+                } catch (NumberFormatException e) {
+                    //Non è un segmento del journal
+                }
+            }
+        }
+        return segments;
+    }
+
+    //Rilegge un segmento fino al primo record vuoto, troncato o con crc errato (scrittura interrotta dal crash)
+    private static void replay(Path path) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (data.remaining() >= HEADER) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) break;
+            byte[] body = new byte[length];
+            data.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) break;
+            track(body);
+        }
+    }
+
+    //Prepara la ripresa di una partita aperta: [START, MOVE...]
+    private static void recover(List<byte[]> records) {
+        ByteBuffer start = ByteBuffer.wrap(records.get(0));
+        start.get();
+        long id = start.getLong();
+        GameRules rules = new GameRules(start.get(), start.get(), start.get());
+        String x = readName(start), o = readName(start);
+        int[] moves = new int[records.size() - 1];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = ByteBuffer.wrap(records.get(i + 1)).getShort(9);
+
+        if (!rules.isValid() || !playable(rules, moves)) { //Mossa vincente registrata senza la fine: niente da riprendere
+            ended(id);
+            return;
+        }
+        Resumable game = new Resumable(id, x, o, rules, moves);
+        resumable.put(x, game);
+        resumable.put(o, game);
+        game.expiry = TicTacToeServer.timers.schedule(game::expire, RESUME_TTL, TimeUnit.SECONDS);
+    }
+
+    private static String readName(ByteBuffer record) {
+        byte[] name = new byte[record.getShort()];
+        record.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    //True se le mosse sono valide e la partita non è già conclusa
+    private static boolean playable(GameRules rules, int[] moves) {
+        Board board = new Board(rules);
+        for (int i = 0; i < moves.length; i++) {
+            if (!board.isFree(moves[i]) || board.play(moves[i], i % 2 == 0)) return false;
+        }
+        return !board.isFull();
+    }
+
+    //Riepilogo per il report periodico
+    public static String report() {
+        long records = written.sum(), groups = commits.sum();
+        return String.format("Journal: %d record in %d commit (%.1f per commit), segmento %d, %d partite aperte, %d da riprendere",
+                records, groups, groups == 0 ? 0.0 : (double) records / groups, segmentIndex, openGames, resumable.size() / 2);
+    }
+
+    //Partita recuperata dal journal in attesa che entrambi i giocatori rientrino
+    private static final class Resumable {
+        private final long id; //Id nel journal, riusato dalla partita ripresa
+        private final String x, o; //Nickname di X (player1) e O (player2)
+        private final GameRules rules;
+        private final int[] moves; //Mosse già giocate, alternate a partire da X
+        private volatile TimerWheel.Timeout expiry; //Rinuncia se i giocatori non rientrano in tempo
+        private boolean done; //Ripresa o scaduta
+
+        Resumable(long id, String x, String o, GameRules rules, int[] moves) {
+            this.id = id;
+            this.x = x;
+            this.o = o;
+            this.rules = rules;
+            this.moves = moves;
+        }
+
+        //Riprende la partita se entrambi i giocatori sono in lobby
+        synchronized void tryResume() {
+            if (done) return;
+            Player playerX = TicTacToeServer.connectedClients.get(x), playerO = TicTacToeServer.connectedClients.get(o);
+            if (playerX == null || playerO == null) return; //Si aspetta l'avversario
+            close();
+
+            String gameId = Game.idFor(x, o);
+            Game game = new Game(playerX, playerO, gameId, rules);
+            game.resume(id, moves);
+            if (!playerX.joinGame(game) || !playerO.joinGame(game) || !game.register()) { //Uno dei due è già entrato in un'altra partita
+                playerX.leaveGame(game);
+                playerO.leaveGame(game);
+                ended(id);
+                System.out.println("Partita interrotta non ripresa: " + gameId);
+                return;
+            }
+            Presence.setBusy(x, true);
+            Presence.setBusy(o, true);
+            playerX.sendMessage(GameMessage.challengeAccepted(o));
+            playerO.sendMessage(GameMessage.challengeAccepted(x));
+            game.start(); //Invia tabellone e turno a entrambi
+            System.out.println("Partita ripresa dal journal: " + gameId + " dopo " + moves.length + " mosse");
+        }
+
+        synchronized void expire() {
+            if (done) return;
+            close();
+            ended(id);
+            System.out.println("Partita interrotta scaduta: " + Game.idFor(x, o));
+        }
+
+        private void close() {
+            done = true;
+            resumable.remove(x, this);
+            resumable.remove(o, this);
+            TimerWheel.Timeout timeout = expiry;
+            if (timeout != null) timeout.cancel();
+        }
+    }
+}
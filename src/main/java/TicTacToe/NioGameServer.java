@@ -0,0 +1,151 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Server di gioco non bloccante: un thread accetta le connessioni e un piccolo pool di event loop le gestisce
+public class NioGameServer {
+    private final int port; //Porta di ascolto
+    private final EventLoop[] loops; //Event loop, uno per thread
+    private int nextLoop = 0; //Indice round-robin per assegnare le nuove connessioni
+
+    public NioGameServer(int port, int loopCount) {
+        this.port = port;
+        this.loops = new EventLoop[loopCount];
+    }
+
+    //Avvia gli event loop e accetta connessioni nel thread chiamante
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) { //Crea e avvia ogni event loop
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "GameEventLoop-" + i); //Thread dedicato al loop
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) { //Canale di ascolto
+            server.bind(new InetSocketAddress(port)); //Apre la porta di gioco
+            System.out.println("Game Server NIO in ascolto sulla porta " + port + " con " + loops.length + " event loop");
+            while (true) { //Loop infinito
+                SocketChannel channel = server.accept(); //Accetta connessione (bloccante, solo in questo thread)
+                System.out.println("Nuova connessione GAME da: " + channel.socket().getInetAddress());
+                channel.configureBlocking(false); //Da qui in poi il canale è gestito dal selector
+                channel.socket().setTcpNoDelay(true); //Messaggi piccoli: niente Nagle
+                EventLoop loop = loops[nextLoop++ % loops.length]; //Sceglie il loop in round-robin
+                loop.register(new NioSession(channel, loop)); //Affida la sessione al loop
+            }
+        }
+    }
+
+    //Event loop: un selector e un thread che legge, decodifica e scrive i frame delle proprie sessioni
+    static class EventLoop implements Runnable {
+        private final Selector selector; //Selector del loop
+        private final Queue<NioSession> pendingRegistrations = new ConcurrentLinkedQueue<>(); //Sessioni da registrare
+        private final Queue<NioSession> pendingFlushes = new ConcurrentLinkedQueue<>(); //Sessioni con dati da scrivere
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); //Operazioni da eseguire nel thread del loop
+        private volatile Thread thread; //Thread del loop
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open(); //Apre il selector
+        }
+
+        //Accoda una nuova sessione: la registrazione avviene nel thread del loop
+        void register(NioSession session) {
+            pendingRegistrations.add(session);
+            selector.wakeup(); //Sveglia il loop bloccato nella select
+        }
+
+        //Richiede la scrittura dei frame in coda di una sessione
+        void scheduleFlush(NioSession session) {
+            pendingFlushes.add(session);
+            if (Thread.currentThread() != thread) //Nel thread del loop la coda viene svuotata alla prossima iterazione
+                selector.wakeup();
+        }
+
+        //Esegue un'operazione nel thread del loop
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread)
+                selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (true) { //Loop infinito
+                try {
+                    processRegistrations(); //Registra le nuove sessioni
+                    runTasks(); //Esegue le operazioni richieste da altri thread
+                    processFlushes(); //Scrive i frame accodati
+                    if (tasks.isEmpty() && pendingFlushes.isEmpty())
+                        selector.select(); //Attende eventi di I/O o un wakeup
+                    else
+                        selector.selectNow(); //Altro lavoro in coda: non si blocca
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) { //Per ogni canale pronto
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioSession session = (NioSession) key.attachment(); //Sessione associata
+                        if (!key.isValid()) continue; //Canale già chiuso
+                        try {
+                            if (key.isReadable()) session.onReadable(); //Dati in arrivo
+                            if (key.isValid() && key.isWritable()) session.flush(); //Socket di nuovo scrivibile
+                        } catch (RuntimeException e) {
+                            fail(session, e); //Un frame che fa fallire il gestore chiude solo la sua sessione
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Errore event loop: " + e.getMessage());
+                }
+            }
+        }
+
+        private void processRegistrations() {
+            NioSession session;
+            while ((session = pendingRegistrations.poll()) != null) { //Per ogni sessione in attesa
+                try {
+                    session.attach(session.channel().register(selector, SelectionKey.OP_READ, session)); //Ascolta le letture
+                } catch (ClosedChannelException e) {
+                    session.terminate(); //Il client ha già chiuso
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); //Il loop continua a servire le altre sessioni
+                }
+            }
+        }
+
+        private void processFlushes() {
+            NioSession session;
+            while ((session = pendingFlushes.poll()) != null) { //Per ogni sessione con frame in coda
+                try {
+                    session.flush();
+                } catch (RuntimeException e) {
+                    fail(session, e);
+                }
+            }
+        }
+
+        //Errore inatteso nella gestione di una sessione: la chiude senza fermare il loop
+        private void fail(NioSession session, RuntimeException e) {
+            System.err.println("Errore imprevisto, chiusura della sessione: " + e);
+            e.printStackTrace();
+            try {
+                session.terminate();
+            } catch (RuntimeException cleanup) {
+                cleanup.printStackTrace(); //Anche la pulizia è fallita: il canale è comunque chiuso
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Sessione NIO di un client: decodifica i frame in ingresso e scrive, nell'event loop, la coda di uscita del giocatore
+public class NioSession implements Transport {
+    private static final int INITIAL_BUFFER = 4096; //Capacità iniziale del buffer di lettura
+
+    private final SocketChannel channel; //Canale del client
+    private final NioGameServer.EventLoop loop; //Event loop proprietario
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(); //Evita di accodare più volte la stessa sessione
+    private final AtomicBoolean closed = new AtomicBoolean(); //Flag di chiusura
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER); //Byte letti non ancora decodificati
+    private ByteBuffer pending; //Frame scritto solo in parte (socket pieno)
+    private SelectionKey key; //Chiave di registrazione nel selector
+    private MessageCodec codec; //Codec negoziato, null finché l'handshake non è completo
+    private Player player; //Giocatore associato, creato a handshake completato
+
+    NioSession(SocketChannel channel, NioGameServer.EventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+        Heartbeat.loginDeadline(() -> loop.execute(this::loginExpired)); //Controllo nel thread del loop, che scrive player e nickname
+    }
+
+    //Handshake o nickname mai arrivati entro la scadenza: nessun PING prima del login, la sessione viene chiusa
+    private void loginExpired() {
+        if (closed.get() || (player != null && player.getNickname() != null)) return;
+        Heartbeat.loginExpired(channel.socket().getRemoteSocketAddress());
+        terminate();
+    }
+
+    SocketChannel channel() { return channel; }
+
+    void attach(SelectionKey key) { this.key = key; }
+
+    //Chiamato dall'event loop quando il canale ha dati da leggere
+    void onReadable() {
+        try {
+            if (channel.read(readBuffer) < 0) { //Il client ha chiuso la connessione
+                terminate();
+                return;
+            }
+            readBuffer.flip(); //Passa in lettura
+            while (!closed.get() && decodeNext()) {} //Decodifica tutti i frame completi
+            readBuffer.compact(); //Conserva i byte di un frame parziale
+            if (readBuffer.capacity() > INITIAL_BUFFER && readBuffer.position() <= INITIAL_BUFFER) //Il frame grande è stato consumato
+                shrinkReadBuffer();
+        } catch (IOException e) {
+            System.err.println("Errore con client " + (player != null ? player.getNickname() : null) + ": " + e.getMessage());
+            terminate();
+        }
+    }
+
+    //Decodifica handshake o un frame; restituisce false se i dati non bastano
+    private boolean decodeNext() throws IOException {
+        if (codec == null) { //Handshake: [magic int][codec byte]
+            if (readBuffer.remaining() < 4) return false;
+            int magic = readBuffer.getInt(readBuffer.position()); //Legge il magic senza consumarlo
+            if (magic != Protocol.MAGIC) //Client legacy o protocollo sconosciuto
+                throw new IOException(magic == Protocol.STREAM_MAGIC ? "client legacy non supportato in modalità NIO" : "handshake non valido");
+            if (readBuffer.remaining() < 5) return false; //Manca il byte del codec
+            readBuffer.getInt(); //Consuma il magic
+            codec = Protocol.negotiate(readBuffer.get()); //Sceglie il codec
+            pending = ByteBuffer.allocate(5).putInt(Protocol.MAGIC).put(codec.id()).flip(); //Risposta all'handshake, prima di ogni frame
+            player = new Player(this); //Crea il giocatore associato alla sessione
+            player.start(); //Richiede il nickname
+            return true;
+        }
+
+        if (readBuffer.remaining() < 4) return false; //Header del frame incompleto
+        int length = readBuffer.getInt(readBuffer.position()); //Legge la lunghezza senza consumarla
+        if (length <= 0 || length > Protocol.MAX_FRAME_SIZE) //Se la dimensione non è valida
+            throw new IOException("Dimensione frame non valida: " + length);
+        if (readBuffer.remaining() < 4 + length) { //Corpo incompleto
+            if (readBuffer.capacity() < 4 + length) //Il frame non entrerebbe nel buffer
+                growReadBuffer(4 + length);
+            return false;
+        }
+
+        readBuffer.getInt(); //Consuma l'header
+        byte[] body = new byte[length]; //Corpo del frame
+        readBuffer.get(body);
+        ProtocolStats.received(codec.id(), 4 + length); //Byte sul filo: header + corpo
+        if (!player.onMessage(codec.decode(body, 0, length))) //Il giocatore rifiuta la sessione (es. nickname non valido)
+            player.disconnected(); //La cleanup chiude la coda: l'ultimo messaggio viene scritto prima della chiusura
+        return true;
+    }
+
+    //Sostituisce il buffer di lettura con uno abbastanza grande da contenere il frame
+    private void growReadBuffer(int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity); //Nuovo buffer
+        bigger.put(readBuffer); //Copia i byte non ancora consumati
+        bigger.flip();
+        readBuffer = bigger;
+    }
+
+    //Torna alla capacità iniziale: un solo frame grande non resta in memoria per tutta la sessione
+    private void shrinkReadBuffer() {
+        readBuffer.flip(); //Byte non ancora consumati
+        readBuffer = ByteBuffer.allocate(INITIAL_BUFFER).put(readBuffer);
+    }
+
+    //Buffer della sessione oltre quello di lettura iniziale: frame grandi in arrivo e frame in uscita interrotti
+    @Override
+    public long retainedBytes() {
+        ByteBuffer unfinished = pending;
+        return readBuffer.capacity() - INITIAL_BUFFER + (unfinished != null ? unfinished.capacity() : 0);
+    }
+
+    @Override
+    public void onQueued() {
+        if (flushScheduled.compareAndSet(false, true)) //Solo la prima richiesta sveglia il loop
+            loop.scheduleFlush(this);
+    }
+
+    //Scrive la coda di uscita del giocatore finché il socket la accetta (solo nel thread dell'event loop)
+    void flush() {
+        flushScheduled.set(false); //I messaggi accodati da qui in poi richiederanno un nuovo flush
+        if (closed.get() || key == null) return;
+        try {
+            if (pending != null && !write(pending)) return; //Completa prima il frame interrotto
+            pending = null;
+            OutboundQueue outbound = player.outbound();
+            GameMessage<?> message;
+            while ((message = outbound.poll()) != null) { //Per ogni messaggio in coda
+                byte[] body = message.encode(codec); //Codifica nel thread del loop (o riusa il corpo condiviso)
+                ByteBuffer frame = ByteBuffer.allocate(4 + body.length).putInt(body.length).put(body); //Header + corpo
+                ProtocolStats.sent(codec.id(), frame.position());
+                if (!write(frame.flip())) { //Socket pieno
+                    pending = frame;
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ); //Nulla da scrivere
+            if (outbound.isDrained()) //Chiusura ordinata: tutto inviato
+                closeChannel();
+        } catch (IOException e) {
+            System.err.println("Errore nell'invio del messaggio: " + e.getMessage());
+            terminate();
+        }
+    }
+
+    //Scrive un buffer; se il socket non lo accetta tutto chiede di essere richiamato quando torna scrivibile
+    private boolean write(ByteBuffer buffer) throws IOException {
+        channel.write(buffer);
+        ProtocolStats.flushed();
+        if (!buffer.hasRemaining()) return true;
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE); //Riprova quando il socket torna scrivibile
+        return false;
+    }
+
+    //Chiude il canale e notifica la disconnessione al giocatore
+    void terminate() {
+        if (closeChannel() && player != null)
+            player.disconnected(); //Pulizia lato server
+    }
+
+    //Chiusura richiesta da un altro thread (es. coda piena): la pulizia avviene nell'event loop
+    @Override
+    public void close() {
+        if (closeChannel() && player != null)
+            loop.execute(player::disconnected);
+    }
+
+    private boolean closeChannel() {
+        if (!closed.compareAndSet(false, true)) return false; //Già chiuso
+        if (player != null) player.outbound().discard(); //I messaggi non ancora scritti non arriveranno più
+        if (key != null) key.cancel(); //Rimuove il canale dal selector
+        try {
+            channel.close(); //Chiude il canale
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+}
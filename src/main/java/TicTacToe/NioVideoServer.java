@@ -0,0 +1,425 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//Relay video non bloccante: un thread con un selector accetta le connessioni video, legge ogni frame una sola volta in
+//un ByteBuffer diretto preso da un pool e scrive lo stesso buffer al destinatario con una scrittura gathering
+//[lunghezza, JPEG]. Il frame non passa dallo heap Java: nessun byte[] per frame, nessuna copia in uno stream bufferizzato
+//Protocollo verso i client uguale a VideoClient; attivo con -Dtictactoe.video.mode=nio
+final class NioVideoServer implements Runnable {
+    private static final int MAX_FRAME = 5_000_000; //Dimensione massima di un frame, come VideoClient
+    private static final int MAX_NAME = 256; //Byte massimi di un nickname nella registrazione
+    private static final int MAX_PENDING = Integer.getInteger("tictactoe.video.maxPending", 8); //Frame in attesa per destinatario
+    private static final LongAdder allocated = new LongAdder(); //Buffer diretti creati perché il pool era vuoto
+
+    private final int port; //Porta di ascolto
+    private final Selector selector; //Selector di tutte le connessioni video
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); //Operazioni chieste da altri thread (heartbeat)
+    private final FramePool pool = new FramePool(); //Usato solo dal thread del relay: nessuna sincronizzazione
+    private final Consumer<SelectionKey> handler = this::handle; //Creato una volta: la select non alloca
+    private ServerSocketChannel server; //Canale di ascolto
+    private volatile Thread thread; //Thread del relay
+
+    NioVideoServer(int port) throws IOException {
+        this.port = port;
+        this.selector = Selector.open();
+    }
+
+    static long allocated() { return allocated.sum(); }
+
+    //Esegue il relay nel thread chiamante
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            server = channel;
+            channel.bind(new InetSocketAddress(port)); //Apre la porta video
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Video Server NIO in ascolto sulla porta " + port);
+            while (true) { //Loop infinito
+                selector.select(handler); //Gestisce le chiavi pronte senza creare iteratori
+                runTasks();
+            }
+        } catch (IOException e) {
+            System.err.println("Errore Video Server NIO: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    //Esegue un'operazione nel thread del relay
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) selector.wakeup();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); //Il relay continua a servire le altre connessioni
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) session.onReadable();
+            if (key.isValid() && key.isWritable()) session.flush();
+        } catch (RuntimeException e) {
+            fail(session, e); //Un errore nella gestione di un frame chiude solo la sua connessione
+        }
+    }
+
+    //Errore inatteso nella gestione di una connessione: la chiude senza fermare il relay
+    private static void fail(Session session, RuntimeException e) {
+        System.err.println("Errore imprevisto, chiusura della connessione video: " + e);
+        e.printStackTrace();
+        try {
+            session.terminate();
+        } catch (RuntimeException cleanup) {
+            cleanup.printStackTrace(); //Anche la pulizia è fallita: il canale è comunque chiuso
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                System.out.println("Nuova connessione VIDEO da: " + channel.socket().getInetAddress());
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true); //Ogni frame parte subito
+                Session session = new Session(this, channel);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Errore accettazione video: " + e.getMessage());
+        }
+    }
+
+    //Inoltra un frame completo all'avversario del mittente: il buffer passa alla coda del destinatario senza copie
+    private void forward(Session sender, Frame frame) {
+        String recipient = TicTacToeServer.activePairs.get(sender.nickname); //Ottiene destinatario
+        VideoConnection client = recipient != null ? TicTacToeServer.videoClients.get(recipient) : null;
+        if (client instanceof Session target && target.relay == this) {
+            target.send(frame);
+        } else { //Avversario non ancora collegato o già uscito
+            pool.release(frame);
+            Metrics.videoDropped();
+        }
+    }
+
+    //Frame in transito: intestazione e corpo in due buffer diretti, scritti insieme con una scrittura gathering
+    static final class Frame {
+        final int sizeClass; //Classe di dimensione nel pool
+        final ByteBuffer header = ByteBuffer.allocateDirect(4); //Lunghezza del frame
+        final ByteBuffer body; //JPEG, letto direttamente dal socket del mittente
+        final ByteBuffer[] buffers; //[header, body] per la scrittura gathering
+        int size; //Byte del corpo (0 per PING e conferma di registrazione)
+        Frame next; //Lista dei frame liberi nel pool
+
+        Frame(int sizeClass, int capacity) {
+            this.sizeClass = sizeClass;
+            this.body = ByteBuffer.allocateDirect(capacity);
+            this.buffers = new ByteBuffer[]{header, body};
+        }
+
+        //Corpo letto: l'intestazione riporta la sua lunghezza
+        void ready() {
+            header.clear();
+            header.putInt(size).flip();
+            body.flip();
+        }
+
+        //Solo intestazione: PING (0) o conferma di registrazione (1)
+        void control(int value) {
+            size = 0;
+            header.clear();
+            header.putInt(value).flip();
+            body.clear().limit(0);
+        }
+
+        boolean written() { return !header.hasRemaining() && !body.hasRemaining(); }
+    }
+
+    //Pool di frame per classi di dimensione potenze di due da 16 KB a 8 MB, con liste libere intrusive: dopo il
+    //riscaldamento un frame non crea oggetti né memoria diretta
+    static final class FramePool {
+        private static final int MIN_SHIFT = 14; //Classe più piccola: 16 KB
+        private static final int CLASSES = 10; //Fino a 8 MB, oltre MAX_FRAME
+        private static final int MAX_POOLED = Integer.getInteger("tictactoe.video.pooled", 32); //Frame liberi per classe
+
+        private final Frame[] free = new Frame[CLASSES]; //Testa della lista libera per classe
+        private final int[] count = new int[CLASSES]; //Frame liberi per classe
+
+        //Frame con un corpo da size byte
+        Frame acquire(int size) {
+            int sizeClass = size <= 1 << MIN_SHIFT ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+            Frame frame = free[sizeClass];
+            if (frame != null) {
+                free[sizeClass] = frame.next;
+                frame.next = null;
+                count[sizeClass]--;
+            } else {
+                allocated.increment();
+                frame = new Frame(sizeClass, 1 << (MIN_SHIFT + sizeClass));
+            }
+            frame.size = size;
+            frame.header.clear();
+            frame.body.clear().limit(size);
+            return frame;
+        }
+
+        //Restituisce il frame; quelli in eccesso vengono lasciati al GC, che libera anche la memoria diretta
+        void release(Frame frame) {
+            if (count[frame.sizeClass] >= MAX_POOLED) return;
+            frame.next = free[frame.sizeClass];
+            free[frame.sizeClass] = frame;
+            count[frame.sizeClass]++;
+        }
+    }
+
+    //Connessione video gestita dal selector: stesse informazioni di VideoClient per heartbeat e metriche
+    static final class Session implements VideoConnection {
+        private final NioVideoServer relay; //Relay che possiede la connessione
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private String nickname; //Nickname client, null fino alla registrazione
+        private String opponent; //Nickname avversario
+        private final LongAdder framesReceived = new LongAdder(); //Frame inoltrati a questo client dall'avversario
+        private final LongAdder bytesReceived = new LongAdder(); //Byte inoltrati a questo client dall'avversario
+        private volatile long lastSeen = System.nanoTime(); //Ultimo frame o PONG ricevuto (per il heartbeat)
+        private final TimerWheel.Timeout registration; //Chiusura se la registrazione non arriva in tempo
+        private ByteBuffer handshake = ByteBuffer.allocate(8 + 2 * MAX_NAME); //Registrazione, letta byte per byte esatti
+        private final ByteBuffer header = ByteBuffer.allocateDirect(4); //Lunghezza del frame in arrivo
+        private Frame incoming; //Frame in lettura, null tra due frame
+        private final ArrayDeque<Frame> outgoing = new ArrayDeque<>(MAX_PENDING + 2); //Frame da scrivere al client
+        private boolean writing; //OP_WRITE registrato: il socket non ha accettato tutto
+        private boolean closed;
+
+        Session(NioVideoServer relay, SocketChannel channel) {
+            this.relay = relay;
+            this.channel = channel;
+            handshake.limit(4); //Lunghezza del nickname
+            registration = Heartbeat.loginDeadline(() -> relay.execute(this::registrationExpired)); //Controllo nel thread del relay
+        }
+
+        @Override
+        public String getNickname() { return nickname; }
+
+        @Override
+        public String getOpponent() { return opponent; }
+
+        @Override
+        public long framesReceived() { return framesReceived.sum(); }
+
+        @Override
+        public long bytesReceived() { return bytesReceived.sum(); }
+
+        @Override
+        public long lastSeen() { return lastSeen; }
+
+        //Registrazione mai completata entro la scadenza: il heartbeat non vede la connessione, che viene chiusa
+        private void registrationExpired() {
+            if (closed || handshake == null) return;
+            Heartbeat.loginExpired(channel.socket().getRemoteSocketAddress());
+            terminate();
+        }
+
+        //Legge tutto ciò che il socket ha pronto: registrazione, poi intestazione e corpo di ogni frame
+        void onReadable() {
+            try {
+                while (!closed) {
+                    if (handshake != null) {
+                        if (!readHandshake()) return;
+                        continue;
+                    }
+                    if (incoming == null) {
+                        if (channel.read(header) < 0) {
+                            terminate();
+                            return;
+                        }
+                        if (header.hasRemaining()) return; //Intestazione incompleta
+                        header.flip();
+                        int frameSize = header.getInt();
+                        header.clear();
+                        lastSeen = System.nanoTime(); //Il client è vivo
+                        if (frameSize == 0) continue; //PONG
+                        if (frameSize < 0 || frameSize > MAX_FRAME) {
+                            System.err.println("Dimensione frame non valida: " + frameSize);
+                            terminate();
+                            return;
+                        }
+                        incoming = relay.pool.acquire(frameSize);
+                    }
+                    if (channel.read(incoming.body) < 0) {
+                        terminate();
+                        return;
+                    }
+                    if (incoming.body.hasRemaining()) return; //Corpo incompleto
+                    Frame frame = incoming;
+                    incoming = null;
+                    frame.ready();
+                    relay.forward(this, frame);
+                }
+            } catch (IOException e) {
+                System.out.println("Socket video chiuso: " + nickname);
+                terminate();
+            }
+        }
+
+        //Registrazione [lunghezza][nickname][lunghezza][avversario]: il limite del buffer segue il campo atteso, così
+        //nessun byte del primo frame finisce nel buffer; true quando la registrazione è completa
+        private boolean readHandshake() throws IOException {
+            if (channel.read(handshake) < 0) {
+                terminate();
+                return false;
+            }
+            if (handshake.hasRemaining()) return false;
+            int position = handshake.position();
+            int first = handshake.getInt(0);
+            if (first < 0 || first > MAX_NAME) {
+                terminate();
+                return false;
+            }
+            if (position == 4) { //Nickname e lunghezza dell'avversario
+                handshake.limit(4 + first + 4);
+                return true;
+            }
+            int second = handshake.getInt(4 + first);
+            if (second < 0 || second > MAX_NAME) {
+                terminate();
+                return false;
+            }
+            if (position == 8 + first && second > 0) { //Nickname dell'avversario
+                handshake.limit(8 + first + second);
+                return true;
+            }
+            byte[] bytes = handshake.array();
+            nickname = new String(bytes, 4, first, StandardCharsets.UTF_8);
+            opponent = new String(bytes, 8 + first, second, StandardCharsets.UTF_8);
+            handshake = null;
+
+            if (registration != null) registration.cancel(); //Da qui il heartbeat controlla la connessione
+            TicTacToeServer.videoClients.put(nickname, this); //Registra client nella mappa
+            System.out.println("Client video registrato: " + nickname + " (avversario: " + opponent + ")");
+            TicTacToeServer.registerPair(nickname, opponent); //Associa i due giocatori
+            Frame ok = relay.pool.acquire(0);
+            ok.control(1); //Conferma di registrazione
+            enqueue(ok);
+            return true;
+        }
+
+        //Frame dell'avversario: scartato se il client ne ha già troppi in attesa (il video resta in tempo reale)
+        void send(Frame frame) {
+            if (closed || outgoing.size() >= MAX_PENDING) {
+                relay.pool.release(frame);
+                Metrics.videoDropped();
+                return;
+            }
+            enqueue(frame);
+        }
+
+        private void enqueue(Frame frame) {
+            outgoing.add(frame);
+            if (!writing) flush(); //Scrive subito; se il socket è pieno il resto parte con OP_WRITE
+        }
+
+        //Scrive i frame in coda; ogni frame è una scrittura gathering di intestazione e corpo
+        void flush() {
+            try {
+                Frame frame;
+                while ((frame = outgoing.peek()) != null) {
+                    channel.write(frame.buffers);
+                    if (!frame.written()) { //Socket pieno: si riprende quando torna scrivibile
+                        if (!writing) {
+                            writing = true;
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                        return;
+                    }
+                    outgoing.poll();
+                    if (frame.size > 0) {
+                        framesReceived.increment();
+                        bytesReceived.add(frame.size);
+                        Metrics.videoRelayed(frame.size);
+                    }
+                    relay.pool.release(frame);
+                }
+                if (writing) {
+                    writing = false;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                Metrics.videoFailed();
+                System.err.println("Errore invio frame a " + nickname + ": " + e.getMessage());
+                terminate();
+            }
+        }
+
+        //Inoltro da un VideoClient bloccante o da un benchmark: copia nel pool dal thread del relay
+        @Override
+        public void sendFrame(byte[] frameData) {
+            relay.execute(() -> {
+                Frame frame = relay.pool.acquire(frameData.length);
+                frame.body.put(frameData);
+                frame.ready();
+                send(frame);
+            });
+        }
+
+        //PING dal thread del heartbeat: un frame vuoto accodato dal thread del relay
+        @Override
+        public void ping() {
+            relay.execute(() -> {
+                if (closed || handshake != null) return;
+                Frame ping = relay.pool.acquire(0);
+                ping.control(0);
+                enqueue(ping);
+            });
+        }
+
+        @Override
+        public void close() { relay.execute(this::terminate); }
+
+        //Chiude il canale, restituisce i buffer al pool e libera la coppia
+        private void terminate() {
+            if (closed) return;
+            closed = true;
+            if (registration != null) registration.cancel();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Già chiuso
+            }
+            if (incoming != null) relay.pool.release(incoming);
+            incoming = null;
+            Frame frame;
+            while ((frame = outgoing.poll()) != null)
+                relay.pool.release(frame);
+            if (nickname != null) {
+                TicTacToeServer.videoClients.remove(nickname, this); //Rimuove dalla mappa
+                TicTacToeServer.unregisterPair(nickname); //Rimuove coppia
+                System.out.println("Client video disconnesso: " + nickname);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package TicTacToe;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Trasporto legacy: un unico ObjectOutputStream/ObjectInputStream per tutta la connessione
+//Lo stream ricorda ogni oggetto scritto (tabella degli handle) finché non viene resettato: il reset periodico
+//limita la memoria di una connessione lunga, e il TC_RESET svuota anche la tabella dell'ObjectInputStream del client
+public class ObjectStreamTransport implements BlockingTransport {
+    private static final int RESET_MESSAGES = Integer.getInteger("tictactoe.stream.resetMessages", 64); //Messaggi tra due reset (0 = mai)
+    private static final int RESET_BYTES = Integer.getInteger("tictactoe.stream.resetBytes", 64 * 1024); //Byte tra due reset
+
+    private final Socket socket; //Socket del client
+    private final ObjectOutputStream out; //Stream di output per inviare oggetti serializzati
+    private final ObjectInputStream in; //Stream di input per ricevere oggetti serializzati
+    private final CountingOutputStream counterOut; //Conta i byte inviati per le statistiche
+    private final CountingInputStream counterIn; //Conta i byte ricevuti per le statistiche
+    private final ReentrantLock writeLock = new ReentrantLock(); //Protegge lo stream in scrittura senza bloccare il carrier di un thread virtuale
+    private int messagesSinceReset = 0; //Messaggi scritti dall'ultimo reset
+    private long bytesAtReset = 0; //Byte scritti al momento dell'ultimo reset
+
+    //Crea gli stream: l'header del client è già stato letto nel buffer di input
+    public ObjectStreamTransport(Socket socket, InputStream input) throws IOException {
+        this.socket = socket;
+        this.counterOut = new CountingOutputStream(socket.getOutputStream());
+        this.counterIn = new CountingInputStream(input);
+        this.out = new ObjectOutputStream(counterOut); //Inizializza lo stream di output
+        this.out.flush(); //Invia subito l'header dello stream al client
+        this.in = new ObjectInputStream(counterIn); //Inizializza lo stream di input
+    }
+
+    @Override
+    public void send(GameMessage<?> message) throws IOException {
+        GameMessage<?>[] batch = message.getPayloadAsMessages();
+        writeLock.lock();
+        try {
+            if (batch != null) { //I client legacy non conoscono BATCH: riceve i messaggi uno per uno, con un solo flush
+                for (GameMessage<?> inner : batch)
+                    write(inner);
+            } else {
+                write(message);
+            }
+            resetIfDue();
+            out.flush(); //Svuota il buffer dello stream
+        } finally {
+            writeLock.unlock();
+        }
+        ProtocolStats.flushed();
+    }
+
+    private void write(GameMessage<?> message) throws IOException {
+        long before = counterOut.count;
+        out.writeObject(message); //Scrive l'oggetto messaggio nello stream di output
+        ProtocolStats.sent(ProtocolStats.LEGACY_STREAM, (int) (counterOut.count - before));
+        messagesSinceReset++;
+    }
+
+    //Dimentica gli oggetti già scritti quando la tabella degli handle supera il budget della connessione
+    private void resetIfDue() throws IOException {
+        if (RESET_MESSAGES <= 0) return; //Comportamento originale: tabella mai svuotata
+        if (messagesSinceReset < RESET_MESSAGES && counterOut.count - bytesAtReset < RESET_BYTES) return;
+        out.reset(); //Un byte sul filo; i messaggi condivisi verranno riscritti per intero al prossimo invio
+        messagesSinceReset = 0;
+        bytesAtReset = counterOut.count;
+        ProtocolStats.streamReset();
+    }
+
+    //I byte scritti dall'ultimo reset stimano gli oggetti che la tabella degli handle tiene in vita (letto senza lock: è solo un indicatore)
+    @Override
+    public long retainedBytes() { return counterOut.count - bytesAtReset; }
+
+    @Override
+    public GameMessage<?> receive() throws IOException {
+        try {
+            Object message; //Oggetto letto dallo stream
+            long before = counterIn.count;
+            while ((message = in.readObject()) != null) { //Legge finché arrivano oggetti
+                if (message instanceof GameMessage) { //Ignora oggetti che non sono messaggi di gioco
+                    ProtocolStats.received(ProtocolStats.LEGACY_STREAM, (int) (counterIn.count - before));
+                    return (GameMessage<?>) message;
+                }
+            }
+            return null; //Fine dello stream
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Errore di deserializzazione: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean supportsPresenceDeltas() { return false; } //I client legacy conoscono solo LIST_PLAYERS
+
+    @Override
+    public boolean supportsHeartbeats() { return false; } //Il client legacy ignora i PING: resta il keepalive TCP
+
+    @Override
+    public void close() {
+        try {
+            socket.close(); //Chiude il socket del client
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Stream che conta i byte scritti
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count; //Byte scritti finora
+
+        CountingOutputStream(OutputStream out) { super(out); }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    //Stream che conta i byte letti
+    private static class CountingInputStream extends FilterInputStream {
+        long count; //Byte letti finora
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
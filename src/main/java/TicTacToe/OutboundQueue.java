@@ -0,0 +1,153 @@
+package TicTacToe;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Coda limitata dei messaggi in uscita di un giocatore: la logica di gioco accoda e torna subito,
+//un writer dedicato (o l'event loop NIO) la svuota sul socket
+//Lock e Condition invece di synchronized/wait: un writer virtuale in attesa libera il carrier invece di bloccarlo
+public class OutboundQueue {
+    //Politica quando la coda è piena
+    public enum OverflowPolicy {
+        DISCONNECT, //Chiude la connessione del client lento
+        DROP_OLDEST //Scarta il messaggio non critico più vecchio (se non ce ne sono, disconnette)
+    }
+
+    public static final int CAPACITY = Integer.getInteger("tictactoe.outbound.capacity", 256); //Messaggi massimi in coda
+    public static final OverflowPolicy POLICY = System.getProperty("tictactoe.outbound.overflow", "disconnect")
+            .equals("drop-oldest") ? OverflowPolicy.DROP_OLDEST : OverflowPolicy.DISCONNECT;
+
+    //Messaggi che possono essere scartati: un invio successivo li rende obsoleti
+    private static final Set<String> NON_CRITICAL = Set.of("LIST_PLAYERS");
+
+    //Metriche globali
+    private static final AtomicLong totalDepth = new AtomicLong(); //Messaggi in coda su tutte le connessioni
+    private static final AtomicInteger maxDepth = new AtomicInteger(); //Profondità massima osservata su una coda
+    private static final LongAdder dropped = new LongAdder(); //Messaggi non critici scartati
+    private static final LongAdder overflows = new LongAdder(); //Disconnessioni per coda piena
+
+    private final ArrayDeque<GameMessage<?>> messages = new ArrayDeque<>(); //Messaggi in attesa
+    private final ReentrantLock lock = new ReentrantLock(); //Protegge messaggi e chiusura
+    private final Condition available = lock.newCondition(); //Nuovo messaggio o coda chiusa
+    private boolean closed = false; //Nessun nuovo messaggio accettato
+
+    //Accoda un messaggio; restituisce false se la coda è piena e la connessione va chiusa
+    public boolean offer(GameMessage<?> message) {
+        lock.lock();
+        try {
+            if (closed) return true; //Connessione in chiusura: il messaggio viene ignorato
+            if (messages.size() >= CAPACITY) { //Coda piena
+                if (POLICY != OverflowPolicy.DROP_OLDEST || !dropOldestNonCritical()) {
+                    overflows.increment();
+                    return false;
+                }
+            }
+            messages.add(message);
+            totalDepth.incrementAndGet();
+            maxDepth.accumulateAndGet(messages.size(), Math::max); //Aggiorna il picco
+            available.signal(); //Sveglia il writer in attesa
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean dropOldestNonCritical() {
+        Iterator<GameMessage<?>> iterator = messages.iterator(); //Dal più vecchio al più recente
+        while (iterator.hasNext()) {
+            if (NON_CRITICAL.contains(iterator.next().getType())) {
+                iterator.remove();
+                totalDepth.decrementAndGet();
+                dropped.increment();
+                return true;
+            }
+        }
+        return false; //Solo messaggi critici in coda
+    }
+
+    //Prossimo messaggio, attendendo se la coda è vuota; null quando la coda è chiusa e svuotata
+    public GameMessage<?> take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (messages.isEmpty() && !closed)
+                available.await();
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Prossimo messaggio senza attendere, null se la coda è vuota
+    public GameMessage<?> poll() {
+        lock.lock();
+        try {
+            GameMessage<?> message = messages.poll();
+            if (message != null) totalDepth.decrementAndGet();
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Chiusura ordinata: i messaggi già accodati vengono ancora inviati
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Chiusura immediata: scarta i messaggi in coda (connessione persa)
+    public void discard() {
+        lock.lock();
+        try {
+            totalDepth.addAndGet(-messages.size());
+            messages.clear();
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isDrained() { //Chiusa e vuota
+        lock.lock();
+        try {
+            return closed && messages.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() { //Profondità corrente
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Valori correnti per le metriche esportate
+    static long depth() { return totalDepth.get(); }
+
+    static int peakDepth() { return maxDepth.get(); }
+
+    static long droppedCount() { return dropped.sum(); }
+
+    static long overflowCount() { return overflows.sum(); }
+
+    //Riepilogo delle metriche delle code
+    public static String report() {
+        return String.format("Code di uscita: %d messaggi in coda, picco %d/%d, %d scartati, %d disconnessioni per overflow (%s)",
+                totalDepth.get(), maxDepth.get(), CAPACITY, dropped.sum(), overflows.sum(), POLICY);
+    }
+}
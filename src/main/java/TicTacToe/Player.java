@@ -2,78 +2,208 @@ package TicTacToe;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicReference;
 
 //Classe Player che implementa Runnable per eseguire thread
 public class Player implements Runnable {
-    private final Socket socket; //Socket per la connessione al client
-    private ObjectOutputStream out; //Stream di output per inviare oggetti serializzati
-    private ObjectInputStream in; //Stream di input per ricevere oggetti serializzati
+    private final Socket socket; //Socket per la connessione al client (null per le sessioni NIO)
+    private Transport transport; //Trasporto usato per inviare e ricevere messaggi
     private String nickname; //Variabile per memorizzare il nickname del giocatore
+    private final OutboundQueue outbound = new OutboundQueue(); //Coda dei messaggi in uscita, svuotata da writer o event loop
+    private final AtomicBoolean cleanedUp = new AtomicBoolean(); //Evita una doppia pulizia (reader, writer ed event loop)
+    private final AtomicReference<Game> currentGame = new AtomicReference<>(); //Partita in corso del giocatore (indice giocatore -> partita)
+    final ChallengeInbox challenges = new ChallengeInbox(); //Sfide ricevute e inviate in attesa di risposta
+    private volatile long lastSeen = System.nanoTime(); //Ultimo messaggio ricevuto dal client (per il heartbeat)
+    final AtomicReference<Matchmaking.Ticket> queueTicket = new AtomicReference<>(); //Iscrizione alla partita rapida, null se non è in coda
+    private final AtomicReference<Game> watching = new AtomicReference<>(); //Partita che il giocatore sta guardando, null se nessuna
+    private final RateLimiter limits; //Limiti di frequenza dei messaggi del client, null per bot e proxy del cluster
+    private TimerWheel.Timeout loginDeadline; //Chiusura se il NICKNAME non arriva in tempo (solo connessioni bloccanti, le sessioni NIO hanno la loro)
+    private static final int BAND = Integer.getInteger("tictactoe.matchmaking.band", 400); //Ampiezza delle fasce di punteggio per la partita rapida (0 = una sola)
+    private static final int MAX_ROWS = 100; //Righe massime per pagina di classifica o storico
 
-    //Costruttore che inizializza il Player con un socket
+    //Costruttore che inizializza il Player con un socket (modalità bloccante)
     public Player(Socket socket) {
         this.socket = socket;
+        this.limits = RateLimiter.ENABLED ? new RateLimiter() : null;
+        this.loginDeadline = Heartbeat.loginDeadline(this::loginExpired);
+    }
+
+    //Costruttore per le sessioni NIO: il trasporto è già negoziato e i messaggi arrivano dall'event loop
+    public Player(Transport transport) {
+        this.socket = null;
+        this.transport = transport;
+        this.limits = RateLimiter.ENABLED ? new RateLimiter() : null;
+    }
+
+    //Costruttore per i bot del server e i proxy del cluster: nessuna connessione diretta, il nickname è già assegnato
+    Player(Transport transport, String nickname) {
+        this.socket = null;
+        this.transport = transport;
+        this.nickname = nickname;
+        this.limits = null; //Messaggi generati dal server o già limitati dal nodo del client
     }
 
     //Metodo pubblico che restituisce il nickname del giocatore
     public String getNickname() { return nickname; }
 
+    //Associa il giocatore alla partita se è libero e ancora connesso
+    boolean joinGame(Game game) {
+        if (!currentGame.compareAndSet(null, game)) return false; //Già in partita
+        if (cleanedUp.get()) { //Disconnesso nel frattempo: la pulizia non vedrà questa partita
+            currentGame.compareAndSet(game, null);
+            return false;
+        }
+        unwatch(); //Chi entra in partita smette di guardare
+        return true;
+    }
+
+    //Libera il giocatore solo se è ancora associato a quella partita
+    void leaveGame(Game game) { currentGame.compareAndSet(game, null); }
+
+    int ratingBand() { return BAND > 0 ? MatchHistory.leaderboard.value(nickname) / BAND : 0; } //Fascia di punteggio per la partita rapida
+
+    Game currentGame() { return currentGame.get(); }
+
+    Transport transport() { return transport; }
+
+    boolean isBot() { return transport instanceof Bot; }
+
+    OutboundQueue outbound() { return outbound; } //Coda di uscita (letta dall'event loop NIO)
+
     //Metodo run che esegue il thread del player
     @Override
     public void run() {
         try {
-            out = new ObjectOutputStream(socket.getOutputStream()); //Inizializza lo stream di output per inviare oggetti al client
-            out.flush(); //Svuota il buffer dello stream di output
-            in = new ObjectInputStream(socket.getInputStream()); //Inizializza lo stream di input per ricevere oggetti dal client
+            BlockingTransport stream = openTransport(); //Riconosce il protocollo del client e crea il trasporto adatto
+            transport = stream;
+            TicTacToeServer.writerExecutor.execute(() -> drainOutbound(stream)); //Writer dedicato che svuota la coda di uscita
 
             sendMessage(GameMessage.setNickname()); //Invia un messaggio al client per richiedere il nickname
-            GameMessage<?> msg = (GameMessage<?>) in.readObject(); //Legge il messaggio dal client contenente il nickname (usa ? per indicare un qualsiasi tipo) 
-
-            if (msg.getType().equals("NICKNAME")) { //Se il messaggio ricevuto è di tipo "NICKNAME"
-                nickname = msg.getPayloadAsString(); //Estrae il nickname dal messaggio e lo memorizza
+            GameMessage<?> msg = stream.receive(); //Legge il messaggio dal client contenente il nickname
 
-                //Se il nickname non è valido e già in uso
-                if (nickname == null || nickname.isEmpty() || TicTacToeServer.connectedClients.containsKey(nickname)) {
-                    sendMessage(GameMessage.nicknameError("Nickname non valido o già in uso")); //Invia un messaggio di errore al client
-                    socket.close(); //Chiude il socket
-                    return;
-                }
-
-                TicTacToeServer.connectedClients.put(nickname, this); //Aggiunge il nuovo player alla map dei client connessi associando il nickname al player
-                sendMessage(GameMessage.nicknameSuccess(nickname)); //Invia un messaggio di successo al client con il nickname confermato
-                System.out.println("Utente registrato: " + nickname);
-
-                broadcastPlayerList(); //Invia la lista aggiornata dei giocatori a tutti i client
-
-                Object message; //Dichiara una variabile per memorizzare il messaggio ricevuto
-                while ((message = in.readObject()) != null) { //Ciclo infinito che legge i messaggi dal client finché non è null
-                    if (message instanceof GameMessage) //Se il messaggio è un'istanza di GameMessage
-                        processMessage((GameMessage<?>) message); //Elabora il messaggio ricevuto
-                }
+            if (msg != null && login(msg)) { //Se il nickname è stato accettato
+                GameMessage<?> message; //Dichiara una variabile per memorizzare il messaggio ricevuto
+                while ((message = stream.receive()) != null) //Ciclo che legge i messaggi dal client finché lo stream non termina
+                    processMessage(message); //Elabora il messaggio ricevuto
             }
         } catch (IOException e) {
             System.err.println("Errore con client " + nickname + ": " + e.getMessage()); 
-        } catch (ClassNotFoundException e) { 
-            System.err.println("Errore di deserializzazione: " + e.getMessage()); 
         } finally { 
             cleanup(); //Esegue la pulizia e la disconnessione del player
         }
     }
 
+    //Legge i primi 4 byte: magic del protocollo a frame oppure header di uno stream serializzato legacy
+    private BlockingTransport openTransport() throws IOException {
+        BufferedInputStream input = new BufferedInputStream(socket.getInputStream()); //Buffer che permette di rileggere l'header
+        DataInputStream dataIn = new DataInputStream(input);
+        input.mark(4); //Segna l'inizio dello stream
+        if (dataIn.readInt() == Protocol.MAGIC) //Client che parla il protocollo a frame
+            return MessageStream.accept(socket, dataIn);
+        input.reset(); //Client legacy: l'header appartiene all'ObjectInputStream
+        socket.setKeepAlive(true); //Non risponde ai PING: le connessioni morte le scopre il sistema operativo
+        return new ObjectStreamTransport(socket, input);
+    }
+
+    //Avvio di una sessione NIO: richiede il nickname al client
+    void start() {
+        sendMessage(GameMessage.setNickname());
+    }
+
+    //Messaggio decodificato dall'event loop NIO; restituisce false se la sessione va chiusa
+    boolean onMessage(GameMessage<?> message) {
+        if (cleanedUp.get()) return false; //Sessione già in chiusura
+        if (nickname == null) //Primo messaggio: registrazione del nickname
+            return login(message);
+        processMessage(message); //Comandi successivi
+        return true;
+    }
+
+    //Handshake o nickname mai arrivati: chiude il socket, il reader esce ed esegue la pulizia
+    private void loginExpired() {
+        Heartbeat.loginExpired(socket.getRemoteSocketAddress());
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Già chiuso
+        }
+    }
+
+    //Sessione NIO chiusa dall'event loop
+    void disconnected() {
+        cleanup();
+    }
+
+    //Valida il nickname ricevuto e registra il giocatore; restituisce false se la connessione va chiusa
+    private boolean login(GameMessage<?> msg) {
+        if (msg.getType() == null) return false; //Messaggio senza tipo: connessione non valida
+        Metrics.messageIn(msg.getType());
+        if (!msg.getType().equals("NICKNAME")) return false; //Il primo messaggio deve essere di tipo "NICKNAME"
+        String requested = msg.getPayloadAsString(); //Estrae il nickname dal messaggio
+
+        if (requested != null && !requested.isEmpty() && !Cluster.owns(requested)) { //Giocatore di un altro nodo del cluster
+            Cluster.Node owner = Cluster.ownerOf(requested);
+            if (supportsPresenceDeltas()) //Il client si ricollega da solo e reinvia il nickname
+                sendMessage(GameMessage.redirect(owner.host(), owner.gamePort()));
+            else //I client legacy non conoscono REDIRECT
+                sendMessage(GameMessage.nicknameError("Collegati a " + owner.host() + ":" + owner.gamePort()));
+            return false;
+        }
+
+        //Se il nickname non è valido o è già in uso
+        if (requested == null || requested.isEmpty() || requested.indexOf(Game.ID_SEPARATOR) >= 0 //Il separatore renderebbe ambiguo l'id delle partite
+                || TicTacToeServer.connectedClients.putIfAbsent(requested, this) != null) {
+            sendMessage(GameMessage.nicknameError("Nickname non valido o già in uso")); //Invia un messaggio di errore al client
+            return false;
+        }
+
+        nickname = requested; //Memorizza il nickname solo dopo la registrazione, così la cleanup non tocca l'altro giocatore
+        if (loginDeadline != null) loginDeadline.cancel(); //Da qui il heartbeat controlla la connessione
+        sendMessage(GameMessage.nicknameSuccess(nickname)); //Invia un messaggio di successo al client con il nickname confermato
+        System.out.println("Utente registrato: " + nickname);
+
+        sendPlayerList(); //Snapshot completo della lobby per il nuovo client
+        Presence.joined(nickname); //Gli altri client ricevono un delta
+        MoveJournal.playerJoined(this); //Riprende una partita interrotta da un riavvio, se c'è anche l'avversario
+        return true;
+    }
+
     //Metodo privato che elabora i messaggi ricevuti dal client
     private void processMessage(GameMessage<?> message) { 
         String command = message.getType(); //Estrae il tipo di comando dal messaggio
+        if (command == null) return; //Messaggio senza tipo (stream legacy): scartato senza eseguirlo
+        Metrics.messageIn(command);
+        lastSeen = System.nanoTime(); //Qualsiasi messaggio prova che il client è vivo
+        if (limits != null) { //Limite di frequenza prima di qualsiasi lavoro sul messaggio
+            RateLimiter.Verdict verdict = limits.check(command);
+            if (verdict == RateLimiter.Verdict.THROTTLE) {
+                sendMessage(RateLimiter.throttled(command)); //Un solo avviso per serie di rifiuti
+            } else if (verdict == RateLimiter.Verdict.DISCONNECT) {
+                System.err.println("Troppi messaggi da " + nickname + ": disconnessione");
+                outbound.discard(); //Nessun altro messaggio al client
+                transport.close(); //La pulizia segue dal reader o dall'event loop
+            }
+            if (verdict != RateLimiter.Verdict.ALLOW) return;
+        }
 
         //Switch per gestire i diversi tipi di comando
         switch (command) { 
+            case "PING": //Heartbeat del client
+                sendMessage(GameMessage.pong());
+                break;
+            case "PONG": //Risposta al heartbeat del server, già registrata in lastSeen
+                break;
             case "LIST_PLAYERS": //Client richiede la lista dei giocatori disponibili
                 sendPlayerList(); //Invia la lista dei giocatori al client
                 break;
             case "CHALLENGE": //Client invia una sfida a un altro giocatore
-                String opponent = message.getPayloadAsString(); //Estrae il nickname dell'avversario dal messaggio
-                if (opponent != null) //Se l'avversario non è null
-                    sendChallenge(opponent); //Invia la sfida all'avversario
+                String[] challenge = message.getPayloadAsStringArray(); //Avversario, seguito dal tabellone se non è il tris classico
+                if (challenge != null && challenge.length > 0 && challenge[0] != null) //Se l'avversario non è null
+                    sendChallenge(challenge[0], GameRules.fromPayload(challenge, 1)); //Invia la sfida all'avversario
                 break;
             case "CHALLENGE_ACCEPT": //Client accetta una sfida ricevuta
                 String challenger = message.getPayloadAsString(); //Estrae nickname del giocatore che ha sfidato dal messaggio
@@ -85,6 +215,31 @@ public class Player implements Runnable {
                 if (challenger2 != null) //Se lo sfidante non è nullo
                     rejectChallenge(challenger2); //Rifiuta la sfida dello sfidante
                 break;
+            case "QUEUE": //Client chiede una partita rapida contro il primo avversario disponibile
+                String[] queue = message.getPayloadAsStringArray(); //Tabellone, assente per il tris classico
+                joinQueue(queue != null ? GameRules.fromPayload(queue, 0) : GameRules.CLASSIC);
+                break;
+            case "DEQUEUE": //Client esce dalla coda
+                if (Matchmaking.leave(this))
+                    sendMessage(GameMessage.dequeued());
+                break;
+            case "LEADERBOARD": //Client chiede una pagina della classifica: [posizione iniziale, righe]
+                String[] page = message.getPayloadAsStringArray();
+                sendLeaderboard(argument(page, 0, 0), argument(page, 1, 10));
+                break;
+            case "HISTORY": //Client chiede le ultime partite di un giocatore: [nickname, posizione iniziale, righe]
+                String[] history = message.getPayloadAsStringArray();
+                String of = history != null && history.length > 0 && history[0] != null && !history[0].isEmpty() ? history[0] : nickname; //Vuoto = il giocatore stesso
+                sendHistory(of, argument(history, 1, 0), argument(history, 2, 10));
+                break;
+            case "SPECTATE": //Client vuole guardare una partita: id della partita o nickname di un giocatore
+                String target = message.getPayloadAsString();
+                if (target != null)
+                    spectate(target);
+                break;
+            case "UNSPECTATE": //Client smette di guardare
+                unwatch();
+                break;
             case "MOVE": //Caso in cui il client invia una mossa durante la partita
                 String position = message.getPayloadAsString(); //Estrae la posizione della mossa dal messaggio
                 if (position != null) //Se la posizione non è nulla
@@ -93,76 +248,257 @@ public class Player implements Runnable {
         }
     }
 
-    //Metodo che invia la lista dei giocatori al client
+    //Collega il giocatore come spettatore della partita indicata, lasciando quella che stava guardando
+    private void spectate(String target) {
+        Game game = TicTacToeServer.activeGames.get(target); //Id della partita
+        if (game == null) { //Oppure nickname di uno dei giocatori
+            Player player = TicTacToeServer.connectedClients.get(target);
+            game = player != null ? player.currentGame() : null;
+        }
+        if (game == null || game.hasPlayer(this)) {
+            sendMessage(GameMessage.spectateEnd(target, "Partita non trovata"));
+            return;
+        }
+        unwatch();
+        watching.set(game);
+        game.watch(this); //Se è finita nel frattempo lo shard risponde con la fine e scollega lo spettatore
+    }
+
+    //Scollega il giocatore dalla partita che sta guardando
+    private void unwatch() {
+        Game game = watching.getAndSet(null);
+        if (game != null) game.unwatch(this);
+    }
+
+    void stopWatching(Game game) { watching.compareAndSet(game, null); } //Partita finita: gli spettatori sono già stati scollegati
+
+    //Numero nel payload alla posizione index, oppure il valore predefinito se manca o non è valido
+    private static int argument(String[] payload, int index, int fallback) {
+        if (payload == null || payload.length <= index || payload[index] == null) return fallback;
+        try {
+            return Integer.parseInt(payload[index]);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    //Classifica: [giocatori, mia posizione, mio punteggio, vittorie, pareggi, sconfitte] seguiti da [posizione, nickname, punteggio, partite] per riga
+    private void sendLeaderboard(int offset, int limit) {
+        Leaderboard leaderboard = MatchHistory.leaderboard;
+        List<String> payload = new ArrayList<>();
+        payload.add(String.valueOf(leaderboard.size()));
+        for (int value : leaderboard.stats(nickname))
+            payload.add(String.valueOf(value));
+        for (Leaderboard.Row row : leaderboard.page(offset, Math.min(limit, MAX_ROWS))) {
+            payload.add(String.valueOf(row.rank()));
+            payload.add(row.nickname());
+            payload.add(String.valueOf(row.rating()));
+            payload.add(String.valueOf(row.games()));
+        }
+        sendMessage(new GameMessage<>("LEADERBOARD", payload.toArray(new String[0])));
+    }
+
+    //Storico: [nickname] seguito da [fine ms, avversario, WIN/LOSS/DRAW, mosse, durata ms, punteggio dopo la partita] per partita
+    private void sendHistory(String of, int offset, int limit) {
+        List<String> payload = new ArrayList<>();
+        payload.add(of);
+        for (MatchHistory.Match match : MatchHistory.history(of, offset, Math.min(limit, MAX_ROWS))) {
+            boolean isX = match.x().equals(of);
+            char won = isX ? MatchHistory.X_WINS : MatchHistory.O_WINS;
+            payload.add(String.valueOf(match.endedAt()));
+            payload.add(isX ? match.o() : match.x());
+            payload.add(match.result() == MatchHistory.TIE ? "DRAW" : match.result() == won ? "WIN" : "LOSS");
+            payload.add(String.valueOf(match.moves().length));
+            payload.add(String.valueOf(match.durationMs()));
+            payload.add(String.valueOf(isX ? match.ratingX() : match.ratingO()));
+        }
+        sendMessage(new GameMessage<>("HISTORY", payload.toArray(new String[0])));
+    }
+
+    //Metodo che invia lo stato della lobby al client: snapshot versionato o lista completa per i client legacy
     private void sendPlayerList() { 
-        String[] players = TicTacToeServer.connectedClients.keySet().stream() //Ottiene l'insieme delle chiavi (nickname) dei client connessi
+        if (supportsPresenceDeltas())
+            Presence.sendSnapshot(this); //Snapshot da cui il client applica i delta successivi
+        else
+            sendLegacyPlayerList();
+    }
+
+    //Metodo che invia la lista completa dei giocatori (client legacy)
+    void sendLegacyPlayerList() { 
+        String[] players = Stream.concat(TicTacToeServer.connectedClients.keySet().stream(), Cluster.remoteNicknames().stream()) //Nickname dei client connessi, anche agli altri nodi
                 .filter(p -> !p.equals(nickname)) //Filtra i giocatori escludendo il giocatore corrente
                 .toArray(String[]::new); //Converte il flusso in un array di stringhe
         sendMessage(GameMessage.playersList(players)); //Invia il messaggio con la lista dei giocatori al client
     }
 
-    //Metodo che invia la lista aggiornata dei giocatori a tutti i client connessi
-    private void broadcastPlayerList() { 
-        for (Player client : TicTacToeServer.connectedClients.values()) { //Per ogni valore (Player) della map dei client connessi
-            client.sendPlayerList(); //Invia la lista dei giocatori a ciascun client
-        }
+    long retainedBytes() { //Memoria trattenuta dal trasporto (0 finché l'handshake non è completo)
+        Transport current = transport;
+        return current != null ? current.retainedBytes() : 0;
     }
 
+    long lastSeen() { return lastSeen; }
+
+    boolean supportsHeartbeats() { return transport != null && transport.supportsHeartbeats(); } //Il client risponde ai PING
+
+    //Chiude la connessione di un client che non risponde: la pulizia segue dal reader o dall'event loop
+    void closeConnection() { transport.close(); }
+
+    boolean supportsPresenceDeltas() { return transport.supportsPresenceDeltas(); } //Il client applica i delta di presenza
+
     //Metodo che gestisce l'invio di una sfida a un avversario
-    private void sendChallenge(String opponent) { 
+    private void sendChallenge(String opponent, GameRules rules) { 
         Player opponentHandler = TicTacToeServer.connectedClients.get(opponent); //Ottiene l'oggetto Player associato al nickname dell'avversario
+        if (opponentHandler == null && Cluster.isRemote(opponent)) { //Avversario su un altro nodo del cluster
+            challengeRemote(opponent, rules);
+            return;
+        }
         if (opponentHandler == null) { //Se l'avversario non è disponibile
             sendMessage(GameMessage.challengeError("Giocatore non disponibile")); //Invia un messaggio di errore al client che ha inviato la sfida
             return; 
         }
 
-        String gameId = nickname + "-" + opponent; //Crea un id univoco per la partita combinando i nickname
-        if (TicTacToeServer.activeGames.containsKey(gameId) || TicTacToeServer.activeGames.containsKey(opponent + "-" + nickname)) { //Se una partita è già in corso tra i due giocatori
+        if (currentGame.get() != null || opponentHandler.currentGame.get() != null) { //Se uno dei due giocatori è già in partita
             sendMessage(GameMessage.challengeError("Partita già in corso")); //Invia un messaggio di errore al client
             return; 
         }
 
-        TicTacToeServer.pendingChallenges.put(opponent, nickname); //Aggiunge la sfida in sospeso alla mappa
-        opponentHandler.sendMessage(GameMessage.challengeRequest(nickname)); //Invia un messaggio di richiesta di sfida all'avversario
+        if (rules == null || !rules.isValid()) { //Dimensioni del tabellone non accettate
+            sendMessage(GameMessage.challengeError("Tabellone non valido"));
+            return;
+        }
+
+        if (opponentHandler.transport instanceof Bot bot) { //I bot accettano subito, con un giocatore nuovo per ogni partita
+            if (!rules.isClassic()) {
+                sendMessage(GameMessage.challengeError("I bot giocano solo a tris 3x3"));
+                return;
+            }
+            playAgainst(bot.newGamePlayer());
+            return;
+        }
+
+        String refused = ChallengeInbox.open(new Challenge(this, opponentHandler, rules)); //Registra la sfida e la sua scadenza
+        if (refused != null) {
+            sendMessage(GameMessage.challengeError(refused));
+            return;
+        }
+        opponentHandler.sendMessage(GameMessage.challengeRequest(nickname, rules)); //Invia un messaggio di richiesta di sfida all'avversario
         sendMessage(GameMessage.challengeSent(opponent)); //Invia un messaggio di conferma al client che ha inviato la sfida
         System.out.println(nickname + " ha sfidato " + opponent);
     }
 
+    //Sfida a un giocatore di un altro nodo: il suo nodo la registra e, se accettata, ospita la partita
+    private void challengeRemote(String opponent, GameRules rules) {
+        if (currentGame.get() != null) {
+            sendMessage(GameMessage.challengeError("Partita già in corso"));
+            return;
+        }
+        if (rules == null || !rules.isValid()) {
+            sendMessage(GameMessage.challengeError("Tabellone non valido"));
+            return;
+        }
+        if (!Cluster.challenge(nickname, opponent, rules)) //CHALLENGE_SENT o l'errore arrivano dal nodo dell'avversario
+            sendMessage(GameMessage.challengeError("Giocatore non disponibile"));
+    }
+
+    //Sfida inoltrata da un altro nodo: questo Player è il proxy dello sfidante
+    void remoteChallenge(String opponent, GameRules rules) {
+        sendChallenge(opponent, rules);
+    }
+
+    //Comando (mossa) inoltrato dal nodo del giocatore reale per la partita ospitata qui
+    void remoteCommand(GameMessage<?> message) {
+        processMessage(message);
+    }
+
+    //Mette il giocatore in coda per una partita rapida con il tabellone indicato
+    private void joinQueue(GameRules rules) {
+        if (currentGame.get() != null) {
+            sendMessage(GameMessage.challengeError("Partita già in corso"));
+            return;
+        }
+        if (rules == null || !rules.isValid()) {
+            sendMessage(GameMessage.challengeError("Tabellone non valido"));
+            return;
+        }
+        if (!Matchmaking.join(this, rules)) {
+            sendMessage(GameMessage.challengeError("Sei già in coda"));
+            return;
+        }
+        sendMessage(GameMessage.queued(rules)); //L'abbinamento arriva come CHALLENGE_ACCEPTED seguito da GAME_START
+    }
+
+    //Esce dalla coda della partita rapida perché il giocatore è entrato in una partita in altro modo
+    private void leaveQueue() {
+        if (Matchmaking.leave(this))
+            sendMessage(GameMessage.dequeued());
+    }
+
     //Metodo privato che gestisce l'accettazione di una sfida da parte del giocatore
     private void acceptChallenge(String challenger) {
-        String pendingChallenger = TicTacToeServer.pendingChallenges.get(nickname); //Ottiene il nickname dello sfidante dalla mappa delle sfide in sospeso
-        if (pendingChallenger == null || !pendingChallenger.equals(challenger)) { //Se non c'è una sfida pendente o se lo sfidante è diverso
-            sendMessage(GameMessage.challengeError("Sfida non valida")); //Invia un messaggio di errore al client
+        Challenge pending = challenges.take(challenger); //Toglie la sfida dalla casella, se non è già scaduta
+        if (pending == null) { //Se non c'è una sfida pendente da questo sfidante
+            sendMessage(GameMessage.challengeError("Sfida non valida o scaduta")); //Invia un messaggio di errore al client
             return; 
         }
 
-        TicTacToeServer.pendingChallenges.remove(nickname); //Rimuove la sfida in sospeso dalla map
-        Player challengerHandler = TicTacToeServer.connectedClients.get(challenger); //Ottiene l'oggetto Player associato al nickname dello sfidante
+        Player challengerHandler = pending.from; //Sfidante che ha inviato la sfida
 
-        if (challengerHandler == null) { //Se lo sfidante non è più disponibile
+        Player registered = TicTacToeServer.connectedClients.get(challenger); //Sfidante di questo nodo o proxy di uno sfidante remoto
+        if (registered == null) registered = Cluster.proxy(challenger);
+        if (registered != challengerHandler) { //Se lo sfidante non è più disponibile
             sendMessage(GameMessage.challengeError("Sfidante non disponibile")); //Invia un messaggio di errore al client
             return; 
         }
 
-        String gameId = challenger + "-" + nickname; //Crea un id univoco per la partita combinando i nickname
-        Game game = new Game(challengerHandler, this, gameId); //Crea una nuova istanza di Game con lo sfidante e il giocatore corrente
-        TicTacToeServer.activeGames.put(gameId, game); //Aggiunge la partita alla map delle partite attive
+        String gameId = Game.idFor(challenger, nickname); //Id canonico della partita, indipendente da chi ha sfidato
+        Game game = new Game(challengerHandler, this, gameId, pending.rules); //Crea una nuova istanza di Game con lo sfidante, il giocatore corrente e il tabellone scelto
+        if (!challengerHandler.joinGame(game)) { //Lo sfidante è già in partita o si è disconnesso
+            sendMessage(GameMessage.challengeError("Sfidante non disponibile"));
+            return;
+        }
+        if (!joinGame(game) || !game.register()) { //Il giocatore corrente è già in partita (es. sfida inversa ancora aperta)
+            challengerHandler.leaveGame(game);
+            leaveGame(game);
+            sendMessage(GameMessage.challengeError("Partita già in corso"));
+            return;
+        }
 
+        if (challengerHandler.challenges.take(nickname) != null) //Sfida inversa inviata nello stesso istante: la coppia sta già giocando
+            challengerHandler.sendMessage(GameMessage.challengeExpired(nickname));
+        challengerHandler.leaveQueue(); //Chi era in coda per una partita rapida ne esce
+        leaveQueue();
+        Presence.setBusy(challenger, true); //Entrambi risultano in partita nella lobby
+        Presence.setBusy(nickname, true);
         challengerHandler.sendMessage(GameMessage.challengeAccepted(nickname)); //Invia un messaggio di accettazione al client dello sfidante
         sendMessage(GameMessage.challengeAccepted(challenger)); //Invia un messaggio di accettazione al client del giocatore corrente
 
-        new Thread(game).start(); //Crea e avvia un nuovo thread per gestire la partita
+        game.start(); //Avvia la partita sul suo shard
+        System.out.println("Partita avviata: " + gameId);
+    }
+
+    //Avvia subito una partita contro un bot: il giocatore è X e il bot O
+    private void playAgainst(Player botPlayer) {
+        String gameId = Game.idFor(nickname, botPlayer.getNickname()); //Un giocatore ha al massimo una partita, l'id resta unico
+        Game game = new Game(this, botPlayer, gameId, GameRules.CLASSIC);
+        if (!botPlayer.joinGame(game) || !joinGame(game) || !game.register()) { //Il giocatore è entrato in un'altra partita nel frattempo
+            botPlayer.leaveGame(game);
+            leaveGame(game);
+            sendMessage(GameMessage.challengeError("Partita già in corso"));
+            return;
+        }
+
+        leaveQueue();
+        Presence.setBusy(nickname, true); //Il bot resta libero per altre sfide
+        sendMessage(GameMessage.challengeAccepted(botPlayer.getNickname()));
+        game.start();
         System.out.println("Partita avviata: " + gameId);
     }
 
     //Metodo privato che gestisce il rifiuto di una sfida da parte del giocatore
     private void rejectChallenge(String challenger) {
-        String pendingChallenger = TicTacToeServer.pendingChallenges.get(nickname); //Ottiene il nickname dello sfidante dalla map delle sfide in sospeso
-        if (pendingChallenger != null && pendingChallenger.equals(challenger)) { //Se esiste una sfida in sospeso e se è dello sfidante specificato
-            TicTacToeServer.pendingChallenges.remove(nickname); //Rimuove la sfida in sospeso dalla map
-            Player challengerHandler = TicTacToeServer.connectedClients.get(challenger); //Ottiene l'oggetto Player associato al nickname dello sfidante
-            if (challengerHandler != null)  //Se lo sfidante è ancora disponibile
-                challengerHandler.sendMessage(GameMessage.challengeRejected(nickname)); //Invia un messaggio di rifiuto della sfida al client dello sfidante
+        Challenge pending = challenges.take(challenger); //Toglie la sfida dalla casella, se non è già scaduta
+        if (pending != null) { //Se esiste una sfida in sospeso dello sfidante specificato
+            pending.from.sendMessage(GameMessage.challengeRejected(nickname)); //Invia un messaggio di rifiuto della sfida al client dello sfidante
 
             System.out.println(nickname + " ha rifiutato la sfida di " + challenger);
         }
@@ -170,45 +506,65 @@ public class Player implements Runnable {
 
     //Metodo che gestisce la mossa del giocatore durante la partita
     private void handleMove(String position) {
-        for (Map.Entry<String, Game> entry : TicTacToeServer.activeGames.entrySet()) { //Per ogni partita attiva nella map
-            Game game = entry.getValue(); //Ottiene l'oggetto Game dalla coppia chiave-valore
-            if (game.hasPlayer(this)) { //Se il giocatore corrente è coinvolto nella partita
-                game.handleMove(this, position); //Invia la mossa alla partita specificando il giocatore e la posizione
-                break;
-            }
-        }
+        Game game = currentGame.get(); //Partita del giocatore, senza scorrere quelle attive
+        if (game != null) //Se il giocatore è in partita
+            game.handleMove(this, position); //Accoda la mossa sullo shard della partita specificando il giocatore e la posizione
     }
 
-    //Metodo che invia un messaggio al client del giocatore
+    //Metodo che accoda un messaggio per il client del giocatore senza bloccare il chiamante
     public void sendMessage(GameMessage<?> message) {
+        Metrics.messageOut(message.getType());
+        if (!outbound.offer(message)) { //Coda piena: il client non legge abbastanza in fretta
+            System.err.println("Coda di uscita piena per " + nickname + ": disconnessione");
+            outbound.discard(); //Scarta i messaggi rimasti
+            transport.close(); //Chiude la connessione, la pulizia segue dal reader o dall'event loop
+            return;
+        }
+        transport.onQueued(); //Avvisa l'event loop NIO (i writer bloccanti sono già svegliati dalla coda)
+    }
+
+    //Writer dei trasporti bloccanti: invia i messaggi in coda finché la coda non viene chiusa
+    private void drainOutbound(BlockingTransport stream) {
         try {
-            out.writeObject(message); //Scrive l'oggetto messaggio nello stream di output
-            out.flush(); //Svuota il buffer dello stream
+            GameMessage<?> message; //Messaggio da inviare
+            while ((message = outbound.take()) != null) //Attende il prossimo messaggio
+                stream.send(message); //Scrittura bloccante, fuori dalla logica di gioco
         } catch (IOException e) {
             System.err.println("Errore nell'invio del messaggio: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            outbound.discard(); //Nessun altro messaggio verrà inviato
+            transport.close(); //Chiude la connessione: il reader termina ed esegue la pulizia
         }
     }
 
     //Metodo che gestisce la pulizia e la disconnessione del giocatore
     private void cleanup() {
+        if (!cleanedUp.compareAndSet(false, true)) return; //Pulizia già eseguita
         if (nickname != null) { //Se il nickname del giocatore non è null
-            TicTacToeServer.connectedClients.remove(nickname); //Rimuove il giocatore dalla map dei client connessi
-            TicTacToeServer.pendingChallenges.remove(nickname); //Rimuove il giocatore dalla map delle sfide in sospeso
-
-            TicTacToeServer.activeGames.entrySet().removeIf(entry -> { //Per ogni partita attiva rimuove quella in cui il giocatore è coinvolto
-                if (entry.getValue().hasPlayer(this)) { //Se il giocatore è coinvolto nella partita
-                    entry.getValue().playerDisconnected(this); //Notifica al gioco che il giocatore si è disconnesso
-                    return true; //Ritorna true per indicare che la partita deve essere rimossa
-                }
-                return false; //Ritorna false per indicare che la partita non deve essere rimossa
-            });
-            broadcastPlayerList(); //Invia la lista aggiornata dei giocatori a tutti i client rimasti connessi
+            boolean registered = TicTacToeServer.connectedClients.remove(nickname, this); //Falso per i proxy del cluster, che non sono in lobby qui
+            challenges.closeAll(); //Chiude le sfide ricevute e inviate, avvisando gli altri giocatori
+            Matchmaking.leave(this); //Esce dalla coda della partita rapida
+            unwatch(); //Smette di guardare
+
+            Game game = currentGame.getAndSet(null); //Partita in cui il giocatore è coinvolto
+            if (game != null) { //Se il giocatore era in partita
+                TicTacToeServer.activeGames.remove(game.getGameId(), game); //Rimuove la partita dalla map
+                game.playerDisconnected(this); //Notifica al gioco che il giocatore si è disconnesso
+            }
+            if (registered) Presence.left(nickname); //I client rimasti ricevono un delta
             System.out.println("Utente disconnesso: " + nickname);
         }
-        try {
-            socket.close(); //Chiude il socket del client
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (transport != null) { //Se il trasporto è stato creato
+            outbound.close(); //Chiusura ordinata: il writer invia gli ultimi messaggi e poi chiude la connessione
+            transport.onQueued();
+        } else {
+            try {
+                socket.close(); //Handshake non completato: chiude direttamente il socket
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package TicTacToe;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+//Presenza versionata della lobby: snapshot completo al login, poi delta (entrato, uscito, in partita, libero)
+//raccolti in una finestra breve e inviati come un unico messaggio condiviso da tutti i destinatari
+public final class Presence {
+    public static final String JOINED = "JOINED"; //Giocatore entrato in lobby
+    public static final String LEFT = "LEFT"; //Giocatore disconnesso
+    public static final String BUSY = "BUSY"; //Giocatore in partita
+    public static final String FREE = "FREE"; //Giocatore di nuovo disponibile
+
+    private static final int WINDOW_MS = Integer.getInteger("tictactoe.presence.window", 50); //Finestra di raggruppamento dei delta
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "PresenceBroadcaster"); //Thread che pubblica i delta
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<String, String> membership = new LinkedHashMap<>(); //Ultimo JOINED/LEFT per nickname nella finestra
+    private static final Map<String, String> status = new LinkedHashMap<>(); //Ultimo BUSY/FREE per nickname nella finestra
+    private static final Set<String> busy = new HashSet<>(); //Giocatori attualmente in partita
+    private static long version = 0; //Versione dell'ultimo delta pubblicato
+    private static boolean flushScheduled = false; //Un solo flush per finestra
+
+    private Presence() {}
+
+    public static synchronized void joined(String nickname) {
+        record(membership, nickname, JOINED);
+        Cluster.publish(JOINED, nickname); //Gli altri nodi del cluster applicano lo stesso cambiamento
+    }
+
+    public static synchronized void left(String nickname) {
+        applyLeft(nickname);
+        Cluster.publish(LEFT, nickname);
+    }
+
+    public static synchronized void setBusy(String nickname, boolean inGame) {
+        if (nickname == null) return;
+        applyStatus(nickname, inGame);
+        Cluster.publish(inGame ? BUSY : FREE, nickname);
+    }
+
+    //Cambiamento di un giocatore di un altro nodo: arriva ai client di questo nodo senza essere ripubblicato
+    static synchronized void applyRemote(String op, String nickname) {
+        switch (op) {
+            case JOINED -> record(membership, nickname, JOINED);
+            case LEFT -> applyLeft(nickname);
+            case BUSY, FREE -> applyStatus(nickname, op.equals(BUSY));
+        }
+    }
+
+    private static void applyLeft(String nickname) {
+        busy.remove(nickname);
+        status.remove(nickname); //Lo stato di chi esce non interessa più
+        record(membership, nickname, LEFT);
+    }
+
+    private static void applyStatus(String nickname, boolean inGame) {
+        if (inGame) busy.add(nickname); else busy.remove(nickname);
+        record(status, nickname, inGame ? BUSY : FREE);
+    }
+
+    //Stato dei giocatori di questo nodo (bot esclusi) per un nodo appena collegato: coppie [operazione, nickname]
+    static synchronized String[] localOps() {
+        List<String> ops = new ArrayList<>();
+        for (Player player : TicTacToeServer.connectedClients.values()) {
+            if (player.isBot()) continue;
+            ops.add(JOINED);
+            ops.add(player.getNickname());
+            if (busy.contains(player.getNickname())) {
+                ops.add(BUSY);
+                ops.add(player.getNickname());
+            }
+        }
+        return ops.toArray(new String[0]);
+    }
+
+    //L'ultima operazione per nickname vince: i client applicano le operazioni in modo idempotente
+    private static synchronized void record(Map<String, String> changes, String nickname, String op) {
+        changes.remove(nickname); //Sposta in fondo per mantenere l'ordine degli eventi
+        changes.put(nickname, op);
+        if (!flushScheduled) { //Primo cambiamento della finestra
+            flushScheduled = true;
+            scheduler.schedule(Presence::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //Pubblica i cambiamenti raccolti: un delta codificato una volta per tutti i client a frame, lista completa ai client legacy
+    //Di norma la chiama lo scheduler a fine finestra; i benchmark la chiamano direttamente
+    static synchronized void flush() {
+        flushScheduled = false;
+        if (membership.isEmpty() && status.isEmpty()) return;
+
+        List<String> ops = new ArrayList<>(1 + 2 * (membership.size() + status.size()));
+        ops.add(String.valueOf(++version)); //Il primo elemento è la versione del delta
+        appendOps(ops, membership);
+        appendOps(ops, status);
+        membership.clear();
+        status.clear();
+
+        GameMessage<String[]> delta = new GameMessage<>("PRESENCE_DELTA", ops.toArray(new String[0])).shared(); //Codificato una sola volta
+        for (Player client : TicTacToeServer.connectedClients.values()) { //L'invio accoda soltanto: si può fare sotto lock
+            if (client.supportsPresenceDeltas())
+                client.sendMessage(delta);
+            else
+                client.sendLegacyPlayerList(); //I client legacy non capiscono i delta
+        }
+    }
+
+    private static void appendOps(List<String> ops, Map<String, String> changes) {
+        for (Map.Entry<String, String> change : changes.entrySet()) { //Coppie [operazione, nickname]
+            ops.add(change.getValue());
+            ops.add(change.getKey());
+        }
+    }
+
+    //Snapshot completo: [versione, JOINED, nick, (BUSY, nick)...]; accodato sotto lock per restare ordinato rispetto ai delta
+    public static synchronized void sendSnapshot(Player recipient) {
+        List<String> ops = new ArrayList<>();
+        ops.add(String.valueOf(version));
+        List<String> nicknames = new ArrayList<>(TicTacToeServer.connectedClients.keySet());
+        nicknames.addAll(Cluster.remoteNicknames()); //Anche i giocatori degli altri nodi del cluster
+        for (String nickname : nicknames) {
+            if (nickname.equals(recipient.getNickname())) continue; //Il client non vede sé stesso
+            ops.add(JOINED);
+            ops.add(nickname);
+            if (busy.contains(nickname)) {
+                ops.add(BUSY);
+                ops.add(nickname);
+            }
+        }
+        recipient.sendMessage(new GameMessage<>("PRESENCE_SNAPSHOT", ops.toArray(new String[0])));
+    }
+}
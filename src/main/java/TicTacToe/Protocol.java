@@ -0,0 +1,36 @@
+package TicTacToe;
+
+//Costanti e helper del protocollo a frame usato tra client e server di gioco
+public final class Protocol {
+    public static final int MAGIC = 0x54545446; //"TTTF": primi 4 byte inviati da un client che parla il protocollo a frame
+    public static final int STREAM_MAGIC = 0xACED0005; //Header di ObjectOutputStream inviato dai client legacy
+    public static final int MAX_FRAME_SIZE = 1 << 20; //Dimensione massima del corpo di un frame (1 MB)
+
+    public static final byte CODEC_SERIALIZED = 1; //Corpo del frame codificato con la serializzazione Java
+    public static final byte CODEC_BINARY = 2; //Corpo del frame codificato con BinaryCodec
+
+    private Protocol() {} //Classe di sole costanti, non istanziabile
+
+    //Restituisce il codec associato all'id negoziato, null se sconosciuto
+    public static MessageCodec codecFor(byte id) {
+        switch (id) {
+            case CODEC_SERIALIZED:
+                return SerializedCodec.INSTANCE; //Serializzazione Java per frame
+            case CODEC_BINARY:
+                return BinaryCodec.INSTANCE; //Codec binario compatto
+            default:
+                return null; //Codec non supportato
+        }
+    }
+
+    //Codec richiesto dai client: binario salvo -Dtictactoe.codec=serialized
+    public static byte preferredCodec() {
+        return System.getProperty("tictactoe.codec", "binary").equals("serialized") ? CODEC_SERIALIZED : CODEC_BINARY;
+    }
+
+    //Sceglie il codec da usare lato server: quello richiesto se supportato, altrimenti la serializzazione Java
+    public static MessageCodec negotiate(byte requested) {
+        MessageCodec codec = codecFor(requested); //Cerca il codec richiesto dal client
+        return codec != null ? codec : SerializedCodec.INSTANCE; //Ripiega sul codec sempre disponibile
+    }
+}
@@ -0,0 +1,60 @@
+package TicTacToe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Statistiche di traffico per codifica: messaggi e byte in ingresso/uscita
+public final class ProtocolStats {
+    public static final int LEGACY_STREAM = 0; //Indice dello stream serializzato legacy (nessun frame)
+    private static final String[] NAMES = {"legacy-stream", "serialized", "binary"}; //Nome per indice (= id codec)
+
+    private static final LongAdder[] messagesOut = adders(); //Messaggi inviati per codifica
+    private static final LongAdder[] bytesOut = adders(); //Byte inviati per codifica
+    private static final LongAdder[] messagesIn = adders(); //Messaggi ricevuti per codifica
+    private static final LongAdder[] bytesIn = adders(); //Byte ricevuti per codifica
+    private static final LongAdder flushes = new LongAdder(); //Scritture sul socket (flush degli stream, write dei canali NIO)
+    private static final LongAdder moves = new LongAdder(); //Mosse valide giocate
+    private static final LongAdder streamResets = new LongAdder(); //Reset degli stream legacy
+
+    private ProtocolStats() {}
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[NAMES.length];
+        for (int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    public static void sent(int encoding, int bytes) { //Registra un messaggio inviato (byte sul filo)
+        messagesOut[encoding].increment();
+        bytesOut[encoding].add(bytes);
+    }
+
+    public static void received(int encoding, int bytes) { //Registra un messaggio ricevuto (byte sul filo)
+        messagesIn[encoding].increment();
+        bytesIn[encoding].add(bytes);
+    }
+
+    public static void flushed() { flushes.increment(); } //Registra una scrittura sul socket
+
+    public static void moveApplied() { moves.increment(); } //Registra una mossa valida
+
+    public static void streamReset() { streamResets.increment(); } //Registra il reset di uno stream legacy
+
+    //Riepilogo byte/messaggio per ogni codifica usata
+    public static String report() {
+        StringBuilder report = new StringBuilder("Statistiche protocollo:");
+        for (int i = 0; i < NAMES.length; i++) {
+            long out = messagesOut[i].sum(), in = messagesIn[i].sum();
+            if (out == 0 && in == 0) continue; //Codifica mai usata
+            report.append(String.format("%n  %-13s out %d msg (%.1f B/msg)  in %d msg (%.1f B/msg)", NAMES[i],
+                    out, out == 0 ? 0.0 : (double) bytesOut[i].sum() / out,
+                    in, in == 0 ? 0.0 : (double) bytesIn[i].sum() / in));
+        }
+        long played = moves.sum();
+        report.append(String.format("%n  scritture %d, mosse %d (%.2f scritture/mossa)", flushes.sum(), played,
+                played == 0 ? 0.0 : (double) flushes.sum() / played)); //Comprende anche il traffico della lobby
+        if (streamResets.sum() > 0)
+            report.append(String.format("%n  reset stream legacy %d", streamResets.sum()));
+        return report.toString();
+    }
+}
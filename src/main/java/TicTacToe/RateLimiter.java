@@ -0,0 +1,107 @@
+package TicTacToe;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Limiti di frequenza dei messaggi in arrivo da una connessione: un token bucket per classe di messaggi (lobby, sfide,
+//mosse, altri) nella forma GCRA, cioè un solo long per classe con l'istante teorico di arrivo del prossimo messaggio.
+//Ogni connessione è letta da un solo thread (reader bloccante o event loop NIO), quindi lo stato è in campi semplici
+//senza lock né atomici; solo i contatori globali per le metriche sono LongAdder
+final class RateLimiter {
+    enum Verdict {
+        ALLOW, //Messaggio da elaborare
+        THROTTLE, //Respinto, primo della serie: il client riceve THROTTLED
+        DROP, //Respinto in silenzio, il client è già stato avvisato
+        DISCONNECT //Troppi messaggi respinti nella finestra: la connessione va chiusa
+    }
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("tictactoe.ratelimit")); //false = nessun limite
+    static final int LOBBY = 0, CHALLENGE = 1, MOVE = 2, OTHER = 3; //Classi di messaggi
+    private static final String[] CLASSES = {"lobby", "challenge", "move", "other"};
+    //Messaggi al secondo e raffica ammessa per classe, sovrascrivibili con -Dtictactoe.ratelimit.<classe>=rate/raffica
+    private static final String[] DEFAULTS = {"5/20", "5/20", "50/100", "10/30"};
+    private static final int STRIKES = Integer.getInteger("tictactoe.ratelimit.strikes", 100); //Messaggi respinti tollerati per finestra
+    private static final long STRIKE_WINDOW = TimeUnit.SECONDS.toNanos(Integer.getInteger("tictactoe.ratelimit.strikeWindow", 10));
+
+    private static final long[] INTERVAL = new long[CLASSES.length]; //Nanosecondi per token
+    private static final long[] TOLERANCE = new long[CLASSES.length]; //Anticipo massimo sull'istante teorico (raffica - 1 token)
+    private static final GameMessage<?>[] THROTTLED = new GameMessage<?>[CLASSES.length]; //Risposte condivise, codificate una volta
+    private static final LongAdder[] rejected = new LongAdder[CLASSES.length]; //Messaggi respinti per classe
+    private static final LongAdder disconnects = new LongAdder(); //Connessioni chiuse per abuso
+
+    static {
+        for (int c = 0; c < CLASSES.length; c++) {
+            String[] limit = System.getProperty("tictactoe.ratelimit." + CLASSES[c], DEFAULTS[c]).split("/");
+            double rate = Double.parseDouble(limit[0]);
+            int burst = limit.length > 1 ? Integer.parseInt(limit[1]) : (int) Math.ceil(rate);
+            INTERVAL[c] = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            TOLERANCE[c] = INTERVAL[c] * (Math.max(1, burst) - 1);
+            THROTTLED[c] = GameMessage.throttled(CLASSES[c]).shared();
+            rejected[c] = new LongAdder();
+        }
+    }
+
+    private final long[] due = new long[CLASSES.length]; //Istante teorico del prossimo messaggio per classe
+    private final boolean[] warned = new boolean[CLASSES.length]; //THROTTLED già inviato nella serie di rifiuti
+    private int strikes; //Messaggi respinti nella finestra corrente
+    private long strikeStart; //Inizio della finestra
+    private boolean abusive; //Disconnessione già decisa: i messaggi ancora nel buffer vengono scartati
+
+    RateLimiter() {
+        long now = System.nanoTime();
+        Arrays.fill(due, now);
+        strikeStart = now;
+    }
+
+    //Classe di un tipo di messaggio
+    static int classOf(String type) {
+        switch (type) {
+            case "LIST_PLAYERS": case "LEADERBOARD": case "HISTORY": case "SPECTATE": case "UNSPECTATE":
+                return LOBBY;
+            case "CHALLENGE": case "CHALLENGE_ACCEPT": case "CHALLENGE_REJECT": case "QUEUE": case "DEQUEUE":
+                return CHALLENGE;
+            case "MOVE":
+                return MOVE;
+            default:
+                return OTHER;
+        }
+    }
+
+    //Consuma un token della classe del messaggio (percorso caldo: nessuna allocazione)
+    Verdict check(String type) {
+        if (abusive) return Verdict.DROP;
+        int c = classOf(type);
+        long now = System.nanoTime();
+        long start = due[c] - now > 0 ? due[c] : now; //Bucket pieno se l'istante teorico è già passato
+        if (start - now <= TOLERANCE[c]) {
+            due[c] = start + INTERVAL[c];
+            warned[c] = false;
+            return Verdict.ALLOW;
+        }
+        rejected[c].increment();
+        if (now - strikeStart > STRIKE_WINDOW) { //Nuova finestra
+            strikeStart = now;
+            strikes = 0;
+        }
+        if (++strikes > STRIKES) {
+            abusive = true;
+            disconnects.increment();
+            return Verdict.DISCONNECT;
+        }
+        if (warned[c]) return Verdict.DROP;
+        warned[c] = true;
+        return Verdict.THROTTLE;
+    }
+
+    static GameMessage<?> throttled(String type) { return THROTTLED[classOf(type)]; } //Risposta THROTTLED [classe]
+
+    //Valori per le metriche
+    static String className(int c) { return CLASSES[c]; }
+
+    static int classCount() { return CLASSES.length; }
+
+    static long rejected(int c) { return rejected[c].sum(); }
+
+    static long disconnects() { return disconnects.sum(); }
+}
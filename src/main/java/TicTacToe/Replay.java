@@ -0,0 +1,195 @@
+package TicTacToe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+//Formato compatto delle partite concluse: dopo l'intestazione del file ogni partita è [esito e abbandono][larghezza]
+//[altezza][k][numero mosse u16][X u32][O u32][fine in secondi u32][mosse], con un byte per mossa (due se il tabellone ha
+//più di 256 celle). X e O sono indici nella tabella dei nickname scritta in fondo al file, alla posizione indicata
+//nell'intestazione. La lettura mappa il file in memoria e passa ogni partita allo stesso oggetto Replay, che legge i
+//campi direttamente dal buffer: una scansione di milioni di partite non crea oggetti né carica il file nello heap
+public final class Replay {
+    static final int MAGIC = 0x54545452; //"TTTR"
+    static final byte VERSION = 2;
+    static final int FILE_HEADER = 13; //[magic int][versione][posizione della tabella dei nickname long]
+    private static final int RECORD_HEADER = 18; //[flag][larghezza][altezza][k][mosse u16][X u32][O u32][fine u32]
+    private static final int FORFEIT = 0x04; //Bit di abbandono nel flag, i due bit bassi sono l'esito
+    private static final long WINDOW = 1L << 30; //Byte mappati per volta (una partita non supera mai 1 KB)
+
+    public static final int X_WINS = 0, O_WINS = 1, TIE = 2; //Esiti
+
+    private ByteBuffer buffer; //Finestra mappata che contiene la partita corrente
+    private int offset; //Inizio della partita nella finestra
+    private String[] players; //Tabella dei nickname del file
+
+    private Replay() {}
+
+    public int result() { return buffer.get(offset) & 0x03; }
+
+    public boolean forfeit() { return (buffer.get(offset) & FORFEIT) != 0; }
+
+    public int width() { return buffer.get(offset + 1) & 0xFF; }
+
+    public int height() { return buffer.get(offset + 2) & 0xFF; }
+
+    public int winLength() { return buffer.get(offset + 3) & 0xFF; }
+
+    public int moveCount() { return buffer.getShort(offset + 4) & 0xFFFF; }
+
+    public int playerX() { return buffer.getInt(offset + 6); } //Indice di X nella tabella dei nickname
+
+    public int playerO() { return buffer.getInt(offset + 10); }
+
+    public String nickname(int player) { return players[player]; }
+
+    public long endedAt() { return (buffer.getInt(offset + 14) & 0xFFFFFFFFL) * 1000; } //Fine della partita in millisecondi
+
+    public int move(int i) { //Posizione della mossa i (le mosse pari sono di X)
+        return wide(width(), height()) ? buffer.getShort(offset + RECORD_HEADER + 2 * i) & 0xFFFF
+                : buffer.get(offset + RECORD_HEADER + i) & 0xFF;
+    }
+
+    private int size() { return RECORD_HEADER + moveCount() * (wide(width(), height()) ? 2 : 1); }
+
+    private static boolean wide(int width, int height) { return width * height > 256; } //Posizioni oltre un byte
+
+    //Legge tutte le partite del file in ordine; l'oggetto passato è lo stesso per ogni partita e vale solo durante la chiamata
+    public static long scan(Path path, Consumer<Replay> consumer) throws IOException {
+        long games = 0;
+        Replay replay = new Replay();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = tableOffset(channel, path); //Le partite finiscono dove inizia la tabella dei nickname
+            replay.players = readPlayers(channel, size);
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+                int start = position == 0 ? FILE_HEADER : 0;
+                replay.buffer = window;
+                int limit = window.limit();
+                while (start + RECORD_HEADER <= limit) {
+                    replay.offset = start;
+                    int end = start + replay.size();
+                    if (end > limit) break; //Partita a cavallo della finestra: riletta nella prossima
+                    consumer.accept(replay);
+                    games++;
+                    start = end;
+                }
+                if (position + limit == size) break; //Fine delle partite (un'eventuale coda troncata viene ignorata)
+                position += start;
+            }
+        }
+        return games;
+    }
+
+    //Nickname del file, nell'ordine degli indici usati dalle partite
+    public static String[] players(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readPlayers(channel, tableOffset(channel, path));
+        }
+    }
+
+    //Controlla l'intestazione e restituisce la posizione della tabella dei nickname
+    private static long tableOffset(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {}
+        if (header.hasRemaining()) throw new IOException("File di replay vuoto: " + path);
+        if (header.getInt(0) != MAGIC || header.get(4) != VERSION)
+            throw new IOException("Formato di replay non riconosciuto: " + path);
+        long table = header.getLong(5);
+        if (table < FILE_HEADER || table > channel.size()) //Scrittura interrotta prima della chiusura
+            throw new IOException("File di replay incompleto: " + path);
+        return table;
+    }
+
+    //Tabella [numero int][lunghezza u16][nickname UTF-8]...
+    private static String[] readPlayers(FileChannel channel, long table) throws IOException {
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, table, channel.size() - table);
+        String[] players = new String[in.getInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < players.length; i++) {
+            int length = in.getShort() & 0xFFFF;
+            if (length > bytes.length) bytes = new byte[length];
+            in.get(bytes, 0, length);
+            players[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return players;
+    }
+
+    //Scrittura sequenziale di un file di replay con un buffer da 64 KB; la tabella dei nickname si scrive alla chiusura
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        private final Map<String, Integer> ids = new HashMap<>(); //Nickname -> indice nella tabella
+        private final List<String> players = new ArrayList<>(); //Tabella dei nickname, in ordine di indice
+        private long count; //Partite scritte
+
+        Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).put(VERSION).putLong(0); //Posizione della tabella: 0 finché il file non è chiuso
+        }
+
+        private int id(String nickname) {
+            return ids.computeIfAbsent(nickname, key -> {
+                players.add(key);
+                return players.size() - 1;
+            });
+        }
+
+        void append(MatchHistory.Match match) {
+            GameRules rules = match.rules();
+            int[] moves = match.moves();
+            boolean wide = wide(rules.width, rules.height);
+            try {
+                if (buffer.remaining() < RECORD_HEADER + moves.length * 2) flush();
+                int result = match.result() == MatchHistory.X_WINS ? X_WINS : match.result() == MatchHistory.O_WINS ? O_WINS : TIE;
+                buffer.put((byte) (result | (match.forfeit() ? FORFEIT : 0)))
+                        .put((byte) rules.width).put((byte) rules.height).put((byte) rules.winLength)
+                        .putShort((short) moves.length).putInt(id(match.x())).putInt(id(match.o()))
+                        .putInt((int) (match.endedAt() / 1000));
+                for (int move : moves) {
+                    if (wide) buffer.putShort((short) move);
+                    else buffer.put((byte) move);
+                }
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long count() { return count; }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            long table = channel.position();
+            buffer.putInt(players.size());
+            for (String nickname : players) {
+                byte[] bytes = nickname.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 2 + bytes.length) flush();
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            flush();
+            channel.write(ByteBuffer.allocate(8).putLong(0, table), 5); //Completa l'intestazione: il file ora è leggibile
+            channel.close();
+        }
+    }
+}
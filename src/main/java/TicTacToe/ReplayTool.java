@@ -0,0 +1,130 @@
+package TicTacToe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+//Esportazione e analisi delle partite giocate: converte il file dello storico nel formato compatto di Replay e
+//risponde a interrogazioni scorrendo il file mappato in memoria, senza caricare le partite nello heap
+//Uso: java -cp ... TicTacToe.ReplayTool export tictactoe-history.dat partite.replay
+//     java -cp ... TicTacToe.ReplayTool summary partite.replay
+//     java -cp ... TicTacToe.ReplayTool wins alice 6 partite.replay    (vinte da alice in meno di 6 mosse)
+//     java -cp ... TicTacToe.ReplayTool openings 3 partite.replay [20] (sequenze iniziali di 3 mosse più frequenti)
+public class ReplayTool {
+    private static final int MAX_DEPTH = 5; //Mosse di apertura massime (9 bit per mossa in una chiave long)
+    private static final int MAX_OPENING_CELLS = 1 << 9; //Celle massime per le aperture: ogni posizione entra in 9 bit
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        long start = System.nanoTime();
+        switch (args[0]) {
+            case "export" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                long games = MatchHistory.export(Path.of(args[1]), Path.of(args[2]));
+                System.out.println("Esportate " + games + " partite in " + args[2]);
+            }
+            case "summary" -> summary(Path.of(args[1]));
+            case "wins" -> {
+                if (args.length < 4) {
+                    usage();
+                    return;
+                }
+                wins(args[1], Integer.parseInt(args[2]), Path.of(args[3]));
+            }
+            case "openings" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                openings(Math.min(MAX_DEPTH, Integer.parseInt(args[1])), Path.of(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 20);
+            }
+            default -> {
+                usage();
+                return;
+            }
+        }
+        System.out.printf("Tempo: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void usage() {
+        System.out.println("Uso: ReplayTool export <storico> <replay> | summary <replay> | wins <nickname> <mosse> <replay> | openings <profondità> <replay> [righe]");
+    }
+
+    //Partite, esiti, abbandoni e mosse medie per tabellone
+    private static void summary(Path path) throws IOException {
+        long[] results = new long[3];
+        long[] counters = new long[2]; //[abbandoni, mosse totali]
+        Map<String, Long> boards = new HashMap<>();
+        long games = Replay.scan(path, replay -> {
+            results[replay.result()]++;
+            if (replay.forfeit()) counters[0]++;
+            counters[1] += replay.moveCount();
+            if (replay.width() != 3 || replay.height() != 3 || replay.winLength() != 3) //Il tris classico è la norma: niente stringhe
+                boards.merge(replay.width() + "x" + replay.height() + " k=" + replay.winLength(), 1L, Long::sum);
+        });
+        long classic = games - boards.values().stream().mapToLong(Long::longValue).sum();
+        System.out.printf("Partite: %d (X %d, O %d, pareggi %d, abbandoni %d), mosse medie %.2f%n", games,
+                results[Replay.X_WINS], results[Replay.O_WINS], results[Replay.TIE], counters[0],
+                games > 0 ? counters[1] / (double) games : 0);
+        System.out.println("Tabelloni: 3x3 k=3 " + classic + (boards.isEmpty() ? "" : ", " + boards));
+    }
+
+    //Partite vinte dal giocatore, con X o con O, in meno di maxMoves mosse: il nickname diventa un indice una sola volta
+    private static void wins(String nickname, int maxMoves, Path path) throws IOException {
+        int player = List.of(Replay.players(path)).indexOf(nickname); //-1 se non ha mai giocato: nessuna partita
+        long[] matching = new long[2]; //[vinte in meno di maxMoves mosse, giocate]
+        long games = Replay.scan(path, replay -> {
+            boolean x = replay.playerX() == player;
+            if (!x && replay.playerO() != player) return;
+            matching[1]++;
+            if (replay.result() == (x ? Replay.X_WINS : Replay.O_WINS) && replay.moveCount() < maxMoves && !replay.forfeit())
+                matching[0]++;
+        });
+        System.out.printf("%s vince in meno di %d mosse: %d partite su %d giocate (%d nel file)%n", nickname, maxMoves,
+                matching[0], matching[1], games);
+    }
+
+    //Sequenze iniziali più frequenti: chiave = [larghezza 8 bit][altezza 8 bit][mosse 9 bit ciascuna]; i tabelloni oltre
+    //512 celle non entrano nella chiave e vengono esclusi
+    private static void openings(int depth, Path path, int rows) throws IOException {
+        Map<Long, long[]> counts = new HashMap<>(); //Chiave -> [partite, vinte da X, vinte da O]
+        long[] excluded = new long[1]; //Partite su tabelloni troppo grandi
+        long games = Replay.scan(path, replay -> {
+            if (replay.width() * replay.height() > MAX_OPENING_CELLS) {
+                excluded[0]++;
+                return;
+            }
+            if (replay.moveCount() < depth) return;
+            long key = (long) replay.width() << 56 | (long) replay.height() << 48;
+            for (int i = 0; i < depth; i++)
+                key |= (long) replay.move(i) << (9 * i);
+            long[] count = counts.computeIfAbsent(key, k -> new long[3]);
+            count[0]++;
+            if (replay.result() != Replay.TIE) count[1 + replay.result()]++;
+        });
+        List<Map.Entry<Long, long[]>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        System.out.println("Aperture di " + depth + " mosse su " + games + " partite:");
+        if (excluded[0] > 0)
+            System.out.println("Escluse " + excluded[0] + " partite su tabelloni oltre " + MAX_OPENING_CELLS + " celle");
+        for (Map.Entry<Long, long[]> entry : sorted.subList(0, Math.min(rows, sorted.size()))) {
+            long key = entry.getKey();
+            long[] count = entry.getValue();
+            StringJoiner moves = new StringJoiner(",");
+            for (int i = 0; i < depth; i++)
+                moves.add(String.valueOf(key >>> (9 * i) & 0x1FF));
+            System.out.printf("%dx%d  %-20s %8d  (X %.1f%%, O %.1f%%)%n", key >>> 56, key >>> 48 & 0xFF, moves, count[0],
+                    100.0 * count[1] / count[0], 100.0 * count[2] / count[0]);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package TicTacToe;
+
+import java.io.*;
+
+//Codec che serializza ogni messaggio con uno stream Java indipendente per frame
+public final class SerializedCodec implements MessageCodec {
+    public static final SerializedCodec INSTANCE = new SerializedCodec(); //Istanza condivisa (il codec non ha stato)
+
+    private SerializedCodec() {}
+
+    @Override
+    public byte id() { return Protocol.CODEC_SERIALIZED; } //Id negoziato nell'handshake
+
+    @Override
+    public String name() { return "serialized"; } //Nome del codec
+
+    @Override
+    public byte[] encode(GameMessage<?> message) throws IOException {
+        BufferPool.Output bytes = new BufferPool.Output(); //Buffer per il corpo del frame, preso dal pool
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) { //Stream dedicato: ogni frame è decodificabile da solo, nessuna tabella degli handle sopravvive al frame
+                out.writeObject(message); //Serializza il messaggio
+            }
+            return bytes.toByteArray(); //Restituisce i byte serializzati
+        } finally {
+            bytes.release();
+        }
+    }
+
+    @Override
+    public GameMessage<?> decode(byte[] data, int offset, int length) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) { //Stream sul solo corpo del frame
+            Object message = in.readObject(); //Deserializza l'oggetto
+            if (!(message instanceof GameMessage) || ((GameMessage<?>) message).getType() == null) //Se non è un messaggio di gioco valido
+                throw new IOException("Frame non valido: " + message);
+            return (GameMessage<?>) message; //Restituisce il messaggio
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Errore di deserializzazione: " + e.getMessage(), e);
+        }
+    }
+}
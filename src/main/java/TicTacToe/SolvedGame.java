@@ -0,0 +1,69 @@
+package TicTacToe;
+
+import java.util.Arrays;
+
+//Tris risolto: per ogni posizione raggiungibile la mossa migliore del giocatore di turno
+//Le posizioni sono indicizzate in base 3 (cella i vale 0 vuota, 1 X, 2 O moltiplicata per 3^i)
+public final class SolvedGame {
+    public static final int CELLS = 9; //Celle del tris classico
+    public static final int POSITIONS = 19683; //3^9
+    private static final int[] WINS = { //Tutte le combinazioni vincenti come maschere di bit (bit i = cella i)
+            0b000_000_111, 0b000_111_000, 0b111_000_000, //Orizzontali
+            0b001_001_001, 0b010_010_010, 0b100_100_100, //Verticali
+            0b100_010_001, 0b001_010_100 //E diagonali
+    };
+    static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561}; //Peso di ogni cella nell'indice
+
+    private static final byte UNSOLVED = Byte.MIN_VALUE;
+    private static final byte[] BEST_MOVE = new byte[POSITIONS]; //Mossa migliore, -1 per posizioni finali o non raggiungibili
+    private static final byte[] SCORE = new byte[POSITIONS]; //Valore per il giocatore di turno (vittorie più rapide valgono di più)
+
+    static {
+        Arrays.fill(BEST_MOVE, (byte) -1);
+        Arrays.fill(SCORE, UNSOLVED);
+        solve(0, 0, 0, true); //Visita una volta tutte le posizioni raggiungibili dal tabellone vuoto
+    }
+
+    private SolvedGame() {}
+
+    //Mossa migliore nella posizione indicata: una sola lettura dalla tabella
+    public static int bestMove(int position) {
+        return BEST_MOVE[position];
+    }
+
+    //True se la maschera delle celle di un giocatore contiene una combinazione vincente
+    static boolean hasLine(int mask) {
+        for (int win : WINS) {
+            if ((mask & win) == win) return true;
+        }
+        return false;
+    }
+
+    //Negamax con memoizzazione sull'indice in base 3
+    private static int solve(int position, int x, int o, boolean xToMove) {
+        if (SCORE[position] != UNSOLVED) return SCORE[position];
+
+        int free = CELLS - Integer.bitCount(x | o);
+        int best = -CELLS - 1;
+        int bestMove = -1;
+        for (int cell = 0; cell < CELLS && free > 0; cell++) {
+            if (((x | o) & (1 << cell)) != 0) continue;
+            int score;
+            if (xToMove) {
+                int next = x | 1 << cell;
+                score = hasLine(next) ? free : free == 1 ? 0 : -solve(position + POW3[cell], next, o, false);
+            } else {
+                int next = o | 1 << cell;
+                score = hasLine(next) ? free : free == 1 ? 0 : -solve(position + 2 * POW3[cell], x, next, true);
+            }
+            if (score > best) {
+                best = score;
+                bestMove = cell;
+            }
+        }
+        if (bestMove < 0) best = 0; //Tabellone pieno
+        SCORE[position] = (byte) best;
+        BEST_MOVE[position] = (byte) bestMove;
+        return best;
+    }
+}
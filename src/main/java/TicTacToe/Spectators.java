@@ -0,0 +1,66 @@
+package TicTacToe;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Spettatori di una partita: gli aggiornamenti sono gli stessi messaggi condivisi inviati ai giocatori (codificati una
+//volta per codec) e vengono accodati a tutti gli spettatori da un solo thread, fuori dallo shard della partita, così
+//una partita seguita da migliaia di persone non rallenta le mosse; l'ordine dei task mantiene snapshot e mosse in fila
+final class Spectators {
+    private static final ExecutorService fanOut = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SpectatorFanOut"); //Thread che accoda gli aggiornamenti agli spettatori
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger watching = new AtomicInteger(); //Spettatori collegati in tutto il server
+
+    private final Set<Player> watchers = ConcurrentHashMap.newKeySet(); //Scritto solo dal thread di fan-out
+    private final AtomicInteger attached = new AtomicInteger(); //Spettatori, anche in attesa del task di aggiunta
+
+    //Nuovo spettatore: riceve lo snapshot e poi ogni aggiornamento accodato dopo questa chiamata
+    void add(Player spectator, GameMessage<?> snapshot) {
+        attached.incrementAndGet();
+        watching.incrementAndGet();
+        fanOut.execute(() -> {
+            watchers.add(spectator);
+            spectator.sendMessage(snapshot);
+        });
+    }
+
+    void remove(Player spectator) {
+        fanOut.execute(() -> {
+            if (watchers.remove(spectator)) {
+                attached.decrementAndGet();
+                watching.decrementAndGet();
+            }
+        });
+    }
+
+    //Aggiornamento condiviso per tutti gli spettatori; nessun task se la partita non ha spettatori
+    void broadcast(GameMessage<?> update) {
+        if (attached.get() == 0) return;
+        fanOut.execute(() -> {
+            for (Player spectator : watchers)
+                spectator.sendMessage(update); //Accoda soltanto: il messaggio è già codificato per il suo codec
+        });
+    }
+
+    //Ultimo messaggio della partita: dopo l'invio gli spettatori vengono scollegati
+    void close(Game game, GameMessage<?> last) {
+        if (attached.get() == 0) return;
+        fanOut.execute(() -> {
+            for (Player spectator : watchers) {
+                spectator.sendMessage(last);
+                spectator.stopWatching(game);
+            }
+            watching.addAndGet(-watchers.size());
+            attached.addAndGet(-watchers.size());
+            watchers.clear();
+        });
+    }
+
+    static int watching() { return watching.get(); } //Spettatori collegati (per metriche e report)
+}
@@ -15,9 +15,19 @@ public class TicTacToeClient {
     JPanel lobbyPanel = new JPanel(); //Pannello lobby
     JList<String> playerList; //Lista giocatori connessi
     DefaultListModel<String> playerListModel; //Modello dati lista giocatori
+    LobbyPresence presence; //Applica snapshot e delta di presenza al modello
     JButton challengeButton; //Bottone sfida
     JButton refreshButton; //Bottone aggiorna lista
-    JButton[][] board = new JButton[3][3]; //Griglia pulsanti 3x3
+    JButton queueButton; //Bottone partita rapida
+    JButton leaderboardButton; //Bottone classifica e storico
+    JButton spectateButton; //Bottone per guardare la partita del giocatore selezionato
+    boolean spectating = false; //Flag spettatore di una partita altrui
+    String spectatedX, spectatedO; //Giocatori della partita guardata
+    final LeaderboardView leaderboard = new LeaderboardView(); //Testo di classifica e storico ricevuti
+    boolean queued; //In coda per una partita rapida
+    JComboBox<GameRules> rulesBox; //Tabellone proposto nelle sfide
+    JButton[][] board; //Griglia pulsanti, costruita per il tabellone della partita
+    GameRules rules; //Regole della partita in corso
     String myPlayer; //Simbolo giocatore
     String myNickname; //Nickname scelto
     String opponentNickname; //Nickname avversario
@@ -25,16 +35,14 @@ public class TicTacToeClient {
     boolean myTurn = false; //Flag turno corrente
     boolean inGame = false; //Flag in partita
     private Socket socket; //Socket verso server
-    private ObjectOutputStream out; //Stream uscita oggetti
-    private ObjectInputStream in; //Stream ingresso oggetti
+    private volatile MessageStream connection; //Connessione a frame verso il server
+    private String pendingNickname; //Nickname inviato e non ancora confermato, reinviato dopo un REDIRECT
 
     //Costruttore con indirizzo server
     TicTacToeClient(String serverAddress) {
         try {
             socket = new Socket(serverAddress, 12345); //Apre socket sulla porta 12345
-            out = new ObjectOutputStream(socket.getOutputStream()); //Crea stream uscita
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream()); //Crea stream ingresso
+            connection = MessageStream.connect(socket, Protocol.preferredCodec()); //Handshake: negozia il codec binario
 
             setupGUI(); //Costruisce interfaccia
             new Thread(this::receiveMessages).start(); //Thread per ricezione messaggi
@@ -66,7 +74,7 @@ public class TicTacToeClient {
         frame.add(textPanel, BorderLayout.NORTH); //Posiziona pannello in alto
         setupLobbyPanel(); //Costruisce pannello lobby
         frame.add(lobbyPanel, BorderLayout.CENTER); //Mostra lobby al centro
-        setupBoardPanel(); //Costruisce pannello di gioco
+        setupBoardPanel(GameRules.CLASSIC); //Costruisce pannello di gioco
         boardPanel.setVisible(false); //Nasconde griglia finché non si gioca
     }
 
@@ -81,6 +89,8 @@ public class TicTacToeClient {
         lobbyPanel.add(lobbyLabel, BorderLayout.NORTH); //Aggiunge titolo in alto
         playerListModel = new DefaultListModel<>(); //Crea modello lista
         playerList = new JList<>(playerListModel); //Crea lista con modello
+        presence = new LobbyPresence(playerListModel); //Stato della lobby aggiornato dai delta
+        playerList.setCellRenderer(presence.renderer()); //Evidenzia chi è in partita
         playerList.setBackground(Color.gray); //Sfondo lista
         playerList.setForeground(Color.white); //Testo lista
         playerList.setFont(new Font("Arial", Font.PLAIN, 16)); //Font lista
@@ -89,42 +99,66 @@ public class TicTacToeClient {
         lobbyPanel.add(scrollPane, BorderLayout.CENTER); //Posiziona lista al centro
         JPanel buttonPanel = new JPanel(); //Pannello bottoni lobby
         buttonPanel.setBackground(Color.darkGray); //Sfondo bottoni
+        rulesBox = new JComboBox<>(GameRules.PRESETS); //Scelta del tabellone (tris classico di default)
+        rulesBox.setFont(new Font("Arial", Font.PLAIN, 16)); //Font scelta tabellone
         challengeButton = new JButton("Sfida"); //Bottone sfida
         challengeButton.setFont(new Font("Arial", Font.BOLD, 16)); //Font bottone sfida
         challengeButton.addActionListener(e -> challengeSelectedPlayer()); //Listener sfida
         refreshButton = new JButton("Aggiorna"); //Bottone aggiorna
         refreshButton.setFont(new Font("Arial", Font.BOLD, 16)); //Font bottone aggiorna
         refreshButton.addActionListener(e -> requestPlayerList()); //Listener aggiorna lista
+        buttonPanel.add(rulesBox); //Aggiunge scelta tabellone
         buttonPanel.add(challengeButton); //Aggiunge bottone sfida
+        queueButton = new JButton("Partita rapida"); //Bottone partita rapida
+        queueButton.setFont(new Font("Arial", Font.BOLD, 16)); //Font bottone partita rapida
+        queueButton.addActionListener(e -> toggleQueue()); //Listener entra/esce dalla coda
         buttonPanel.add(refreshButton); //Aggiunge bottone aggiorna
+        buttonPanel.add(queueButton); //Aggiunge bottone partita rapida
+        leaderboardButton = new JButton("Classifica"); //Bottone classifica
+        leaderboardButton.setFont(new Font("Arial", Font.BOLD, 16)); //Font bottone classifica
+        leaderboardButton.addActionListener(e -> { //Chiede classifica e ultime partite
+            for (GameMessage<?> request : LeaderboardView.requests(myNickname))
+                sendMessage(request);
+        });
+        buttonPanel.add(leaderboardButton); //Aggiunge bottone classifica
+        spectateButton = new JButton("Guarda"); //Bottone spettatore
+        spectateButton.setFont(new Font("Arial", Font.BOLD, 16)); //Font bottone spettatore
+        spectateButton.addActionListener(e -> spectateSelectedPlayer()); //Listener guarda partita
+        buttonPanel.add(spectateButton); //Aggiunge bottone spettatore
         lobbyPanel.add(buttonPanel, BorderLayout.SOUTH); //Posiziona bottoni in basso
     }
 
-    //Configura pannello griglia di gioco
-    void setupBoardPanel() {
-        boardPanel.setLayout(new GridLayout(3, 3)); //Griglia 3x3
+    //Configura pannello griglia di gioco per le regole indicate
+    void setupBoardPanel(GameRules rules) {
+        this.rules = rules; //Regole del tabellone
+        board = new JButton[rules.height][rules.width]; //Una riga di pulsanti per ogni riga del tabellone
+        boardPanel.removeAll(); //Elimina la griglia precedente
+        boardPanel.setLayout(new GridLayout(rules.height, rules.width)); //Griglia righe x colonne
         boardPanel.setBackground(Color.darkGray); //Sfondo scuro
+        int fontSize = Math.min(120, 360 / Math.max(rules.width, rules.height)); //Simboli più piccoli sui tabelloni grandi
 
-        for (int r = 0; r < 3; r++) { //Itera righe
-            for (int c = 0; c < 3; c++) { //Itera colonne
+        for (int r = 0; r < rules.height; r++) { //Itera righe
+            for (int c = 0; c < rules.width; c++) { //Itera colonne
                 JButton tile = new JButton(); //Crea bottone cella
                 board[r][c] = tile; //Salva in matrice
                 boardPanel.add(tile); //Aggiunge al pannello
 
                 tile.setBackground(Color.darkGray); //Sfondo cella
                 tile.setForeground(Color.white); //Colore testo cella
-                tile.setFont(new Font("Arial", Font.BOLD, 120)); //Font grande
+                tile.setFont(new Font("Arial", Font.BOLD, fontSize)); //Font proporzionato alla cella
+                tile.setMargin(new Insets(0, 0, 0, 0)); //Nessun margine: il simbolo resta visibile anche nelle celle piccole
                 tile.setFocusable(false); //Evita focus tastiera
 
-                int row = r; //Riga
-                int col = c; //Colonna
+                int position = r * rules.width + c; //Calcola indice della cella
                 tile.addActionListener(e -> { //Listener click cella
+                    if (spectating) { //Lo spettatore non gioca: un click chiede se tornare in lobby
+                        stopSpectating();
+                        return;
+                    }
                     if (gameOver || !myTurn || !inGame) return; //Ignora se non si può giocare
                     JButton clickedTile = (JButton) e.getSource(); //Cella cliccata
-                    if (clickedTile.getText().equals("")) { //Se vuota
-                        int position = row * 3 + col; //Calcola indice 0-8
+                    if (clickedTile.getText().equals("")) //Se vuota
                         sendMessage(GameMessage.move(String.valueOf(position))); //Invia mossa al server
-                    }
                 });
             }
         }
@@ -133,12 +167,13 @@ public class TicTacToeClient {
     //Loop di ricezione messaggi dal server
     void receiveMessages() {
         try {
-            Object message; //Buffer messaggio
-            while ((message = in.readObject()) != null) { //Legge finché esistono messaggi
-                if (message instanceof GameMessage) { //Se è di tipo messaggio
-                    System.out.println("Ricevuto: " + message);
-                    processMessage((GameMessage<?>) message); //Processa il messaggio
-                }
+            GameMessage<?> message; //Buffer messaggio
+            while ((message = connection.receive()) != null) { //Legge finché esistono messaggi
+                System.out.println("Ricevuto: " + message);
+                if (message.getType().equals("REDIRECT")) //Il nickname appartiene a un altro nodo del cluster
+                    redirect(message.getPayloadAsStringArray());
+                else
+                    processMessage(message); //Processa il messaggio
             }
         } catch (IOException e) {
             if (!gameOver) { //Se la partita non è finita
@@ -146,13 +181,24 @@ public class TicTacToeClient {
                     textLabel.setText("Connessione persa!"); //Mostra errore
                 });
             }
-        } catch (ClassNotFoundException e) {
-            System.err.println("Errore di deserializzazione: " + e.getMessage());
         }
     }
 
+    //Si ricollega al nodo indicato dal server: [host, porta]; il nickname viene reinviato alla sua richiesta
+    void redirect(String[] target) throws IOException {
+        socket.close(); //Il nodo precedente chiude comunque la connessione
+        socket = new Socket(target[0], Integer.parseInt(target[1]));
+        connection = MessageStream.connect(socket, Protocol.preferredCodec());
+    }
+
     //Gestisce i messaggi ricevuti
     void processMessage(GameMessage<?> message) {
+        GameMessage<?>[] batch = message.getPayloadAsMessages(); //Più messaggi in un unico frame (es. mossa e turno)
+        if (batch != null) { //Li elabora in ordine prima dei messaggi successivi
+            for (GameMessage<?> inner : batch)
+                processMessage(inner);
+            return;
+        }
         SwingUtilities.invokeLater(() -> { //Esegue su thread dell'UI
             String type = message.getType(); //Tipo messaggio
 
@@ -161,28 +207,74 @@ public class TicTacToeClient {
                     askNickname(); //Chiede nickname
                     break;
                 case "NICKNAME_SUCCESS": //Nickname accettato
+                    pendingNickname = null;
                     myNickname = message.getPayloadAsString(); //Salva nickname
+                    presence.setSelf(myNickname); //Il proprio nickname non compare nella lista
                     textLabel.setText("Benvenuto, " + myNickname + "!"); //Aggiorna testo
-                    requestPlayerList(); //Richiede lista giocatori
                     break;
                 case "NICKNAME_ERROR": //Nickname non valido
+                    pendingNickname = null;
                     JOptionPane.showMessageDialog(frame, "Nickname non valido o già in uso!"); //Mostra errore
                     askNickname(); //Richiede di nuovo
                     break;
-                case "LIST_PLAYERS": //Lista giocatori ricevuta
-                    String[] players = message.getPayloadAsStringArray(); //Estrae array
-                    updatePlayerList(players != null ? players : new String[]{}); //Aggiorna lista
+                case "PRESENCE_SNAPSHOT": //Stato completo della lobby
+                    String[] snapshot = message.getPayloadAsStringArray(); //Estrae versione e operazioni
+                    if (snapshot != null && snapshot.length > 0) //Se valido
+                        presence.applySnapshot(snapshot); //Ricostruisce la lista
+                    break;
+                case "PRESENCE_DELTA": //Cambiamenti della lobby
+                    String[] delta = message.getPayloadAsStringArray(); //Estrae versione e operazioni
+                    if (delta != null && delta.length > 0 && !presence.applyDelta(delta)) //Se manca una versione
+                        requestPlayerList(); //Chiede un nuovo snapshot
                     break;
                 case "CHALLENGE_REQUEST": //Ricevuta sfida
-                    String challenger = message.getPayloadAsString(); //Estrae sfidante
-                    if (challenger != null)  //Se valido
-                        handleChallengeRequest(challenger); //Gestisce richiesta
+                    String[] request = message.getPayloadAsStringArray(); //Sfidante, seguito dal tabellone se non è il tris classico
+                    GameRules requestRules = request != null && request.length > 0 ? GameRules.fromPayload(request, 1) : null; //Regole proposte
+                    if (requestRules != null && request[0] != null) //Se valido
+                        handleChallengeRequest(request[0], requestRules); //Gestisce richiesta
                     break;
                 case "CHALLENGE_SENT": //Conferma invio sfida
                     String opponent = message.getPayloadAsString(); //Estrae avversario
                     textLabel.setText("Sfida inviata a " + opponent); //Aggiorna stato
                     break;
-                case "CHALLENGE_ACCEPTED": //Sfida accettata
+                case "PING": //Heartbeat del server
+                    sendMessage(GameMessage.pong()); //Risponde subito, altrimenti la connessione viene chiusa
+                    break;
+                case "LEADERBOARD": //Classifica, mostrata insieme allo storico che arriva subito dopo
+                    leaderboard.applyLeaderboard(message.getPayloadAsStringArray());
+                    break;
+                case "HISTORY": //Ultime partite del giocatore
+                    JTextArea stats = new JTextArea(leaderboard.applyHistory(message.getPayloadAsStringArray())); //Testo a colonne
+                    stats.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+                    stats.setEditable(false);
+                    JOptionPane.showMessageDialog(frame, new JScrollPane(stats), "Classifica", JOptionPane.PLAIN_MESSAGE); //Mostra classifica e storico
+                    break;
+                case "SPECTATE": //Stato della partita da guardare, seguito dalle mosse
+                    String[] watched = message.getPayloadAsStringArray(); //[id, X, O, larghezza, altezza, k, mosse...]
+                    if (watched != null && watched.length >= 3) //Se valido
+                        startSpectating(watched); //Mostra il tabellone
+                    break;
+                case "UNSPECTATE": //Partita non trovata o interrotta da una disconnessione
+                    String[] end = message.getPayloadAsStringArray(); //[partita, motivo]
+                    if (spectating) { //Torna in lobby
+                        spectating = false;
+                        returnToLobby();
+                    }
+                    if (end != null && end.length >= 2) JOptionPane.showMessageDialog(frame, end[1]); //Mostra il motivo
+                    break;
+                case "THROTTLED": //Troppi messaggi in poco tempo: il server ha ignorato l'ultimo
+                    textLabel.setText("Troppe richieste, riprova tra poco"); //Aggiorna stato
+                    break;
+                case "QUEUED": //Entrato in coda per la partita rapida
+                    setQueued(true); //Aggiorna bottone
+                    textLabel.setText("In cerca di un avversario..."); //Aggiorna stato
+                    break;
+                case "DEQUEUED": //Uscito dalla coda
+                    setQueued(false); //Ripristina bottone
+                    if (!inGame) textLabel.setText("Benvenuto, " + myNickname + "!"); //Ripristina stato
+                    break;
+                case "CHALLENGE_ACCEPTED": //Sfida accettata o avversario trovato dalla partita rapida
+                    setQueued(false); //Non più in coda
                     opponentNickname = message.getPayloadAsString(); //Salva avversario
                     textLabel.setText("Sfida accettata! Inizio partita..."); //Aggiorna stato
                     break;
@@ -191,14 +283,19 @@ public class TicTacToeClient {
                     JOptionPane.showMessageDialog(frame, rejectNickname + " ha rifiutato la sfida"); //Mostra notifica
                     textLabel.setText("Benvenuto, " + myNickname + "!"); //Ripristina stato
                     break;
+                case "CHALLENGE_EXPIRED": //Sfida scaduta senza risposta o annullata dalla disconnessione dell'altro giocatore
+                    String expired = message.getPayloadAsString(); //Altro giocatore della sfida
+                    if (!inGame && !queued) textLabel.setText("La sfida con " + expired + " è scaduta"); //Aggiorna stato
+                    break;
                 case "CHALLENGE_ERROR": //Errore sfida
                     String error = message.getPayloadAsString(); //Estrae errore
                     JOptionPane.showMessageDialog(frame, error != null ? error : "Errore sfida"); //Mostra errore
                     break;
                 case "GAME_START": //Inizio partita
                     String[] gameStart = message.getPayloadAsStringArray(); //Estrae dati start
-                    if (gameStart != null && gameStart.length == 2) //Se validi
-                        startGame(gameStart[0], gameStart[1]); //Avvia partita, passa simbolo e avversario
+                    GameRules startRules = gameStart != null && gameStart.length >= 2 ? GameRules.fromPayload(gameStart, 2) : null; //Tabellone (3x3 se assente)
+                    if (startRules != null) //Se validi
+                        startGame(gameStart[0], gameStart[1], startRules); //Avvia partita, passa simbolo, avversario e tabellone
                     break;
                 case "YOUR_TURN": //Tuo turno
                     myTurn = true; //Imposta turno
@@ -211,10 +308,10 @@ public class TicTacToeClient {
                 case "BOARD": //Aggiornamento board
                     String[] boardData = message.getPayloadAsStringArray(); //Dati mossa
                     if (boardData != null && boardData.length == 2) { //Se validi
-                        int position = Integer.parseInt(boardData[0]); //Posizione 0-8
+                        int position = Integer.parseInt(boardData[0]); //Posizione nel tabellone
                         String player = boardData[1]; //Simbolo
-                        int row = position / 3; //Calcola riga
-                        int col = position % 3; //Calcola colonna
+                        int row = position / rules.width; //Calcola riga
+                        int col = position % rules.width; //Calcola colonna
                         board[row][col].setText(player); //Aggiorna cella
                     }
                     break;
@@ -242,6 +339,10 @@ public class TicTacToeClient {
 
     //Chiede nickname all'utente
     void askNickname() {
+        if (pendingNickname != null) { //Richiesta del nodo a cui si è stati reindirizzati
+            sendMessage(GameMessage.nickname(pendingNickname));
+            return;
+        }
         String nickname = JOptionPane.showInputDialog(frame, //Testo per input
                 "Inserisci il tuo nickname:",
                 "Scelta Nickname",
@@ -250,6 +351,7 @@ public class TicTacToeClient {
         if (nickname == null || nickname.trim().isEmpty())  //Se vuoto o null
             nickname = "Player" + (int)(Math.random() * 1000); //Genera default
 
+        pendingNickname = nickname;
         sendMessage(GameMessage.nickname(nickname)); //Invia al server
     }
 
@@ -258,21 +360,10 @@ public class TicTacToeClient {
         sendMessage(GameMessage.listPlayers()); //Invia comando lista
     }
 
-    //Aggiorna UI lista
-    void updatePlayerList(String[] players) {
-        playerListModel.clear(); //Svuota modello
-        if (players != null) { //Se sono presenti dei dati
-            for (String player : players) { //Per ogni giocatore
-                playerListModel.addElement(player); //Lo aggiunge alla lista
-            }
-        }
-    }
-
     //Invia un messaggio al server
     void sendMessage(GameMessage<?> message) {
         try {
-            out.writeObject(message); //Scrive oggetto
-            out.flush(); //Flush immediato
+            connection.send(message); //Scrive il frame e fa flush
         } catch (IOException e) {
             System.err.println("Errore nell'invio del messaggio: " + e.getMessage());
         }
@@ -285,13 +376,25 @@ public class TicTacToeClient {
             JOptionPane.showMessageDialog(frame, "Seleziona un giocatore da sfidare!");
             return;
         }
-        sendMessage(GameMessage.challenge(selectedPlayer)); //Invia sfida
+        sendMessage(GameMessage.challenge(selectedPlayer, (GameRules) rulesBox.getSelectedItem())); //Invia sfida con il tabellone scelto
+    }
+
+    //Entra o esce dalla coda della partita rapida con il tabellone scelto
+    void toggleQueue() {
+        sendMessage(queued ? GameMessage.dequeue() : GameMessage.queue((GameRules) rulesBox.getSelectedItem()));
+    }
+
+    //Aggiorna lo stato della coda e il testo del bottone
+    void setQueued(boolean queued) {
+        this.queued = queued; //Stato coda
+        queueButton.setText(queued ? "Annulla ricerca" : "Partita rapida"); //Testo bottone
     }
 
     //Gestisce sfida ricevuta
-    void handleChallengeRequest(String challenger) {
+    void handleChallengeRequest(String challenger, GameRules rules) {
+        String size = rules.isClassic() ? "" : " (" + rules + ")"; //Tabellone indicato solo se non è il tris classico
         int response = JOptionPane.showConfirmDialog(frame, //Testo conferma
-                challenger + " ti ha sfidato! Accetti?",
+                challenger + " ti ha sfidato" + size + "! Accetti?",
                 "Richiesta di Sfida",
                 JOptionPane.YES_NO_OPTION);
 
@@ -304,15 +407,18 @@ public class TicTacToeClient {
     }
 
     //Avvia la partita
-    void startGame(String symbol, String opponent) {
+    void startGame(String symbol, String opponent, GameRules rules) {
+        if (!rules.equals(this.rules)) //Tabellone diverso dalla partita precedente
+            setupBoardPanel(rules); //Ricostruisce la griglia
+        spectating = false; //Una partita propria sostituisce quella guardata
         myPlayer = symbol; //Assegna simbolo
         opponentNickname = opponent; //Assegna avversario
         inGame = true; //Segna in partita
         gameOver = false; //Reset fine partita
         myTurn = symbol.equals("X"); //X inizia
 
-        for (int r = 0; r < 3; r++) { //Per ogni riga
-            for (int c = 0; c < 3; c++) { //E ogni colonna
+        for (int r = 0; r < rules.height; r++) { //Per ogni riga
+            for (int c = 0; c < rules.width; c++) { //E ogni colonna
                 board[r][c].setText(""); //Pulisce testo
                 board[r][c].setBackground(Color.darkGray); //Sfondo default
                 board[r][c].setForeground(Color.white); //Testo default
@@ -326,8 +432,59 @@ public class TicTacToeClient {
         textLabel.setText("Partita vs " + opponentNickname + " - Sei " + myPlayer); //Aggiorna stato
     }
 
+    //Chiede di guardare la partita del giocatore selezionato
+    void spectateSelectedPlayer() {
+        String selectedPlayer = playerList.getSelectedValue(); //Recupera selezione giocatore
+        if (selectedPlayer == null) { //Se nessuno selezionato
+            JOptionPane.showMessageDialog(frame, "Seleziona un giocatore in partita!");
+            return;
+        }
+        sendMessage(GameMessage.spectate(selectedPlayer)); //Il server risponde con lo stato della partita
+    }
+
+    //Mostra la partita guardata: [id, X, O, larghezza, altezza, k, mosse...] (le mosse pari sono di X)
+    void startSpectating(String[] snapshot) {
+        GameRules watchedRules = GameRules.fromPayload(snapshot, 3); //Tabellone della partita
+        if (watchedRules == null) return;
+        if (!watchedRules.equals(this.rules)) //Tabellone diverso dalla partita precedente
+            setupBoardPanel(watchedRules); //Ricostruisce la griglia
+        spectating = true; //Segna spettatore
+        spectatedX = snapshot[1]; //Giocatore con X
+        spectatedO = snapshot[2]; //Giocatore con O
+        gameOver = false; //Reset fine partita
+        myTurn = false; //Lo spettatore non ha turni
+
+        for (int r = 0; r < rules.height; r++) { //Per ogni riga
+            for (int c = 0; c < rules.width; c++) { //E ogni colonna
+                board[r][c].setText(""); //Pulisce testo
+                board[r][c].setBackground(Color.darkGray); //Sfondo default
+                board[r][c].setForeground(Color.white); //Testo default
+            }
+        }
+        for (int i = 6; i < snapshot.length; i++) { //Mosse già giocate
+            int position = Integer.parseInt(snapshot[i]); //Posizione nel tabellone
+            board[position / rules.width][position % rules.width].setText((i - 6) % 2 == 0 ? "X" : "O"); //Aggiorna cella
+        }
+        lobbyPanel.setVisible(false); //Nasconde lobby
+        frame.add(boardPanel, BorderLayout.CENTER); //Aggiunge griglia
+        boardPanel.setVisible(true); //Mostra griglia
+        frame.revalidate(); //Aggiorna layout
+        textLabel.setText(spectatedX + " (X) vs " + spectatedO + " (O)"); //Aggiorna stato
+    }
+
+    //Smette di guardare dopo conferma e torna in lobby
+    void stopSpectating() {
+        int response = JOptionPane.showConfirmDialog(frame, "Smettere di guardare la partita?", "Spettatore", JOptionPane.YES_NO_OPTION);
+        if (response != JOptionPane.YES_OPTION || !spectating) return; //Annullato o partita già finita
+        spectating = false; //Non più spettatore
+        sendMessage(GameMessage.unspectate()); //Il server smette di inviare le mosse
+        returnToLobby(); //Torna in lobby
+    }
+
     //Gestisce fine partita
     void handleGameOver(String result) {
+        boolean watched = spectating; //Esito di una partita guardata
+        spectating = false; //Il server ha già scollegato gli spettatori
         gameOver = true; //Segna fine
         inGame = false; //Non in partita
         myTurn = false; //Disabilita turno
@@ -336,7 +493,9 @@ public class TicTacToeClient {
             textLabel.setText("Pareggio!"); //Invia un messaggio
             setTieColors(); //Colora di pareggio
         } else {
-            if (result.equals(myPlayer)) { //Se vittoria
+            if (watched) { //Spettatore
+                textLabel.setText("Ha vinto " + (result.equals("X") ? spectatedX : spectatedO) + "!"); //Messaggio vincitore
+            } else if (result.equals(myPlayer)) { //Se vittoria
                 textLabel.setText("Hai vinto contro " + opponentNickname + "!"); //Messaggio vittoria
             } else { //Sconfitta
                 textLabel.setText("Hai perso contro " + opponentNickname + "!"); //Messaggio sconfitta
@@ -355,45 +514,40 @@ public class TicTacToeClient {
         lobbyPanel.setVisible(true); //Mostra lobby
         frame.add(lobbyPanel, BorderLayout.CENTER); //Posiziona lobby
         frame.revalidate(); //Aggiorna layout
-        textLabel.setText("Benvenuto, " + myNickname + "!"); //Ripristina testo
-        requestPlayerList(); //Aggiorna lista
+        textLabel.setText("Benvenuto, " + myNickname + "!"); //Ripristina testo (la lista è già aggiornata dai delta)
     }
 
-    //Evidenzia combinazione vincente
+    //Evidenzia la fila vincente: winLength simboli uguali lungo righe, colonne o diagonali
     void highlightWinner() {
-        int[][] wins = { //Pattern vincenti
-                {0, 1, 2}, {3, 4, 5}, {6, 7, 8},
-                {0, 3, 6}, {1, 4, 7}, {2, 5, 8},
-                {0, 4, 8}, {2, 4, 6}
-        };
-
-        for (int[] win : wins) { //Per ogni pattern
-            int r1 = win[0] / 3; //Prima riga
-            int c1 = win[0] % 3; //Prima colonna
-            int r2 = win[1] / 3; //Seconda riga
-            int c2 = win[1] % 3; //Seconda colonna
-            int r3 = win[2] / 3; //Terza riga
-            int c3 = win[2] % 3; //Terza colonna
-
-            if (!board[r1][c1].getText().equals("") && //Se le celle non sono vuote
-                    board[r1][c1].getText().equals(board[r2][c2].getText()) && //E ls prima è uguale seconda
-                    board[r2][c2].getText().equals(board[r3][c3].getText())) { //E la seconda uguale terza
-
-                board[r1][c1].setForeground(Color.green); //Evidenzia prima
-                board[r1][c1].setBackground(Color.gray); //Sfondo prima
-                board[r2][c2].setForeground(Color.green); //Evidenzia seconda
-                board[r2][c2].setBackground(Color.gray); //Sfondo seconda
-                board[r3][c3].setForeground(Color.green); //Evidenzia terza
-                board[r3][c3].setBackground(Color.gray); //Sfondo terza
-                break;
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}}; //Orizzontale, verticale e diagonali (riga, colonna)
+        int k = rules.winLength; //Simboli in fila per vincere
+
+        for (int r = 0; r < rules.height; r++) { //Per ogni riga
+            for (int c = 0; c < rules.width; c++) { //E colonna
+                String symbol = board[r][c].getText(); //Simbolo della cella iniziale
+                if (symbol.equals("")) continue; //Cella vuota
+                for (int[] d : directions) { //Per ogni direzione
+                    int lastRow = r + d[0] * (k - 1); //Ultima cella della fila
+                    int lastCol = c + d[1] * (k - 1);
+                    if (lastRow >= rules.height || lastCol < 0 || lastCol >= rules.width) continue; //La fila esce dal tabellone
+                    int run = 1; //Simboli uguali consecutivi
+                    while (run < k && board[r + d[0] * run][c + d[1] * run].getText().equals(symbol)) run++;
+                    if (run == k) { //Fila vincente trovata
+                        for (int i = 0; i < k; i++) { //Evidenzia ogni cella della fila
+                            board[r + d[0] * i][c + d[1] * i].setForeground(Color.green); //Testo fila
+                            board[r + d[0] * i][c + d[1] * i].setBackground(Color.gray); //Sfondo fila
+                        }
+                        return;
+                    }
+                }
             }
         }
     }
 
     //Colora la griglia in caso di pareggio
     void setTieColors() {
-        for (int r = 0; r < 3; r++) { //Per ogni riga
-            for (int c = 0; c < 3; c++) { //E colonna
+        for (int r = 0; r < rules.height; r++) { //Per ogni riga
+            for (int c = 0; c < rules.width; c++) { //E colonna
                 board[r][c].setForeground(Color.orange); //Colore testo pareggio
                 board[r][c].setBackground(Color.gray); //Sfondo pareggio
             }
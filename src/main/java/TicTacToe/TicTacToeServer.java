@@ -7,16 +7,31 @@ import java.util.concurrent.*;
 
 public class TicTacToeServer {
     //Porte per i diversi servizi
-    private static final int GAME_PORT = 12345; //Porta per la gestione del gioco
-    private static final int VIDEO_PORT = 12347; //Porta per lo streaming video
+    private static final int GAME_PORT = Cluster.gamePort(12345); //Porta per la gestione del gioco (quella del nodo in modalità cluster)
+    private static final int VIDEO_PORT = Integer.getInteger("tictactoe.video.port", 12347); //Porta per lo streaming video
+
+    //Modalità del server di gioco: "blocking" (un thread per Player) oppure "nio" (selector + pool di event loop)
+    private static final String GAME_SERVER_MODE = System.getProperty("tictactoe.server.mode", "blocking");
+    //Modalità del server video: "blocking" (un VideoClient per connessione) oppure "nio" (relay con buffer diretti, NioVideoServer)
+    private static final String VIDEO_SERVER_MODE = System.getProperty("tictactoe.video.mode", "blocking");
+    private static final int STATS_INTERVAL = Integer.getInteger("tictactoe.stats.interval", 60); //Secondi tra i report del protocollo
+    private static final int EVENT_LOOPS = Integer.getInteger("tictactoe.server.eventLoops", //Numero di event loop in modalità nio
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
 
     //Mappe condivise per la gestione dei client e delle partite
     public static Map<String, Player> connectedClients = new ConcurrentHashMap<>(); //Mappa client connessi
     public static Map<String, Game> activeGames = new ConcurrentHashMap<>(); //Mappa partite attive
-    public static Map<String, String> pendingChallenges = new ConcurrentHashMap<>(); //Mappa sfide pendenti
+
+    //Executor dei gestori (thread di piattaforma o virtuali, vedi HandlerExecutors)
+    static final Executor playerExecutor = HandlerExecutors.create("player"); //Un task per connessione di gioco bloccante
+    static final Executor writerExecutor = HandlerExecutors.create("writer"); //Un writer per connessione di gioco bloccante
+    static final Executor videoExecutor = HandlerExecutors.create("video"); //Un task per connessione video
+
+    //Ruota condivisa per tutte le scadenze del server (tick di 100 ms, 512 slot per giro)
+    static final TimerWheel timers = new TimerWheel("Timers", 100, TimeUnit.MILLISECONDS, 512);
 
     //Mappe per la gestione dello streaming video
-    public static Map<String, VideoClient> videoClients = new ConcurrentHashMap<>(); //Mappa client video
+    public static Map<String, VideoConnection> videoClients = new ConcurrentHashMap<>(); //Mappa client video
     public static Map<String, String> activePairs = new ConcurrentHashMap<>(); //Mappa coppie video attive
 
     //Entry point server
@@ -25,8 +40,24 @@ public class TicTacToeServer {
         System.out.println("Tic-Tac-Toe Unified Server Avviato");
         System.out.println("Porta Game: " + GAME_PORT);
         System.out.println("Porta Video: " + VIDEO_PORT);
+        System.out.println("Modalità Game Server: " + GAME_SERVER_MODE);
+        System.out.println("Modalità Video Server: " + VIDEO_SERVER_MODE);
+        System.out.println("Cluster: " + Cluster.describe());
+        System.out.println("Thread gestori: " + HandlerExecutors.MODE + " (max " + HandlerExecutors.MAX_CONCURRENT + " per executor)");
+        System.out.println("Shard delle partite: " + (GameShards.count() > 0 ? GameShards.count() : "nessuno (lock per partita)"));
         System.out.println("=================================================");
 
+        Metrics.registerJmx(); //Metriche in JMX (TicTacToe:type=Metrics)
+        MetricsEndpoint.start(); //E in formato Prometheus su HTTP locale
+
+        MatchHistory.start(); //Punteggi e storico ricostruiti dal file delle partite concluse
+        MoveJournal.start(); //Partite interrotte dall'ultimo arresto, riprese quando i giocatori rientrano
+        Heartbeat.start(); //PING e chiusura delle connessioni inattive
+
+        Cluster.start(); //Collegamenti con gli altri nodi, se configurati
+
+        Bot.registerAll(System.getProperty("tictactoe.bots", "random,heuristic,perfect")); //Avversari del server in lobby
+
         //Avvia il server di gioco in un thread separato
         Thread gameServerThread = new Thread(() -> startGameServer()); //Crea thread server gioco
         gameServerThread.setName("GameServerThread"); //Assegna nome thread
@@ -36,16 +67,35 @@ public class TicTacToeServer {
         Thread videoServerThread = new Thread(() -> startVideoServer()); //Crea thread server video
         videoServerThread.setName("VideoServerThread"); //Assegna nome thread
         videoServerThread.start(); //Avvia thread
+
+        //Stampa periodicamente byte/messaggio per ogni codifica
+        ScheduledExecutorService statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ProtocolStats"); //Thread del report
+            thread.setDaemon(true);
+            return thread;
+        });
+        statsReporter.scheduleAtFixedRate(() -> {
+            System.out.println(ProtocolStats.report());
+            System.out.println(OutboundQueue.report());
+            System.out.println(ConnectionMemory.report(connectedClients.values()));
+            if (MoveJournal.enabled()) System.out.println(MoveJournal.report());
+            System.out.println(MatchHistory.report());
+        }, STATS_INTERVAL, STATS_INTERVAL, TimeUnit.SECONDS);
     }
 
     //Server per la gestione del gioco
     private static void startGameServer() {
+        if (GAME_SERVER_MODE.equals("nio")) { //Modalità non bloccante
+            startNioGameServer();
+            return;
+        }
         System.out.println("Game Server in ascolto sulla porta " + GAME_PORT);
         try (ServerSocket serverSocket = new ServerSocket(GAME_PORT)) { //Apre socket sulla porta gioco
             while (true) { //Loop infinito
                 Socket clientSocket = serverSocket.accept(); //Accetta connessione
                 System.out.println("Nuova connessione GAME da: " + clientSocket.getInetAddress());
-                new Thread(new Player(clientSocket)).start(); //Crea thread per gestire client
+                clientSocket.setTcpNoDelay(true); //Ogni frame parte subito, senza attendere l'ACK del precedente
+                playerExecutor.execute(new Player(clientSocket)); //Avvia il gestore del client
             }
         } catch (IOException e) {
             System.err.println("Errore Game Server: " + e.getMessage());
@@ -53,14 +103,28 @@ public class TicTacToeServer {
         }
     }
 
+    //Server di gioco non bloccante basato su selector
+    private static void startNioGameServer() {
+        try {
+            new NioGameServer(GAME_PORT, EVENT_LOOPS).start(); //Accetta connessioni in questo thread
+        } catch (IOException e) {
+            System.err.println("Errore Game Server NIO: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     //Server per lo streaming video
-    private static void startVideoServer() {
+    static void startVideoServer() {
+        if (VIDEO_SERVER_MODE.equals("nio")) { //Relay non bloccante
+            startNioVideoServer();
+            return;
+        }
         System.out.println("Video Server in ascolto sulla porta " + VIDEO_PORT);
         try (ServerSocket serverSocket = new ServerSocket(VIDEO_PORT)) { //Apre socket sulla porta video
             while (true) { //Loop infinito
                 Socket clientSocket = serverSocket.accept(); //Accetta connessione
                 System.out.println("Nuova connessione VIDEO da: " + clientSocket.getInetAddress());
-                new Thread(new VideoClient(clientSocket)).start(); //Crea thread per gestire client video
+                videoExecutor.execute(new VideoClient(clientSocket)); //Avvia il gestore del client video
             }
         } catch (IOException e) {
             System.err.println("Errore Video Server: " + e.getMessage());
@@ -68,6 +132,16 @@ public class TicTacToeServer {
         }
     }
 
+    //Relay video non bloccante con buffer diretti
+    private static void startNioVideoServer() {
+        try {
+            new NioVideoServer(VIDEO_PORT).run(); //Relay in questo thread
+        } catch (IOException e) {
+            System.err.println("Errore Video Server NIO: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     //Registra coppia di giocatori per video
     public static void registerPair(String player1, String player2) {
         activePairs.put(player1, player2); //Associa player1 a player2
@@ -88,13 +162,15 @@ public class TicTacToeServer {
     public static void forwardFrame(String sender, byte[] frameData) {
         String recipient = activePairs.get(sender); //Ottiene destinatario
         if (recipient != null) { //Se esiste destinatario
-            VideoClient client = videoClients.get(recipient); //Recupera client video
+            VideoConnection client = videoClients.get(recipient); //Recupera client video
             if (client != null) { //Se client esiste
                 client.sendFrame(frameData); //Invia frame
             } else {
+                Metrics.videoDropped();
                 System.out.println("Client destinatario non trovato: " + recipient);
             }
         } else {
+            Metrics.videoDropped();
             System.out.println("Nessun avversario registrato per: " + sender);
         }
     }
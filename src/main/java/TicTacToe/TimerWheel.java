@@ -0,0 +1,110 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Ruota temporale (hashed timer wheel): un solo thread gestisce tutte le scadenze, a scatti di un tick
+//Programmare o annullare una scadenza è un inserimento in una coda lock-free e un flag: nessun thread né task per scadenza
+public final class TimerWheel {
+    private final long tickNanos; //Durata di uno scatto
+    private final List<Timeout>[] slots; //Scadenze per posizione sulla ruota (solo thread della ruota)
+    private final int mask; //slots.length - 1 (potenza di due)
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>(); //Scadenze non ancora sulla ruota
+    private final String name; //Nome del thread
+    private final AtomicBoolean started = new AtomicBoolean(); //Il thread parte alla prima scadenza
+    private final long startNanos = System.nanoTime(); //Istante del tick 0
+
+    //Scadenza programmata; cancel() la annulla se non è ancora scattata
+    public static final class Timeout {
+        private final Runnable task; //Azione alla scadenza
+        private final long deadline; //Istante di scadenza in nanosecondi dalla creazione della ruota
+        private long rounds; //Giri completi della ruota ancora da attendere
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() { cancelled = true; } //Rimossa dalla ruota al prossimo passaggio sul suo slot
+
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(String name, long tick, TimeUnit unit, int slots) {
+        if (Integer.bitCount(slots) != 1) throw new IllegalArgumentException("Slot non potenza di due: " + slots);
+        this.name = name;
+        this.tickNanos = unit.toNanos(tick);
+        this.slots = new List[slots];
+        for (int i = 0; i < slots; i++)
+            this.slots[i] = new ArrayList<>();
+        this.mask = slots - 1;
+    }
+
+    //Esegue task dopo il ritardo indicato (arrotondato per eccesso al tick), sul thread della ruota: deve essere breve
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(delay));
+        added.offer(timeout);
+        return timeout;
+    }
+
+    private void start() {
+        if (started.get() || !started.compareAndSet(false, true)) return;
+        Thread worker = new Thread(this::run, name); //Thread della ruota
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (true) {
+            long sleep = (tick + 1) * tickNanos - (System.nanoTime() - startNanos); //Attende l'inizio del tick successivo
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            transferAdded(tick);
+            expire(slots[(int) (tick & mask)]);
+        }
+    }
+
+    //Sposta le nuove scadenze nello slot del loro tick
+    private void transferAdded(long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) continue;
+            long due = Math.max(tick, (timeout.deadline + tickNanos - 1) / tickNanos); //Una scadenza passata scatta subito
+            timeout.rounds = (due - tick) / slots.length;
+            slots[(int) (due & mask)].add(timeout);
+        }
+    }
+
+    //Esegue le scadenze dello slot arrivate all'ultimo giro e scarta quelle annullate
+    private void expire(List<Timeout> slot) {
+        int kept = 0; //Le scadenze dei giri successivi vengono compattate in testa, senza rimozioni una per una
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.cancelled) continue;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                slot.set(kept++, timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); //Un errore non deve fermare le altre scadenze
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+}
@@ -0,0 +1,14 @@
+package TicTacToe;
+
+//Canale verso un client: nasconde se la connessione è uno stream legacy, a frame bloccante o NIO
+public interface Transport {
+    default boolean supportsPresenceDeltas() { return true; } //False per i client legacy, che ricevono sempre la lista completa
+
+    default boolean supportsHeartbeats() { return true; } //False per i client legacy e i bot, che non rispondono ai PING
+
+    default void onQueued() {} //Nuovi messaggi nella coda di uscita del giocatore (l'event loop NIO li scrive)
+
+    default long retainedBytes() { return 0; } //Memoria trattenuta dalla connessione oltre ai buffer fissi (indicatore per le statistiche)
+
+    void close(); //Chiude la connessione sottostante
+}
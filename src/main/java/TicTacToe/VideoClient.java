@@ -3,22 +3,50 @@ package TicTacToe;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class VideoClient implements Runnable {
+public class VideoClient implements Runnable, VideoConnection {
     private Socket socket; //Socket connessione client
     private DataOutputStream out; //Stream uscita dati
     private DataInputStream in; //Stream ingresso dati
     private String nickname; //Nickname client
     private String opponent; //Nickname avversario
     private volatile boolean running = true; //Flag esecuzione
+    private final LongAdder framesReceived = new LongAdder(); //Frame inoltrati a questo client dall'avversario
+    private final LongAdder bytesReceived = new LongAdder(); //Byte inoltrati a questo client dall'avversario
+    private volatile long lastSeen = System.nanoTime(); //Ultimo frame o PONG ricevuto (per il heartbeat)
+    private final AtomicBoolean pinging = new AtomicBoolean(); //PING in invio: al più uno alla volta
+    private final ReentrantLock writeLock = new ReentrantLock(); //Frame e PING non si mescolano; un thread virtuale bloccato in scrittura libera il carrier
+    private TimerWheel.Timeout registration; //Chiusura se la registrazione non arriva in tempo
 
     //Costruttore con socket
     public VideoClient(Socket socket) {
         this.socket = socket; //Salva socket
     }
 
+    @Override
+    public String getNickname() { return nickname; }
+
+    @Override
+    public String getOpponent() { return opponent; }
+
+    @Override
+    public long framesReceived() { return framesReceived.sum(); }
+
+    @Override
+    public long bytesReceived() { return bytesReceived.sum(); }
+
+    @Override
+    public long lastSeen() { return lastSeen; }
+
     @Override
     public void run() {
+        registration = Heartbeat.loginDeadline(() -> {
+            Heartbeat.loginExpired(socket.getRemoteSocketAddress());
+            close(); //Il reader bloccato sulla registrazione esce ed esegue la pulizia
+        });
         try {
             out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())); //Crea stream uscita
             in = new DataInputStream(new BufferedInputStream(socket.getInputStream())); //Crea stream ingresso
@@ -35,6 +63,7 @@ public class VideoClient implements Runnable {
             in.readFully(opponentBytes); //Legge bytes nickname avversario
             opponent = new String(opponentBytes, "UTF-8"); //Converte in stringa
 
+            if (registration != null) registration.cancel(); //Da qui il heartbeat controlla la connessione
             TicTacToeServer.videoClients.put(nickname, this); //Registra client nella mappa
             System.out.println("Client video registrato: " + nickname + " (avversario: " + opponent + ")");
 
@@ -50,8 +79,11 @@ public class VideoClient implements Runnable {
                 try {
                     //Leggi la dimensione del frame
                     int frameSize = in.readInt(); //Legge dimensione frame
+                    lastSeen = System.nanoTime(); //Il client è vivo
+
+                    if (frameSize == 0) continue; //PONG: frame vuoto in risposta al PING
 
-                    if (frameSize <= 0 || frameSize > 5_000_000) { //Se dimensione non valida
+                    if (frameSize < 0 || frameSize > 5_000_000) { //Se dimensione non valida
                         System.err.println("Dimensione frame non valida: " + frameSize);
                         break;
                     }
@@ -80,16 +112,57 @@ public class VideoClient implements Runnable {
     }
 
     //Invia frame al client
-    public synchronized void sendFrame(byte[] frameData) {
+    @Override
+    public void sendFrame(byte[] frameData) {
+        writeLock.lock();
         try {
             if (out != null && socket.isConnected() && !socket.isClosed()) { //Se socket valido
                 out.writeInt(frameData.length); //Scrive dimensione frame
                 out.write(frameData); //Scrive dati frame
                 out.flush(); //Flush immediato
+                framesReceived.increment();
+                bytesReceived.add(frameData.length);
+                Metrics.videoRelayed(frameData.length);
+            } else {
+                Metrics.videoFailed(); //Socket già chiuso
             }
         } catch (IOException e) {
+            Metrics.videoFailed();
             System.err.println("Errore invio frame a " + nickname + ": " + e.getMessage());
             running = false; //Ferma esecuzione
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //PING al client: un frame vuoto, a cui risponde con un frame vuoto
+    //Scritto da un task dell'executor video perché un client morto può bloccare la scrittura (non il thread della ruota)
+    @Override
+    public void ping() {
+        if (!pinging.compareAndSet(false, true)) return; //PING precedente ancora in invio
+        TicTacToeServer.videoExecutor.execute(() -> {
+            writeLock.lock(); //Come sendFrame
+            try {
+                if (out != null && !socket.isClosed()) {
+                    out.writeInt(0);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                running = false; //La chiusura arriverà dal reader
+            } finally {
+                writeLock.unlock();
+                pinging.set(false);
+            }
+        });
+    }
+
+    //Chiude la connessione di un client che non risponde: il reader esce e fa la pulizia
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Già chiuso
         }
     }
 
@@ -0,0 +1,20 @@
+package TicTacToe;
+
+//Connessione video registrata: un VideoClient bloccante o una sessione del relay NIO (NioVideoServer)
+public interface VideoConnection {
+    String getNickname(); //Nickname del client
+
+    String getOpponent(); //Nickname dell'avversario
+
+    void sendFrame(byte[] frameData); //Inoltra un frame dell'avversario al client
+
+    long framesReceived(); //Frame inoltrati al client (per le metriche)
+
+    long bytesReceived(); //Byte inoltrati al client
+
+    long lastSeen(); //Ultimo frame o PONG ricevuto (per il heartbeat)
+
+    void ping(); //PING senza bloccare il thread chiamante
+
+    void close(); //Chiude la connessione di un client che non risponde
+}
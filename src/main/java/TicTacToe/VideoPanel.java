@@ -203,13 +203,7 @@ public class VideoPanel extends JPanel {
                     continue;
                 }
 
-                //Ridimensiona per ridurre banda
-                BufferedImage scaled = scaleImage(image, TARGET_WIDTH, TARGET_HEIGHT); //Scala immagine
-
-                //Comprimi in JPEG
-                ByteArrayOutputStream baos = new ByteArrayOutputStream(); //Crea stream bytes
-                ImageIO.write(scaled, "jpg", baos); //Scrive immagine in JPEG
-                byte[] frameData = baos.toByteArray(); //Ottiene array bytes
+                byte[] frameData = encodeFrame(image); //Scala e comprime il frame
 
                 //Invia al server
                 synchronized (videoOut) { //Sincronizza stream
@@ -246,7 +240,15 @@ public class VideoPanel extends JPanel {
                 //Leggi dimensione frame
                 int frameSize = videoIn.readInt(); //Legge dimensione
 
-                if (frameSize <= 0 || frameSize > 5_000_000) { //Se dimensione non valida
+                if (frameSize == 0) { //PING del server: risponde con un frame vuoto
+                    synchronized (videoOut) { //Sincronizza stream con il loop di invio
+                        videoOut.writeInt(0);
+                        videoOut.flush();
+                    }
+                    continue;
+                }
+
+                if (frameSize < 0 || frameSize > 5_000_000) { //Se dimensione non valida
                     System.err.println("Dimensione frame non valida: " + frameSize);
                     break;
                 }
@@ -285,8 +287,16 @@ public class VideoPanel extends JPanel {
         System.out.println("Receive loop terminato");
     }
 
+    //Ridimensiona il frame per ridurre la banda e lo comprime in JPEG (statico per poterlo misurare nei benchmark)
+    static byte[] encodeFrame(BufferedImage image) throws IOException {
+        BufferedImage scaled = scaleImage(image, TARGET_WIDTH, TARGET_HEIGHT); //Scala immagine
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(); //Crea stream bytes
+        ImageIO.write(scaled, "jpg", baos); //Scrive immagine in JPEG
+        return baos.toByteArray(); //Ottiene array bytes
+    }
+
     //Ridimensiona immagine
-    private BufferedImage scaleImage(BufferedImage original, int width, int height) {
+    static BufferedImage scaleImage(BufferedImage original, int width, int height) {
         BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); //Crea immagine scalata
         Graphics2D g2d = scaled.createGraphics(); //Ottiene contesto grafico
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR); //Interpolazione bilineare
@@ -9,15 +9,17 @@ public class WebcamStreamServer {
     private static final int VIDEO_PORT = 12347; //Porta dedicata per video streaming
     public static Map<String, VideoClient> videoClients = new ConcurrentHashMap<>(); //Mappa client video
     public static Map<String, String> activePairs = new ConcurrentHashMap<>(); //Mappa coppie video attive
+    private static final Executor videoExecutor = HandlerExecutors.create("video"); //Executor dei gestori video
 
     //Entry point server video
     public static void main(String[] args) {
         System.out.println("Webcam Stream Server avviato sulla porta " + VIDEO_PORT);
+        System.out.println("Thread gestori: " + HandlerExecutors.MODE);
         try (ServerSocket serverSocket = new ServerSocket(VIDEO_PORT)) { //Apre socket sulla porta video
             while (true) { //Loop infinito
                 Socket clientSocket = serverSocket.accept(); //Accetta connessione
                 System.out.println("Nuova connessione video da: " + clientSocket.getInetAddress());
-                new Thread(new VideoClient(clientSocket)).start(); //Crea thread per gestire client video
+                videoExecutor.execute(new VideoClient(clientSocket)); //Avvia il gestore del client video
             }
         } catch (IOException e) {
             System.err.println("Errore server video: " + e.getMessage());